@@ -65,6 +65,7 @@
                 ['OS == "linux"', {
                     'sources': [
                         'async.cpp',
+                        'buffer_pool.cpp',
                         'check.cpp',
                         'child_process.cpp',
                         'constants.cpp',
@@ -73,14 +74,17 @@
                         'file.cpp',
                         'file_event.cpp',
                         'file_poll.cpp',
+                        'framer.cpp',
                         'handle.cpp',
                         'idle.cpp',
                         'loop.cpp',
                         'misc.cpp',
+                        'native_buffer.cpp',
                         'os.cpp',
                         'pipe.cpp',
                         'poll.cpp',
                         'process.cpp',
+                        'resolved_address.cpp',
                         'signal.cpp',
                         'stats.cpp',
                         'stream.cpp',
@@ -106,6 +110,7 @@
                 ['OS == "mac"', {
                     'sources': [
                         '<(SRC)/libuv-java/async.cpp',
+                        '<(SRC)/libuv-java/buffer_pool.cpp',
                         '<(SRC)/libuv-java/check.cpp',
                         '<(SRC)/libuv-java/child_process.cpp',
                         '<(SRC)/libuv-java/constants.cpp',
@@ -114,14 +119,17 @@
                         '<(SRC)/libuv-java/file.cpp',
                         '<(SRC)/libuv-java/file_event.cpp',
                         '<(SRC)/libuv-java/file_poll.cpp',
+                        '<(SRC)/libuv-java/framer.cpp',
                         '<(SRC)/libuv-java/handle.cpp',
                         '<(SRC)/libuv-java/idle.cpp',
                         '<(SRC)/libuv-java/loop.cpp',
                         '<(SRC)/libuv-java/misc.cpp',
+                        '<(SRC)/libuv-java/native_buffer.cpp',
                         '<(SRC)/libuv-java/os.cpp',
                         '<(SRC)/libuv-java/pipe.cpp',
                         '<(SRC)/libuv-java/poll.cpp',
                         '<(SRC)/libuv-java/process.cpp',
+                        '<(SRC)/libuv-java/resolved_address.cpp',
                         '<(SRC)/libuv-java/signal.cpp',
                         '<(SRC)/libuv-java/stats.cpp',
                         '<(SRC)/libuv-java/stream.cpp',
@@ -150,6 +158,7 @@
                     ],
                     'sources': [
                         '<(SRC)/libuv-java/async.cpp',
+                        '<(SRC)/libuv-java/buffer_pool.cpp',
                         '<(SRC)/libuv-java/check.cpp',
                         '<(SRC)/libuv-java/child_process.cpp',
                         '<(SRC)/libuv-java/constants.cpp',
@@ -158,14 +167,17 @@
                         '<(SRC)/libuv-java/file.cpp',
                         '<(SRC)/libuv-java/file_event.cpp',
                         '<(SRC)/libuv-java/file_poll.cpp',
+                        '<(SRC)/libuv-java/framer.cpp',
                         '<(SRC)/libuv-java/handle.cpp',
                         '<(SRC)/libuv-java/idle.cpp',
                         '<(SRC)/libuv-java/loop.cpp',
                         '<(SRC)/libuv-java/misc.cpp',
+                        '<(SRC)/libuv-java/native_buffer.cpp',
                         '<(SRC)/libuv-java/os.cpp',
                         '<(SRC)/libuv-java/pipe.cpp',
                         '<(SRC)/libuv-java/poll.cpp',
                         '<(SRC)/libuv-java/process.cpp',
+                        '<(SRC)/libuv-java/resolved_address.cpp',
                         '<(SRC)/libuv-java/signal.cpp',
                         '<(SRC)/libuv-java/stats.cpp',
                         '<(SRC)/libuv-java/stream.cpp',
@@ -39,6 +39,7 @@ import com.oracle.libuv.cb.FileReadLinkCallback;
 import com.oracle.libuv.cb.FileStatsCallback;
 import com.oracle.libuv.cb.FileUTimeCallback;
 import com.oracle.libuv.cb.FileWriteCallback;
+import com.oracle.libuv.cb.RequestCallback;
 import com.oracle.libuv.handles.LoopHandle;
 
 public class Files {
@@ -104,6 +105,8 @@ public class Files {
     private FileReadLinkCallback onReadLink = null;
     private FileCallback onChown = null;
     private FileCallback onFChown = null;
+    private RequestCallback onReadRequest = null;
+    private RequestCallback onWriteRequest = null;
 
     private final long pointer;
     private final LoopHandle loop;
@@ -155,6 +158,22 @@ public class Files {
         onWrite = callback;
     }
 
+    /**
+     * Completes reads made with a request id, with the number of bytes
+     * read as the result.
+     */
+    public void setReadRequestCallback(final RequestCallback callback) {
+        onReadRequest = callback;
+    }
+
+    /**
+     * Completes writes made with a request id, with the number of bytes
+     * written as the result.
+     */
+    public void setWriteRequestCallback(final RequestCallback callback) {
+        onWriteRequest = callback;
+    }
+
     public void setSendfileCallback(final FileCallback callback) {
         onSendfile = callback;
     }
@@ -319,6 +338,25 @@ public class Files {
                 _read(pointer, fd, buffer, null, length, offset, position, context, loop.getContext());
     }
 
+    /**
+     * Reads asynchronously into a direct buffer, completing through the read
+     * request callback with the given id. No context is held, the buffer
+     * is kept reachable until the request completes.
+     */
+    public int read(final int fd, final ByteBuffer buffer, final long offset, final long length, final long position, final long requestId) {
+        Objects.requireNonNull(buffer);
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("reads by request id need a direct buffer");
+        }
+        final OpenedFile file = getOpenedFile(fd);
+        if (file == null) {
+            callRequest(UV_FS_READ, requestId, -1, newEBADF("read", fd));
+            return -1;
+        }
+        LibUVPermission.checkReadFile(fd, file.getPath());
+        return _read_request(pointer, fd, buffer, length, offset, position, requestId);
+    }
+
     public int unlink(final String path) {
         Objects.requireNonNull(path);
         LibUVPermission.checkDeleteFile(path);
@@ -359,6 +397,30 @@ public class Files {
                 _write(pointer, fd, buffer, null, length, offset, position, context, loop.getContext());
     }
 
+    /**
+     * Writes asynchronously, completing through the write request callback
+     * with the given id. No context is held: heap bytes are copied, and a
+     * direct buffer is kept reachable until the request completes.
+     */
+    public int write(final int fd, final ByteBuffer buffer, final long offset, final long length, final long position, final long requestId) {
+        Objects.requireNonNull(buffer);
+        final OpenedFile file = getOpenedFile(fd);
+        if (file == null) {
+            callRequest(UV_FS_WRITE, requestId, -1, newEBADF("write", fd));
+            return -1;
+        }
+        LibUVPermission.checkWriteFile(fd, file.getPath());
+        assert(offset < buffer.limit());
+        assert(offset + length <= buffer.limit());
+        if (buffer.hasArray()) {
+            return _write_request(pointer, fd, null, buffer.array(), length, buffer.arrayOffset() + offset, position, requestId);
+        }
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer is neither direct nor backed by an accessible array");
+        }
+        return _write_request(pointer, fd, buffer, null, length, offset, position, requestId);
+    }
+
     public int mkdir(final String path, final int mode) {
         Objects.requireNonNull(path);
         LibUVPermission.checkWriteFile(path);
@@ -827,6 +889,23 @@ public class Files {
         }
     }
 
+    private void callRequest(final int type, final long requestId, final int result, final Exception error) {
+        switch (type) {
+            case UV_FS_READ:
+                if (onReadRequest != null) {
+                    loop.getCallbackHandler().handleRequestCallback(onReadRequest, requestId, result, error);
+                }
+                break;
+            case UV_FS_WRITE:
+                if (onWriteRequest != null) {
+                    loop.getCallbackHandler().handleRequestCallback(onWriteRequest, requestId, result, error);
+                }
+                break;
+            default:
+                assert false : "unsupported request type " + type;
+        }
+    }
+
     private static native void _static_initialize();
 
     private static native long _new();
@@ -841,10 +920,14 @@ public class Files {
 
     private native int _read(final long ptr, final int fd, final ByteBuffer buffer, final byte[] data, final long length, final long offset, final long position, final Object callback, final Object context);
 
+    private native int _read_request(final long ptr, final int fd, final ByteBuffer buffer, final long length, final long offset, final long position, final long requestId);
+
     private native int _unlink(final long ptr, final String path, final Object callback, final Object context);
 
     private native int _write(final long ptr, final int fd, final ByteBuffer buffer, final byte[] data, final long length, final long offset, final long position, final Object callback, final Object context);
 
+    private native int _write_request(final long ptr, final int fd, final ByteBuffer buffer, final byte[] data, final long length, final long offset, final long position, final long requestId);
+
     private native int _mkdir(final long ptr, final String path, final int mode, final Object callback, final Object context);
 
     private native int _rmdir(final long ptr, final String path, final Object callback, final Object context);
@@ -31,6 +31,8 @@ public final class LibUV {
 
     static {
         System.loadLibrary("avatar-js");
+        // the statics below throw native exceptions without a loop
+        NativeException.static_initialize();
     }
 
     private LibUV() {
@@ -167,6 +167,17 @@ public final class LibUVPermission extends BasicPermission {
         }
     }
 
+    // for an address already resolved, no lookup is needed
+    public static void checkUDPSend(final InetAddress addr, final int port) {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            if (addr.isMulticastAddress()) {
+                sm.checkMulticast(addr);
+            }
+            sm.checkConnect(addr.getHostAddress(), port);
+        }
+    }
+
     /*
      * Files
      */
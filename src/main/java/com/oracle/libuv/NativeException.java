@@ -28,6 +28,8 @@ package com.oracle.libuv;
 @SuppressWarnings("serial")
 public final class NativeException extends RuntimeException {
 
+    private static boolean initialized;
+
     private final int errno;
     private final String errnoString;
     private final String errnoMessage;
@@ -48,6 +50,20 @@ public final class NativeException extends RuntimeException {
         this.path = path;
     }
 
+    // a preallocated instance shared by every error with this errno, it
+    // records no stack trace and takes no suppressed exceptions
+    private NativeException(final int errno,
+                            final String errnoString,
+                            final String errnoMessage,
+                            final String message) {
+        super(message, null, false, false);
+        this.errno = errno;
+        this.errnoString = errnoString;
+        this.errnoMessage = errnoMessage;
+        this.syscall = null;
+        this.path = null;
+    }
+
     public NativeException(final String message) {
         super(message);
         this.errno = 0;
@@ -99,9 +115,46 @@ public final class NativeException extends RuntimeException {
         return sb.toString();
     }
 
-    public static void static_initialize() {
-        _static_initialize();
+    /**
+     * Returns the exception native code would raise for the given errno
+     * and syscall. Without a syscall this is what callbacks that only get
+     * an error code see, one of the preallocated instances if it is
+     * switched on for the errno.
+     */
+    public static NativeException fromErrno(final int errno, final String syscall) {
+        static_initialize();
+        return (NativeException) _new_exception(errno, syscall);
+    }
+
+    /**
+     * Makes native code pass to callbacks that only get an error code a
+     * single preallocated instance for each of the given errors, for
+     * example "ECONNRESET", "EPIPE" or "EAGAIN", instead of building a new
+     * exception with a stack trace every time. The shared instances are
+     * built once when this class initializes and carry no syscall and no
+     * stack trace; errors raised with a syscall, path or message still get
+     * their own exception. Meant to be called once at startup, before any
+     * loop runs.
+     */
+    public static synchronized void preallocate(final String... errnoStrings) {
+        static_initialize();
+        for (final String errnoString : errnoStrings) {
+            if (_preallocate(errnoString) < 0) {
+                throw new IllegalArgumentException("unknown errno: " + errnoString);
+            }
+        }
+    }
+
+    public static synchronized void static_initialize() {
+        if (!initialized) {
+            _static_initialize();
+            initialized = true;
+        }
     }
 
     private static native void _static_initialize();
+
+    private static native Throwable _new_exception(final int errno, final String syscall);
+
+    private static native int _preallocate(final String errnoString);
 }
@@ -29,6 +29,10 @@ import java.nio.ByteBuffer;
 
 import com.oracle.libuv.Address;
 import com.oracle.libuv.Stats;
+import com.oracle.libuv.handles.NativeBuffer;
+import com.oracle.libuv.handles.TCPHandle;
+import com.oracle.libuv.handles.UDPPeer;
+import com.oracle.libuv.handles.UDPRecvBatch;
 
 public interface CallbackHandler {
     public void handleAsyncCallback(AsyncCallback cb, int status);
@@ -38,14 +42,26 @@ public interface CallbackHandler {
     public void handleSignalCallback(SignalCallback cb, int signum);
     public void handleStreamReadCallback(StreamReadCallback cb, ByteBuffer data);
     public void handleStreamRead2Callback(StreamRead2Callback cb, ByteBuffer data, long handle, int type);
+    public void handleStreamReadIntoCallback(StreamReadIntoCallback cb, int nread, ByteBuffer buffer);
+    public void handleStreamNativeReadCallback(StreamNativeReadCallback cb, NativeBuffer data);
     public void handleStreamWriteCallback(StreamWriteCallback cb, int status, Exception error);
+    public void handleStreamWritesCallback(StreamWritesCallback cb, int count, long bytes, Exception error);
+    public void handleStreamWritabilityCallback(StreamWritabilityCallback cb, boolean writable);
+    public void handleStreamErrorCallback(StreamErrorCallback cb, Exception error);
+    public void handleStreamErrorCodeCallback(StreamErrorCodeCallback cb, int errno);
     public void handleFileCallback(FileCallback cb, Object context, Exception error);
     public void handleFileCloseCallback(FileCloseCallback cb, Object context, int fd, Exception error);
     public void handleFileOpenCallback(FileOpenCallback cb, Object context, int fd, Exception error);
     public void handleStreamConnectCallback(StreamConnectCallback cb, int status, Exception error);
     public void handleStreamConnectionCallback(StreamConnectionCallback cb, int status, Exception error);
+    public void handleTCPConnectionsCallback(TCPConnectionsCallback cb, TCPHandle[] clients);
     public void handleStreamCloseCallback(StreamCloseCallback cb);
     public void handleStreamShutdownCallback(StreamShutdownCallback cb, int status, Exception error);
+    public <H> void handleConnectionReadCallback(ConnectionReadCallback<H> cb, H handle, ByteBuffer data);
+    public <H> void handleConnectionWriteCallback(ConnectionWriteCallback<H> cb, H handle, int status, Exception error);
+    public <H> void handleConnectionWritabilityCallback(ConnectionWritabilityCallback<H> cb, H handle, boolean writable);
+    public <H> void handleConnectionShutdownCallback(ConnectionShutdownCallback<H> cb, H handle, int status, Exception error);
+    public <H> void handleConnectionCloseCallback(ConnectionCloseCallback<H> cb, H handle);
     public void handleFileReadCallback(FileReadCallback cb, Object context, int bytesRead, ByteBuffer data, Exception error);
     public void handleFileReadDirCallback(FileReadDirCallback cb, Object context, String[] names, Exception error);
     public void handleFileReadLinkCallback(FileReadLinkCallback cb, Object context, String name, Exception error);
@@ -59,6 +75,11 @@ public interface CallbackHandler {
     public void handleProcessExitCallback(ProcessExitCallback cb, int status, int signal, Exception error);
     public void handleTimerCallback(TimerCallback cb, int status);
     public void handleUDPRecvCallback(UDPRecvCallback cb, int nread, ByteBuffer data, Address address);
+    public void handleUDPNativeRecvCallback(UDPNativeRecvCallback cb, int nread, NativeBuffer data, Address address);
+    public void handleUDPPeerRecvCallback(UDPPeerRecvCallback cb, int nread, ByteBuffer data, UDPPeer peer);
+    public void handleUDPRecvBatchCallback(UDPRecvBatchCallback cb, UDPRecvBatch batch, Exception error);
     public void handleUDPSendCallback(UDPSendCallback cb, int status, Exception error);
+    public void handleUDPSendBatchCallback(UDPSendBatchCallback cb, int sent, Exception error);
     public void handleUDPCloseCallback(UDPCloseCallback cb);
+    public void handleRequestCallback(RequestCallback cb, long requestId, int result, Exception error);
 }
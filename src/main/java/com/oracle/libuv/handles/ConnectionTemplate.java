@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+import com.oracle.libuv.cb.ConnectionCloseCallback;
+import com.oracle.libuv.cb.ConnectionReadCallback;
+import com.oracle.libuv.cb.ConnectionShutdownCallback;
+import com.oracle.libuv.cb.ConnectionWritabilityCallback;
+import com.oracle.libuv.cb.ConnectionWriteCallback;
+
+/**
+ * Callbacks defined once on a listening stream and shared by every stream it
+ * accepts, so accepted streams need no callbacks of their own. Each callback
+ * gets the accepted stream it is called for. A callback set directly on an
+ * accepted stream takes precedence over the template. The template can no
+ * longer be changed once it has been set on a listening stream.
+ */
+public final class ConnectionTemplate<H extends Handle> {
+
+    private final StreamCallbackSet callbacks = new StreamCallbackSet();
+
+    public void setReadCallback(final ConnectionReadCallback<? super H> callback) {
+        checkNotShared();
+        callbacks.onConnectionRead = cast(callback);
+    }
+
+    public void setWriteCallback(final ConnectionWriteCallback<? super H> callback) {
+        checkNotShared();
+        callbacks.onConnectionWrite = cast(callback);
+    }
+
+    public void setWritabilityCallback(final ConnectionWritabilityCallback<? super H> callback) {
+        checkNotShared();
+        callbacks.onConnectionWritabilityChanged = cast(callback);
+    }
+
+    public void setShutdownCallback(final ConnectionShutdownCallback<? super H> callback) {
+        checkNotShared();
+        callbacks.onConnectionShutdown = cast(callback);
+    }
+
+    public void setCloseCallback(final ConnectionCloseCallback<? super H> callback) {
+        checkNotShared();
+        callbacks.onConnectionClose = cast(callback);
+    }
+
+    StreamCallbackSet share() {
+        callbacks.shared = true;
+        return callbacks;
+    }
+
+    private void checkNotShared() {
+        if (callbacks.shared) {
+            throw new IllegalStateException("connection template already in use");
+        }
+    }
+
+    // the listening stream only accepts streams of type H
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(final Object callback) {
+        return (T) callback;
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The java side of a loop's native event ring: callback records posted by
+ * handles, dispatched in batches. Must match EventRing in loop.h.
+ */
+final class EventRing {
+
+    private static final int COUNT = 0;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 16;
+    private static final int RELEASE_EVENT = 0;
+
+    private final ByteBuffer records;
+    private Handle[] handles = new Handle[16];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int nextId = 1;
+
+    EventRing(final ByteBuffer records) {
+        this.records = records.order(ByteOrder.nativeOrder());
+    }
+
+    int register(final Handle handle) {
+        final int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = nextId++;
+            if (id == handles.length) {
+                handles = Arrays.copyOf(handles, handles.length * 2);
+            }
+        }
+        handles[id] = handle;
+        return id;
+    }
+
+    boolean isEmpty() {
+        return records.getInt(COUNT) == 0;
+    }
+
+    void drain() {
+        try {
+            // handlers may cause more records to be posted while draining
+            for (int i = 0; i < records.getInt(COUNT); i++) {
+                final int offset = HEADER_SIZE + i * RECORD_SIZE;
+                final int id = records.getInt(offset);
+                final int type = records.getInt(offset + 4);
+                if (type == RELEASE_EVENT) {
+                    release(id);
+                } else {
+                    handles[id].dispatchEvent(type, records.getInt(offset + 8), records.getInt(offset + 12));
+                }
+            }
+        } finally {
+            records.putInt(COUNT, 0);
+        }
+    }
+
+    private void release(final int id) {
+        handles[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+}
@@ -55,6 +55,11 @@ public abstract class Handle implements Closeable {
         return _closing(pointer);
     }
 
+    // called with the records this handle posted to the loop's event ring
+    void dispatchEvent(final int type, final int status, final int value) {
+        assert false : "unexpected event " + type + " for " + this;
+    }
+
     @Override
     public int hashCode() {
         return (int) ((pointer & 0xffffffffL) ^ ((pointer >> 32) & 0xffffffffL));
@@ -49,6 +49,10 @@ public class IdleHandle extends Handle {
     protected IdleHandle(final LoopHandle loop) {
         super(_new(loop.pointer()), loop);
         _initialize(pointer);
+        final int eventId = loop.registerEvents(this);
+        if (eventId != 0) {
+            _set_event_id(pointer, eventId);
+        }
     }
 
     public int start() {
@@ -66,6 +70,11 @@ public class IdleHandle extends Handle {
         closed = true;
     }
 
+    @Override
+    void dispatchEvent(final int type, final int status, final int value) {
+        callback(type, status);
+    }
+
     @Override
     protected void finalize() throws Throwable {
         close();
@@ -86,6 +95,8 @@ public class IdleHandle extends Handle {
 
     private native void _initialize(final long ptr);
 
+    private native void _set_event_id(final long ptr, final int id);
+
     private native int _start(final long ptr);
 
     private native int _stop(final long ptr);
@@ -33,6 +33,11 @@ import com.oracle.libuv.cb.AsyncCallback;
 import com.oracle.libuv.cb.CallbackExceptionHandler;
 import com.oracle.libuv.cb.CallbackHandler;
 import com.oracle.libuv.cb.CheckCallback;
+import com.oracle.libuv.cb.ConnectionCloseCallback;
+import com.oracle.libuv.cb.ConnectionReadCallback;
+import com.oracle.libuv.cb.ConnectionShutdownCallback;
+import com.oracle.libuv.cb.ConnectionWritabilityCallback;
+import com.oracle.libuv.cb.ConnectionWriteCallback;
 import com.oracle.libuv.cb.FileCallback;
 import com.oracle.libuv.cb.FileCloseCallback;
 import com.oracle.libuv.cb.FileEventCallback;
@@ -49,17 +54,29 @@ import com.oracle.libuv.cb.IdleCallback;
 import com.oracle.libuv.cb.PollCallback;
 import com.oracle.libuv.cb.ProcessCloseCallback;
 import com.oracle.libuv.cb.ProcessExitCallback;
+import com.oracle.libuv.cb.RequestCallback;
 import com.oracle.libuv.cb.SignalCallback;
 import com.oracle.libuv.cb.StreamCloseCallback;
 import com.oracle.libuv.cb.StreamConnectCallback;
 import com.oracle.libuv.cb.StreamConnectionCallback;
+import com.oracle.libuv.cb.StreamErrorCallback;
+import com.oracle.libuv.cb.StreamErrorCodeCallback;
+import com.oracle.libuv.cb.StreamNativeReadCallback;
 import com.oracle.libuv.cb.StreamRead2Callback;
 import com.oracle.libuv.cb.StreamReadCallback;
+import com.oracle.libuv.cb.StreamReadIntoCallback;
 import com.oracle.libuv.cb.StreamShutdownCallback;
+import com.oracle.libuv.cb.StreamWritabilityCallback;
 import com.oracle.libuv.cb.StreamWriteCallback;
+import com.oracle.libuv.cb.StreamWritesCallback;
+import com.oracle.libuv.cb.TCPConnectionsCallback;
 import com.oracle.libuv.cb.TimerCallback;
 import com.oracle.libuv.cb.UDPCloseCallback;
+import com.oracle.libuv.cb.UDPNativeRecvCallback;
+import com.oracle.libuv.cb.UDPPeerRecvCallback;
+import com.oracle.libuv.cb.UDPRecvBatchCallback;
 import com.oracle.libuv.cb.UDPRecvCallback;
+import com.oracle.libuv.cb.UDPSendBatchCallback;
 import com.oracle.libuv.cb.UDPSendCallback;
 
 public final class LoopCallbackHandler implements CallbackHandler {
@@ -124,6 +141,24 @@ public final class LoopCallbackHandler implements CallbackHandler {
         }
     }
 
+    @Override
+    public void handleStreamReadIntoCallback(final StreamReadIntoCallback cb, final int nread, final ByteBuffer buffer) {
+        try {
+            cb.onRead(nread, buffer);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public void handleStreamNativeReadCallback(final StreamNativeReadCallback cb, final NativeBuffer data) {
+        try {
+            cb.onRead(data);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
     @Override
     public void handleStreamWriteCallback(final StreamWriteCallback cb, final int status, final Exception error) {
         try {
@@ -133,6 +168,42 @@ public final class LoopCallbackHandler implements CallbackHandler {
         }
     }
 
+    @Override
+    public void handleStreamWritesCallback(final StreamWritesCallback cb, final int count, final long bytes, final Exception error) {
+        try {
+            cb.onWrites(count, bytes, error);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public void handleStreamWritabilityCallback(final StreamWritabilityCallback cb, final boolean writable) {
+        try {
+            cb.onWritabilityChanged(writable);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public void handleStreamErrorCallback(final StreamErrorCallback cb, final Exception error) {
+        try {
+            cb.onError(error);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public void handleStreamErrorCodeCallback(final StreamErrorCodeCallback cb, final int errno) {
+        try {
+            cb.onError(errno);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
     @Override
     public void handleStreamConnectCallback(final StreamConnectCallback cb, final int status, final Exception error) {
         try {
@@ -151,6 +222,15 @@ public final class LoopCallbackHandler implements CallbackHandler {
         }
     }
 
+    @Override
+    public void handleTCPConnectionsCallback(final TCPConnectionsCallback cb, final TCPHandle[] clients) {
+        try {
+            cb.onConnections(clients);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
     @Override
     public void handleStreamCloseCallback(final StreamCloseCallback cb) {
         try {
@@ -169,6 +249,51 @@ public final class LoopCallbackHandler implements CallbackHandler {
         }
     }
 
+    @Override
+    public <H> void handleConnectionReadCallback(final ConnectionReadCallback<H> cb, final H handle, final ByteBuffer data) {
+        try {
+            cb.onRead(handle, data);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public <H> void handleConnectionWriteCallback(final ConnectionWriteCallback<H> cb, final H handle, final int status, final Exception error) {
+        try {
+            cb.onWrite(handle, status, error);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public <H> void handleConnectionWritabilityCallback(final ConnectionWritabilityCallback<H> cb, final H handle, final boolean writable) {
+        try {
+            cb.onWritabilityChanged(handle, writable);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public <H> void handleConnectionShutdownCallback(final ConnectionShutdownCallback<H> cb, final H handle, final int status, final Exception error) {
+        try {
+            cb.onShutdown(handle, status, error);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public <H> void handleConnectionCloseCallback(final ConnectionCloseCallback<H> cb, final H handle) {
+        try {
+            cb.onClose(handle);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
     @Override
     public void handleFileCallback(final FileCallback cb, final Object context, final Exception error) {
         try {
@@ -313,6 +438,33 @@ public final class LoopCallbackHandler implements CallbackHandler {
         }
     }
 
+    @Override
+    public void handleUDPNativeRecvCallback(final UDPNativeRecvCallback cb, final int nread, final NativeBuffer data, final Address address) {
+        try {
+            cb.onRecv(nread, data, address);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public void handleUDPPeerRecvCallback(final UDPPeerRecvCallback cb, final int nread, final ByteBuffer data, final UDPPeer peer) {
+        try {
+            cb.onRecv(nread, data, peer);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
+    @Override
+    public void handleUDPRecvBatchCallback(final UDPRecvBatchCallback cb, final UDPRecvBatch batch, final Exception error) {
+        try {
+            cb.onRecv(batch, error);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
     @Override
     public void handleUDPSendCallback(final UDPSendCallback cb, final int status, final Exception error) {
         try {
@@ -322,6 +474,15 @@ public final class LoopCallbackHandler implements CallbackHandler {
         }
     }
 
+    @Override
+    public void handleUDPSendBatchCallback(final UDPSendBatchCallback cb, final int sent, final Exception error) {
+        try {
+            cb.onSend(sent, error);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
     @Override
     public void handleUDPCloseCallback(final UDPCloseCallback cb) {
         try {
@@ -339,4 +500,14 @@ public final class LoopCallbackHandler implements CallbackHandler {
             exceptionHandler.handle(ex);
         }
     }
+
+    @Override
+    public void handleRequestCallback(final RequestCallback cb, final long requestId, final int result, final Exception error) {
+        try {
+            cb.onComplete(requestId, result, error);
+        } catch (final Exception ex) {
+            exceptionHandler.handle(ex);
+        }
+    }
+
 }
@@ -26,6 +26,9 @@
 package com.oracle.libuv.handles;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
 
 import com.oracle.libuv.LibUVPermission;
 import com.oracle.libuv.NativeException;
@@ -42,6 +45,27 @@ public class LoopHandle implements Closeable {
         _static_initialize();
     }
 
+    // must match LoopData::MAX_STAGING_POOLS
+    private static final int MAX_STAGING_SIZES = 8;
+
+    // size, acquired, reused, outstanding and idle for each native pool,
+    // must match POOL_COUNTERS in loop.cpp
+    private static final int POOL_COUNTERS = 5;
+
+    /**
+     * Kinds of native requests the loop keeps free lists of.
+     */
+    // must match LoopData::RequestKind
+    public enum RequestType {
+        WRITE,
+        SHUTDOWN,
+        CONNECT,
+        UDP_SEND,
+        FS,
+        CONTEXT,
+        FILE
+    }
+
     // Track the number of created LoopHandles.
     private static int createdLoopCount = 0;
 
@@ -51,6 +75,9 @@ public class LoopHandle implements Closeable {
     private final long pointer;
     private Throwable pendingException;
     private boolean closed;
+    private StreamFlusher streamFlusher;
+    private StringEncoder stringEncoder;
+    private EventRing events;
 
     private enum RunMode {
 
@@ -127,19 +154,39 @@ public class LoopHandle implements Closeable {
         return exceptionHandler;
     }
 
+    StreamFlusher getStreamFlusher() {
+        if (streamFlusher == null) {
+            streamFlusher = new StreamFlusher(this);
+        }
+        return streamFlusher;
+    }
+
+    StringEncoder getStringEncoder() {
+        if (stringEncoder == null) {
+            stringEncoder = new StringEncoder();
+        }
+        return stringEncoder;
+    }
+
     public boolean runNoWait() throws Throwable {
         throwPendingException();
-        return _run(pointer, RunMode.NOWAIT.value) != 0;
+        final boolean alive = _run(pointer, RunMode.NOWAIT.value) != 0;
+        drainEvents();
+        return alive;
     }
 
     public boolean runOnce() throws Throwable {
         throwPendingException();
-        return _run(pointer, RunMode.ONCE.value) != 0;
+        final boolean alive = _run(pointer, RunMode.ONCE.value) != 0;
+        drainEvents();
+        return alive;
     }
 
     public boolean run() throws Throwable {
         throwPendingException();
-        return _run(pointer, RunMode.DEFAULT.value) != 0;
+        final boolean alive = _run(pointer, RunMode.DEFAULT.value) != 0;
+        drainEvents();
+        return alive;
     }
 
     public void stop() {
@@ -175,6 +222,83 @@ public class LoopHandle implements Closeable {
         return pointer;
     }
 
+    /**
+     * Sets the size classes, in ascending order, of the page aligned
+     * native buffers that heap arrays are copied into when written
+     * asynchronously. Larger writes get a buffer of their own. Buffers in
+     * use keep their old pools.
+     */
+    public void setStagingSizes(final int... sizes) {
+        if (sizes.length == 0 || sizes.length > MAX_STAGING_SIZES) {
+            throw new IllegalArgumentException("invalid number of staging sizes: " + sizes.length);
+        }
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] <= 0 || (i > 0 && sizes[i] <= sizes[i - 1])) {
+                throw new IllegalArgumentException("staging sizes must be positive and ascending");
+            }
+        }
+        _set_staging_sizes(pointer, sizes);
+    }
+
+    /**
+     * Makes timer, check, idle and poll handles created from now on post
+     * their callbacks as records into a native buffer instead of calling
+     * into java one by one. The records are dispatched in one upcall per
+     * loop iteration, when the buffer fills up and when run returns, so
+     * callbacks of other handles may run ahead of records posted earlier
+     * in the same iteration.
+     */
+    public void enableEventRing(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("invalid event ring capacity: " + capacity);
+        }
+        if (events != null) {
+            throw new IllegalStateException("event ring already enabled");
+        }
+        events = new EventRing(_enable_events(pointer, capacity));
+    }
+
+    public boolean isEventRingEnabled() {
+        return events != null;
+    }
+
+    int registerEvents(final Handle handle) {
+        return events == null ? 0 : events.register(handle);
+    }
+
+    /**
+     * Returns the counters of the staging buffer pools, one per size class
+     * in ascending order of size, which are 4k, 16k and 64k unless changed
+     * with {@link #setStagingSizes}.
+     */
+    public PoolStats[] getStagingStats() {
+        return toPoolStats(_staging_stats(pointer));
+    }
+
+    /**
+     * Returns the counters of the free lists native requests and their
+     * holders are taken from, by kind of request.
+     */
+    public Map<RequestType, PoolStats> getRequestStats() {
+        final PoolStats[] stats = toPoolStats(_request_stats(pointer));
+        final RequestType[] types = RequestType.values();
+        assert stats.length == types.length;
+        final Map<RequestType, PoolStats> map = new EnumMap<>(RequestType.class);
+        for (int i = 0; i < types.length; i++) {
+            map.put(types[i], stats[i]);
+        }
+        return map;
+    }
+
+    static PoolStats[] toPoolStats(final long[] counters) {
+        final PoolStats[] stats = new PoolStats[counters.length / POOL_COUNTERS];
+        for (int i = 0; i < stats.length; i++) {
+            final int c = i * POOL_COUNTERS;
+            stats[i] = new PoolStats(counters[c], counters[c + 1], counters[c + 2], counters[c + 3], counters[c + 4]);
+        }
+        return stats;
+    }
+
     @Override
     protected void finalize() throws Throwable {
         close();
@@ -182,6 +306,16 @@ public class LoopHandle implements Closeable {
         super.finalize();
     }
 
+    private void drainEvents() {
+        if (events != null && !events.isEmpty()) {
+            events.drain();
+        }
+    }
+
+    private void callEvents() {
+        events.drain();
+    }
+
     private void throwPendingException() throws Throwable {
         if (pendingException != null) {
             final Throwable pex = pendingException;
@@ -206,4 +340,12 @@ public class LoopHandle implements Closeable {
 
     private native NativeException _get_last_error(final long ptr);
 
+    private native void _set_staging_sizes(final long ptr, final int[] sizes);
+
+    private native long[] _staging_stats(final long ptr);
+
+    private native long[] _request_stats(final long ptr);
+
+    private native ByteBuffer _enable_events(final long ptr, final int capacity);
+
 }
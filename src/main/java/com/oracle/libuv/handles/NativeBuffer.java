@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.oracle.libuv.NativeException;
+
+/**
+ * Native memory holding inbound data, owned by java. The memory is freed
+ * when the last reference is released, or failing that, once the buffer
+ * becomes unreachable. Since collection may come late the native memory
+ * held by buffers handed to native read and recv callbacks is bounded by
+ * a limit, set with the {@code com.oracle.libuv.nativeBufferLimit} system
+ * property; data for those callbacks that would go over it is dropped and
+ * the read fails with a {@link NativeException}. Data for the plain
+ * callbacks, which cannot release it, is always delivered and counted.
+ * <p>
+ * A slice shares the memory of the buffer it was cut from and holds a
+ * reference of its own, so data can be handed on, for example to
+ * {@link StreamHandle#write(NativeBuffer)}, without being copied.
+ * <p>
+ * Buffers may be released from any thread. The {@link ByteBuffer} of a
+ * released buffer must not be used any more.
+ */
+public final class NativeBuffer {
+
+    private static final long LIMIT = Long.getLong("com.oracle.libuv.nativeBufferLimit", 256L * 1024 * 1024);
+
+    private static final ReferenceQueue<ByteBuffer> QUEUE = new ReferenceQueue<>();
+
+    // keeps the references alive until their memory is freed
+    private static final Set<Memory> LIVE = Collections.newSetFromMap(new ConcurrentHashMap<Memory, Boolean>());
+
+    private static final AtomicLong allocatedMemory = new AtomicLong();
+    private static final AtomicLong collectedBuffers = new AtomicLong();
+
+    private final ByteBuffer buffer;
+    private final Memory memory;
+
+    private NativeBuffer(final ByteBuffer buffer, final Memory memory) {
+        this.buffer = buffer;
+        this.memory = memory;
+    }
+
+    static NativeBuffer adopt(final ByteBuffer buffer, final long address) {
+        assert buffer != null;
+        assert address != 0;
+        collect();
+        return new NativeBuffer(buffer, new Memory(buffer, address));
+    }
+
+    // for buffers handed to callbacks that can release them
+    static NativeBuffer adoptWithinLimit(final ByteBuffer buffer, final long address) {
+        assert buffer != null;
+        assert address != 0;
+        collect();
+        if (allocatedMemory.get() + buffer.capacity() > LIMIT) {
+            // nobody will ever see the memory, it goes back right away
+            _free(address);
+            throw new NativeException("native buffer limit of " + LIMIT + " bytes reached");
+        }
+        return new NativeBuffer(buffer, new Memory(buffer, address));
+    }
+
+    public ByteBuffer buffer() {
+        if (memory.refs.get() <= 0) {
+            throw new IllegalStateException("buffer already released");
+        }
+        return buffer;
+    }
+
+    public int refCount() {
+        return Math.max(memory.refs.get(), 0);
+    }
+
+    public NativeBuffer retain() {
+        int refs;
+        do {
+            refs = memory.refs.get();
+            if (refs <= 0) {
+                throw new IllegalStateException("buffer already released");
+            }
+        } while (!memory.refs.compareAndSet(refs, refs + 1));
+        return this;
+    }
+
+    /**
+     * A buffer over {@code length} bytes of this one starting at
+     * {@code offset}, sharing its memory and holding a reference to it
+     * until released.
+     */
+    public NativeBuffer slice(final int offset, final int length) {
+        final ByteBuffer view = buffer().duplicate();
+        if (offset < 0 || length < 0 || offset + length > view.capacity()) {
+            throw new IndexOutOfBoundsException("invalid slice: " + offset + ", " + length);
+        }
+        view.clear();
+        view.position(offset);
+        view.limit(offset + length);
+        retain();
+        return new NativeBuffer(view.slice(), memory);
+    }
+
+    /**
+     * Drops a reference, returning true if that freed the memory.
+     */
+    public boolean release() {
+        int refs;
+        do {
+            refs = memory.refs.get();
+            if (refs <= 0) {
+                throw new IllegalStateException("buffer already released");
+            }
+        } while (!memory.refs.compareAndSet(refs, refs - 1));
+        return refs == 1 && memory.free();
+    }
+
+    /**
+     * The native memory held by buffers not yet freed, in bytes.
+     */
+    public static long allocatedMemory() {
+        return allocatedMemory.get();
+    }
+
+    public static int allocatedBuffers() {
+        return LIVE.size();
+    }
+
+    /**
+     * The number of buffers freed because they became unreachable without
+     * being released.
+     */
+    public static long collectedBuffers() {
+        return collectedBuffers.get();
+    }
+
+    private static void collect() {
+        Memory memory;
+        while ((memory = (Memory) QUEUE.poll()) != null) {
+            if (memory.free()) {
+                collectedBuffers.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class Memory extends PhantomReference<ByteBuffer> {
+
+        private final long address;
+        private final int size;
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private Memory(final ByteBuffer buffer, final long address) {
+            super(buffer, QUEUE);
+            this.address = address;
+            this.size = buffer.capacity();
+            LIVE.add(this);
+            allocatedMemory.addAndGet(size);
+        }
+
+        private boolean free() {
+            if (!LIVE.remove(this)) {
+                return false;
+            }
+            clear();
+            allocatedMemory.addAndGet(-size);
+            _free(address);
+            return true;
+        }
+    }
+
+    private static native void _free(final long address);
+
+}
@@ -53,6 +53,13 @@ public class PipeHandle extends StreamHandle {
         return _bind(pointer, name);
     }
 
+    /**
+     * Sets the callbacks shared by every pipe accepted from now on.
+     */
+    public void setConnectionTemplate(final ConnectionTemplate<? super PipeHandle> template) {
+        useConnectionTemplate(template);
+    }
+
     @Override
     public int accept(final StreamHandle client) {
         LibUVPermission.checkPermission(LibUVPermission.PIPE_ACCEPT);
@@ -49,11 +49,19 @@ public class PollHandle extends Handle {
     protected PollHandle(final LoopHandle loop, final int fd) {
         super(_new(loop.pointer(), fd), loop);
         _initialize(pointer);
+        final int eventId = loop.registerEvents(this);
+        if (eventId != 0) {
+            _set_event_id(pointer, eventId);
+        }
     }
 
     protected PollHandle(final LoopHandle loop, final long socket) {
         super(_new(loop.pointer(), socket), loop);
         _initialize(pointer);
+        final int eventId = loop.registerEvents(this);
+        if (eventId != 0) {
+            _set_event_id(pointer, eventId);
+        }
     }
 
     public int start(int events) {
@@ -70,6 +78,11 @@ public class PollHandle extends Handle {
         }
     }
 
+    @Override
+    void dispatchEvent(final int type, final int status, final int value) {
+        callPoll(status, value);
+    }
+
     @Override
     protected void finalize() throws Throwable {
         close();
@@ -88,6 +101,8 @@ public class PollHandle extends Handle {
 
     private native void _initialize(final long ptr);
 
+    private native void _set_event_id(final long ptr, final int id);
+
     private native int _start(final long ptr, final int events);
 
     private native int _stop(final long ptr);
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+/**
+ * A snapshot of the counters of a native buffer pool.
+ */
+public final class PoolStats {
+
+    private final long bufferSize;
+    private final long acquired;
+    private final long reused;
+    private final long outstanding;
+    private final long idle;
+
+    PoolStats(final long bufferSize, final long acquired, final long reused, final long outstanding, final long idle) {
+        this.bufferSize = bufferSize;
+        this.acquired = acquired;
+        this.reused = reused;
+        this.outstanding = outstanding;
+        this.idle = idle;
+    }
+
+    public long bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * The number of buffers handed out since the pool was created.
+     */
+    public long acquired() {
+        return acquired;
+    }
+
+    /**
+     * The number of buffers handed out from the free list, without
+     * allocating.
+     */
+    public long reused() {
+        return reused;
+    }
+
+    public long outstanding() {
+        return outstanding;
+    }
+
+    public long idle() {
+        return idle;
+    }
+
+    @Override
+    public String toString() {
+        return "{ bufferSize: " + bufferSize +
+                " acquired: " + acquired +
+                " reused: " + reused +
+                " outstanding: " + outstanding +
+                " idle: " + idle + " }";
+    }
+
+}
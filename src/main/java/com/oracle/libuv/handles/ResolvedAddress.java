@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * An address and port encoded once into a native sockaddr, for sending to
+ * or connecting to the same peer over and over without parsing a host
+ * string every time. Instances are immutable and may be shared between
+ * handles and loops.
+ */
+public final class ResolvedAddress {
+
+    private static final int SIZE = _size();
+
+    private final InetAddress address;
+    private final String host;
+    private final int port;
+    // holds the sockaddr that pointer points into
+    private final ByteBuffer sockaddr;
+    private final long pointer;
+
+    public ResolvedAddress(final InetAddress address, final int port) {
+        Objects.requireNonNull(address);
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("port out of range: " + port);
+        }
+        this.address = address;
+        this.host = address.getHostAddress();
+        this.port = port;
+        this.sockaddr = ByteBuffer.allocateDirect(SIZE);
+        final int scopeId = address instanceof Inet6Address ? ((Inet6Address) address).getScopeId() : 0;
+        this.pointer = _encode(sockaddr, address.getAddress(), port, scopeId);
+    }
+
+    /**
+     * Resolves the host, which may be a name or a literal address, once
+     * and for all.
+     */
+    public static ResolvedAddress of(final String host, final int port) throws UnknownHostException {
+        return new ResolvedAddress(InetAddress.getByName(host), port);
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * The address in its literal form.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isIPv6() {
+        return address instanceof Inet6Address;
+    }
+
+    long pointer() {
+        return pointer;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof ResolvedAddress)) {
+            return false;
+        }
+        final ResolvedAddress that = (ResolvedAddress) other;
+        return port == that.port && address.equals(that.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return address.hashCode() * 31 + port;
+    }
+
+    @Override
+    public String toString() {
+        return "{ip: " + host +
+                ", port: " + port +
+                ", family: " + (isIPv6() ? "IPv6" : "IPv4") + "}";
+    }
+
+    private static native int _size();
+
+    private static native long _encode(final ByteBuffer buffer, final byte[] address, final int port, final int scopeId);
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+import com.oracle.libuv.cb.ConnectionCloseCallback;
+import com.oracle.libuv.cb.ConnectionReadCallback;
+import com.oracle.libuv.cb.ConnectionShutdownCallback;
+import com.oracle.libuv.cb.ConnectionWritabilityCallback;
+import com.oracle.libuv.cb.ConnectionWriteCallback;
+import com.oracle.libuv.cb.RequestCallback;
+import com.oracle.libuv.cb.StreamCloseCallback;
+import com.oracle.libuv.cb.StreamConnectCallback;
+import com.oracle.libuv.cb.StreamConnectionCallback;
+import com.oracle.libuv.cb.StreamErrorCallback;
+import com.oracle.libuv.cb.StreamErrorCodeCallback;
+import com.oracle.libuv.cb.StreamNativeReadCallback;
+import com.oracle.libuv.cb.StreamRead2Callback;
+import com.oracle.libuv.cb.StreamReadCallback;
+import com.oracle.libuv.cb.StreamReadIntoCallback;
+import com.oracle.libuv.cb.StreamShutdownCallback;
+import com.oracle.libuv.cb.StreamWritabilityCallback;
+import com.oracle.libuv.cb.StreamWriteCallback;
+
+/**
+ * The callbacks of a stream. A shared set is never modified, a stream
+ * copies it before changing one of its callbacks, so that any number of
+ * streams can point to the same set.
+ */
+final class StreamCallbackSet {
+
+    static final StreamCallbackSet NONE = new StreamCallbackSet();
+
+    static {
+        NONE.shared = true;
+    }
+
+    boolean shared;
+
+    StreamReadCallback onRead;
+    StreamNativeReadCallback onNativeRead;
+    StreamRead2Callback onRead2;
+    StreamReadIntoCallback onReadInto;
+    StreamWriteCallback onWrite;
+    StreamWritabilityCallback onWritabilityChanged;
+    StreamErrorCallback onError;
+    StreamErrorCodeCallback onErrorCode;
+    StreamConnectCallback onConnect;
+    StreamConnectionCallback onConnection;
+    StreamCloseCallback onClose;
+    StreamShutdownCallback onShutdown;
+
+    // completions of requests made with a request id
+    RequestCallback onWriteRequest;
+    RequestCallback onShutdownRequest;
+    RequestCallback onConnectRequest;
+
+    // from a connection template, used when the plain callback is not set
+    ConnectionReadCallback<StreamHandle> onConnectionRead;
+    ConnectionWriteCallback<StreamHandle> onConnectionWrite;
+    ConnectionWritabilityCallback<StreamHandle> onConnectionWritabilityChanged;
+    ConnectionShutdownCallback<StreamHandle> onConnectionShutdown;
+    ConnectionCloseCallback<StreamHandle> onConnectionClose;
+
+    // handed to the streams accepted by a listening stream
+    StreamCallbackSet accepted;
+
+    StreamCallbackSet copy() {
+        final StreamCallbackSet copy = new StreamCallbackSet();
+        copy.onRead = onRead;
+        copy.onNativeRead = onNativeRead;
+        copy.onRead2 = onRead2;
+        copy.onReadInto = onReadInto;
+        copy.onWrite = onWrite;
+        copy.onWritabilityChanged = onWritabilityChanged;
+        copy.onError = onError;
+        copy.onErrorCode = onErrorCode;
+        copy.onConnect = onConnect;
+        copy.onConnection = onConnection;
+        copy.onClose = onClose;
+        copy.onShutdown = onShutdown;
+        copy.onWriteRequest = onWriteRequest;
+        copy.onShutdownRequest = onShutdownRequest;
+        copy.onConnectRequest = onConnectRequest;
+        copy.onConnectionRead = onConnectionRead;
+        copy.onConnectionWrite = onConnectionWrite;
+        copy.onConnectionWritabilityChanged = onConnectionWritabilityChanged;
+        copy.onConnectionShutdown = onConnectionShutdown;
+        copy.onConnectionClose = onConnectionClose;
+        copy.accepted = accepted;
+        return copy;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+import java.util.ArrayList;
+
+import com.oracle.libuv.cb.CheckCallback;
+import com.oracle.libuv.cb.IdleCallback;
+
+/**
+ * Flushes the writes of auto-flushing streams at the end of the loop
+ * iteration in which they were made. The check handle flushes after the
+ * I/O callbacks of an iteration, the idle handle keeps the next poll from
+ * blocking while writes made after the check phase are still queued.
+ */
+final class StreamFlusher {
+
+    private final LoopHandle loop;
+    private final ArrayList<StreamHandle> scheduled = new ArrayList<>();
+    private CheckHandle check;
+    private IdleHandle idle;
+
+    StreamFlusher(final LoopHandle loop) {
+        this.loop = loop;
+    }
+
+    void schedule(final StreamHandle stream) {
+        if (scheduled.isEmpty()) {
+            start();
+        }
+        scheduled.add(stream);
+    }
+
+    private void start() {
+        if (check == null) {
+            check = new CheckHandle(loop);
+            check.setCheckCallback(new CheckCallback() {
+                @Override
+                public void onCheck(final int status) throws Exception {
+                    flush();
+                }
+            });
+            idle = new IdleHandle(loop);
+            idle.setIdleCallback(new IdleCallback() {
+                @Override
+                public void onIdle(final int status) throws Exception {
+                    flush();
+                }
+            });
+        }
+        check.start();
+        idle.start();
+    }
+
+    private void flush() {
+        // streams scheduled while flushing wait for the next round
+        final StreamHandle[] streams = scheduled.toArray(new StreamHandle[scheduled.size()]);
+        scheduled.clear();
+        for (final StreamHandle stream : streams) {
+            stream.flushWrites();
+        }
+        if (scheduled.isEmpty()) {
+            check.stop();
+            idle.stop();
+        }
+    }
+
+}
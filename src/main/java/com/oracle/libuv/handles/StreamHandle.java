@@ -27,62 +27,223 @@ package com.oracle.libuv.handles;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Objects;
 
+import com.oracle.libuv.NativeException;
+
+import com.oracle.libuv.cb.RequestCallback;
 import com.oracle.libuv.cb.StreamCloseCallback;
 import com.oracle.libuv.cb.StreamConnectCallback;
 import com.oracle.libuv.cb.StreamConnectionCallback;
+import com.oracle.libuv.cb.StreamErrorCallback;
+import com.oracle.libuv.cb.StreamErrorCodeCallback;
+import com.oracle.libuv.cb.StreamNativeReadCallback;
 import com.oracle.libuv.cb.StreamRead2Callback;
 import com.oracle.libuv.cb.StreamReadCallback;
+import com.oracle.libuv.cb.StreamReadIntoCallback;
 import com.oracle.libuv.cb.StreamShutdownCallback;
+import com.oracle.libuv.cb.StreamWritabilityCallback;
 import com.oracle.libuv.cb.StreamWriteCallback;
+import com.oracle.libuv.cb.StreamWritesCallback;
 
 class StreamHandle extends Handle {
 
+    private static final int MAX_READ_SIZE = 64 * 1024;
+
+    // must be equal to Framer::Mode in framer.h
+    private static final int FRAMING_NONE = 0;
+    private static final int FRAMING_FIXED_LENGTH = 1;
+    private static final int FRAMING_LENGTH_PREFIX = 2;
+    private static final int FRAMING_DELIMITER = 3;
+    private static final int MAX_DELIMITER_SIZE = 16;
+
+    // must be equal to StreamRequestType in stream.h
+    private static final int WRITE_REQUEST = 1;
+    private static final int SHUTDOWN_REQUEST = 2;
+    private static final int CONNECT_REQUEST = 3;
+
     protected boolean closed;
     private boolean readStarted;
+    private boolean readBufferRetained;
+    private ByteBuffer[] readBuffers;
+    private int corked;
+    private boolean autoFlush;
+    private boolean flushScheduled;
+    private ArrayList<ByteBuffer> pendingWrites;
+    private long queuedWriteBytes;
+    private long lowWatermark = 0;
+    private long highWatermark = Long.MAX_VALUE;
+    private boolean aboveHighWatermark;
 
-    private StreamReadCallback onRead = null;
-    private StreamRead2Callback onRead2 = null;
-    private StreamWriteCallback onWrite = null;
-    private StreamConnectCallback onConnect = null;
-    private StreamConnectionCallback onConnection = null;
-    private StreamCloseCallback onClose = null;
-    private StreamShutdownCallback onShutdown = null;
+    private StreamCallbackSet callbacks = StreamCallbackSet.NONE;
+
+    // not in the callback set since it switches native write batching
+    private StreamWritesCallback onWrites;
+
+    // pooled read buffers kept past their callback, by the exact buffer
+    // handed out, to the native memory behind them
+    private static final Map<ByteBuffer, Long> retainedReadBuffers = new IdentityHashMap<>();
 
     static {
         _static_initialize();
     }
 
     public void setReadCallback(final StreamReadCallback callback) {
-        onRead = callback;
+        ownCallbacks().onRead = callback;
+    }
+
+    /**
+     * Takes precedence over the read callback. The callback owns the
+     * {@link NativeBuffer} it gets and should release it once done with
+     * the data, which may be after the callback returns. A buffer that is
+     * never released is freed when it gets collected.
+     */
+    public void setNativeReadCallback(final StreamNativeReadCallback callback) {
+        ownCallbacks().onNativeRead = callback;
     }
 
     public void setRead2Callback(final StreamRead2Callback callback) {
-        onRead2 = callback;
+        ownCallbacks().onRead2 = callback;
+    }
+
+    public void setReadIntoCallback(final StreamReadIntoCallback callback) {
+        ownCallbacks().onReadInto = callback;
     }
 
     public void setWriteCallback(final StreamWriteCallback callback) {
-        onWrite = callback;
+        ownCallbacks().onWrite = callback;
+    }
+
+    public void setWritabilityCallback(final StreamWritabilityCallback callback) {
+        ownCallbacks().onWritabilityChanged = callback;
+    }
+
+    /**
+     * Reports write completions together, at most once per loop iteration,
+     * instead of through the write callback: the number of writes and of
+     * bytes completed, and the error of the first write that failed if
+     * any. Unlike the other callbacks it is not passed on to accepted
+     * streams. Setting it back to null reports what has completed so far
+     * and returns to the write callback.
+     */
+    public void setWritesCallback(final StreamWritesCallback callback) {
+        if (callback == null && onWrites != null) {
+            // completions so far go to the callback being replaced
+            _set_write_batching(pointer, false);
+        } else if (callback != null && onWrites == null) {
+            _set_write_batching(pointer, true);
+        }
+        onWrites = callback;
+    }
+
+    /**
+     * Called when a write made with {@code writeAndForget} fails.
+     */
+    public void setErrorCallback(final StreamErrorCallback callback) {
+        ownCallbacks().onError = callback;
+    }
+
+    /**
+     * Called with just the errno when a write made with
+     * {@code writeAndForget} fails, no exception is built for it. Takes
+     * precedence over the error callback.
+     */
+    public void setErrorCodeCallback(final StreamErrorCodeCallback callback) {
+        ownCallbacks().onErrorCode = callback;
     }
 
     public void setConnectCallback(final StreamConnectCallback callback) {
-        onConnect = callback;
+        ownCallbacks().onConnect = callback;
     }
 
     public void setConnectionCallback(final StreamConnectionCallback callback) {
-        onConnection = callback;
+        ownCallbacks().onConnection = callback;
     }
 
     public void setCloseCallback(final StreamCloseCallback callback) {
-        onClose = callback;
+        ownCallbacks().onClose = callback;
     }
 
     public void setShutdownCallback(final StreamShutdownCallback callback) {
-        onShutdown = callback;
+        ownCallbacks().onShutdown = callback;
+    }
+
+    /**
+     * Completes writes made with a request id, with the number of bytes
+     * written as the result on success.
+     */
+    public void setWriteRequestCallback(final RequestCallback callback) {
+        ownCallbacks().onWriteRequest = callback;
+    }
+
+    public void setShutdownRequestCallback(final RequestCallback callback) {
+        ownCallbacks().onShutdownRequest = callback;
+    }
+
+    public void setConnectRequestCallback(final RequestCallback callback) {
+        ownCallbacks().onConnectRequest = callback;
+    }
+
+    private StreamCallbackSet ownCallbacks() {
+        if (callbacks.shared) {
+            callbacks = callbacks.copy();
+        }
+        return callbacks;
+    }
+
+    void useConnectionTemplate(final ConnectionTemplate<?> template) {
+        ownCallbacks().accepted = template == null ? null : template.share();
+    }
+
+    void inheritCallbacks(final StreamHandle client) {
+        if (callbacks.accepted != null) {
+            client.callbacks = callbacks.accepted;
+        }
     }
 
     public void readStart() {
+        if (readBuffers != null) {
+            _set_read_buffers(pointer, null);
+            readBuffers = null;
+        }
+        if (!readStarted) {
+            _read_start(pointer);
+        }
+        readStarted = true;
+    }
+
+    public void readStart(final ByteBuffer buffer) {
+        Objects.requireNonNull(buffer);
+        readStart(new ByteBuffer[] {buffer});
+    }
+
+    /**
+     * Reads straight into the given direct buffers, used round robin, with
+     * each read starting at offset zero of the next buffer. The data is
+     * reported to the read-into callback as a byte count and the buffer that
+     * was filled, which the caller must be done with before the ring wraps
+     * around to it again.
+     */
+    public void readStart(final ByteBuffer[] buffers) {
+        Objects.requireNonNull(buffers);
+        if (buffers.length == 0) {
+            throw new IllegalArgumentException("no read buffers");
+        }
+        final ByteBuffer[] ring = buffers.clone();
+        for (final ByteBuffer buffer : ring) {
+            Objects.requireNonNull(buffer);
+            if (!buffer.isDirect() || buffer.capacity() == 0) {
+                throw new IllegalArgumentException("read buffers must be direct and not empty");
+            }
+        }
+        _set_read_buffers(pointer, ring);
+        readBuffers = ring;
         if (!readStarted) {
             _read_start(pointer);
         }
@@ -96,11 +257,229 @@ class StreamHandle extends Handle {
         readStarted = true;
     }
 
+    /**
+     * In pooled mode the buffer passed to the read callback is a view of a
+     * per-loop native buffer that goes back to the pool when the callback
+     * returns. A callback that needs the data longer either copies it or
+     * calls {@link #retainReadBuffer()} and later hands the buffer back
+     * with {@link #releaseReadBuffer(ByteBuffer)}.
+     */
+    public void setReadBufferPooling(final boolean pooled) {
+        _set_read_buffer_pooling(pointer, pooled);
+    }
+
+    /**
+     * Sizes read buffers from recent reads instead of always using the 64k
+     * suggested by libuv: the size starts at {@code initial}, grows when
+     * reads fill the buffer and shrinks when reads keep coming in well
+     * below it, always staying between {@code minimum} and {@code maximum}.
+     * Sizes are rounded up to a power of two of at least 256 bytes. Equal
+     * bounds give a fixed read size.
+     */
+    public void setReadSize(final int minimum, final int initial, final int maximum) {
+        if (minimum <= 0 || initial < minimum || maximum < initial || maximum > MAX_READ_SIZE) {
+            throw new IllegalArgumentException("invalid read size: " + minimum + ", " + initial + ", " + maximum);
+        }
+        _set_read_size(pointer, minimum, initial, maximum);
+    }
+
+    /**
+     * Makes the read callback get frames of exactly {@code length} bytes
+     * instead of whatever each read returned. Framing is done natively, the
+     * bytes of an incomplete frame are held until the rest arrives and are
+     * carried over if the framing is changed, even from a read callback.
+     * Framing does not apply to {@link #readStart(ByteBuffer[])} or
+     * {@link #read2Start()}.
+     */
+    public void setFrameLength(final int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("invalid frame length: " + length);
+        }
+        _set_framing(pointer, FRAMING_FIXED_LENGTH, length, 0, true, null);
+    }
+
+    /**
+     * Makes the read callback get frames preceded by a 1, 2 or 4 byte
+     * unsigned length, passing on the frame without its length. A frame
+     * longer than {@code maxLength} stops reading and raises an ENOBUFS
+     * {@link com.oracle.libuv.NativeException}.
+     */
+    public void setFrameLengthPrefix(final int headerSize, final ByteOrder order, final int maxLength) {
+        Objects.requireNonNull(order);
+        if (headerSize != 1 && headerSize != 2 && headerSize != 4) {
+            throw new IllegalArgumentException("invalid length prefix size: " + headerSize);
+        }
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("invalid maximum frame length: " + maxLength);
+        }
+        _set_framing(pointer, FRAMING_LENGTH_PREFIX, maxLength, headerSize, order == ByteOrder.BIG_ENDIAN, null);
+    }
+
+    /**
+     * Makes the read callback get the bytes up to each occurrence of the
+     * delimiter, without the delimiter. Not finding the delimiter within
+     * {@code maxLength} bytes stops reading and raises an ENOBUFS
+     * {@link com.oracle.libuv.NativeException}.
+     */
+    public void setFrameDelimiter(final byte[] delimiter, final int maxLength) {
+        Objects.requireNonNull(delimiter);
+        if (delimiter.length == 0 || delimiter.length > MAX_DELIMITER_SIZE) {
+            throw new IllegalArgumentException("invalid delimiter size: " + delimiter.length);
+        }
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("invalid maximum frame length: " + maxLength);
+        }
+        _set_framing(pointer, FRAMING_DELIMITER, maxLength, 0, true, delimiter);
+    }
+
+    /**
+     * Goes back to passing reads on as they come, starting with the bytes
+     * of any incomplete frame.
+     */
+    public void clearFraming() {
+        _set_framing(pointer, FRAMING_NONE, 0, 0, true, null);
+    }
+
+    /**
+     * Keeps the pooled buffer of the read callback in progress alive after
+     * the callback returns.
+     */
+    public void retainReadBuffer() {
+        readBufferRetained = true;
+    }
+
+    /**
+     * Hands back a buffer kept with {@link #retainReadBuffer()}. Only the
+     * buffer passed to the read callback is accepted, once.
+     */
+    public static void releaseReadBuffer(final ByteBuffer buffer) {
+        Objects.requireNonNull(buffer);
+        final Long memory;
+        synchronized (retainedReadBuffers) {
+            memory = retainedReadBuffers.remove(buffer);
+        }
+        if (memory == null) {
+            throw new IllegalArgumentException("not a retained pooled read buffer, or already released");
+        }
+        _release_read_buffer(memory);
+    }
+
     public void readStop() {
         _read_stop(pointer);
         readStarted = false;
     }
 
+    /**
+     * Queues writes in java until the matching {@link #uncork()}, which
+     * sends everything queued as a single gathering write with a single
+     * write callback. Calls nest.
+     */
+    public void cork() {
+        corked++;
+    }
+
+    public void uncork() {
+        if (corked > 0) {
+            corked--;
+        }
+        if (corked == 0 && !autoFlush) {
+            flushWrites();
+        }
+    }
+
+    /**
+     * When enabled, writes are queued and sent as one gathering write at
+     * the end of the loop iteration in which they were made.
+     */
+    public void setAutoFlush(final boolean autoFlush) {
+        this.autoFlush = autoFlush;
+        if (!autoFlush && corked == 0) {
+            flushWrites();
+        }
+    }
+
+    /**
+     * Reports the stream as not writable through the writability callback
+     * once more than {@code high} bytes are queued, and as writable again
+     * once write completions bring the queue down to {@code low} bytes.
+     */
+    public void setWriteWatermarks(final long low, final long high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("invalid write watermarks: " + low + ", " + high);
+        }
+        lowWatermark = low;
+        highWatermark = high;
+        updateWritability();
+    }
+
+    /**
+     * The number of bytes written or queued on this stream whose write
+     * callback has not run yet, including writes held back by cork or
+     * auto flush. Unlike {@link #writeQueueSize()} this is tracked in java.
+     */
+    public long queuedWriteBytes() {
+        return queuedWriteBytes;
+    }
+
+    public boolean isAboveHighWatermark() {
+        return aboveHighWatermark;
+    }
+
+    private void writeQueued(final long bytes) {
+        queuedWriteBytes += bytes;
+        updateWritability();
+    }
+
+    private void updateWritability() {
+        if (!aboveHighWatermark && queuedWriteBytes > highWatermark) {
+            aboveHighWatermark = true;
+            callWritability(false);
+        } else if (aboveHighWatermark && queuedWriteBytes <= lowWatermark) {
+            aboveHighWatermark = false;
+            callWritability(true);
+        }
+    }
+
+    private boolean isBatching() {
+        return corked > 0 || autoFlush;
+    }
+
+    private void queueWrite(final ByteBuffer buffer) {
+        if (pendingWrites == null) {
+            pendingWrites = new ArrayList<>();
+        }
+        pendingWrites.add(buffer);
+        writeQueued(buffer.remaining());
+        if (autoFlush && !flushScheduled) {
+            flushScheduled = true;
+            loop.getStreamFlusher().schedule(this);
+        }
+    }
+
+    void flushWrites() {
+        flushScheduled = false;
+        if (pendingWrites == null || pendingWrites.isEmpty() || closed) {
+            return;
+        }
+        final ByteBuffer[] buffers = pendingWrites.toArray(new ByteBuffer[pendingWrites.size()]);
+        pendingWrites.clear();
+        boolean written = false;
+        try {
+            writev(buffers);
+            written = true;
+        } finally {
+            if (!written) {
+                // the dropped bytes will not see a write callback
+                long bytes = 0;
+                for (final ByteBuffer buffer : buffers) {
+                    bytes += buffer.remaining();
+                }
+                queuedWriteBytes -= bytes;
+                updateWritability();
+            }
+        }
+    }
+
     public int write2(final String str, final StreamHandle handle) {
         return _write2(str, handle);
     }
@@ -112,26 +491,41 @@ class StreamHandle extends Handle {
     private int _write2(final String str, final Handle handle) {
         Objects.requireNonNull(str);
         assert handle != null;
-        final byte[] data;
-        try {
-            data = str.getBytes("utf-8");
-        } catch (final UnsupportedEncodingException e) {
-            throw new RuntimeException(e); // "utf-8" is always supported
+        flushWrites();
+        final ByteBuffer encoded = loop.getStringEncoder().encode(str);
+        if (encoded != null) {
+            return writeEncoded(encoded, handle.pointer);
         }
-        return _write2(pointer, ByteBuffer.wrap(data), data, 0, data.length, handle.pointer, loop.getContext());
+        final byte[] data = str.getBytes(StandardCharsets.UTF_8);
+        final int r = _write2(pointer, ByteBuffer.wrap(data), data, 0, data.length, handle.pointer, loop.getContext());
+        writeQueued(data.length);
+        return r;
     }
 
+    /**
+     * Writes the string as utf-8. Outside of cork and auto flush the string
+     * is encoded into a buffer shared by the loop and copied by the native
+     * write, so no java objects are allocated for the write.
+     */
     public int write(final String str) {
         Objects.requireNonNull(str);
-        final byte[] data;
-        try {
-            data = str.getBytes("utf-8");
-        } catch (final UnsupportedEncodingException e) {
-            throw new RuntimeException(e); // "utf-8" is always supported
+        if (!isBatching()) {
+            final ByteBuffer encoded = loop.getStringEncoder().encode(str);
+            if (encoded != null) {
+                return writeEncoded(encoded, 0);
+            }
         }
+        final byte[] data = str.getBytes(StandardCharsets.UTF_8);
         return write(ByteBuffer.wrap(data), 0, data.length);
     }
 
+    private int writeEncoded(final ByteBuffer encoded, final long sendHandle) {
+        final int length = encoded.remaining();
+        final int r = _write_copy(pointer, encoded, length, sendHandle, loop.getContext());
+        writeQueued(length);
+        return r;
+    }
+
     public int write(final String str, final String encoding) throws UnsupportedEncodingException {
         Objects.requireNonNull(str);
         final byte[] data = str.getBytes(encoding);
@@ -140,9 +534,24 @@ class StreamHandle extends Handle {
 
     public int write(final ByteBuffer buffer, final int offset, final int length) {
         Objects.requireNonNull(buffer);
-        return buffer.hasArray() ?
+        if (isBatching()) {
+            final ByteBuffer view;
+            if (buffer.hasArray()) {
+                view = ByteBuffer.wrap(buffer.array(), buffer.arrayOffset() + offset, length);
+            } else {
+                view = buffer.duplicate();
+                view.clear();
+                view.limit(offset + length);
+                view.position(offset);
+            }
+            queueWrite(view);
+            return 0;
+        }
+        final int r = buffer.hasArray() ?
                 _write(pointer, buffer, buffer.array(), offset, length, loop.getContext()) :
                 _write(pointer, buffer, null, offset, length, loop.getContext());
+        writeQueued(length);
+        return r;
     }
 
     public int write(final ByteBuffer buffer) {
@@ -150,11 +559,240 @@ class StreamHandle extends Handle {
         return write(buffer, 0, buffer.capacity());
     }
 
+    /**
+     * Writes like {@link #write(ByteBuffer, int, int)} but completes through
+     * the write request callback with the given id. No context is held:
+     * heap bytes are copied, and a direct buffer is kept reachable until
+     * the request completes. Writes held back by cork
+     * or auto flush are sent first, and the completion is never batched by
+     * the writes callback.
+     */
+    public int write(final ByteBuffer buffer, final int offset, final int length, final long requestId) {
+        Objects.requireNonNull(buffer);
+        flushWrites();
+        final int r;
+        if (buffer.hasArray()) {
+            r = _write_request(pointer, null, buffer.array(), buffer.arrayOffset() + offset, length, requestId);
+        } else if (buffer.isDirect()) {
+            r = _write_request(pointer, buffer, null, offset, length, requestId);
+        } else {
+            throw new IllegalArgumentException("buffer is neither direct nor backed by an accessible array");
+        }
+        writeQueued(length);
+        return r;
+    }
+
+    public int write(final ByteBuffer buffer, final long requestId) {
+        Objects.requireNonNull(buffer);
+        return write(buffer, 0, buffer.capacity(), requestId);
+    }
+
+    /**
+     * Writes the buffer without a write callback. The bytes are copied so
+     * that the write keeps no reference into java, and the only upcall is
+     * to the error callback if the write fails. Such writes are not
+     * counted by {@link #queuedWriteBytes()}. Writes held back by cork or
+     * auto flush are sent first.
+     */
+    public int writeAndForget(final ByteBuffer buffer, final int offset, final int length) {
+        Objects.requireNonNull(buffer);
+        flushWrites();
+        if (buffer.hasArray()) {
+            return _write_forget(pointer, null, buffer.array(), buffer.arrayOffset() + offset, length);
+        }
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer is neither direct nor backed by an accessible array");
+        }
+        return _write_forget(pointer, buffer, null, offset, length);
+    }
+
+    public int writeAndForget(final ByteBuffer buffer) {
+        Objects.requireNonNull(buffer);
+        return writeAndForget(buffer, 0, buffer.capacity());
+    }
+
+    /**
+     * Writes the string as utf-8 without a write callback, see
+     * {@link #writeAndForget(ByteBuffer, int, int)}.
+     */
+    public int writeAndForget(final String str) {
+        Objects.requireNonNull(str);
+        flushWrites();
+        final ByteBuffer encoded = loop.getStringEncoder().encode(str);
+        if (encoded != null) {
+            return _write_forget(pointer, encoded, null, 0, encoded.remaining());
+        }
+        final byte[] data = str.getBytes(StandardCharsets.UTF_8);
+        return _write_forget(pointer, null, data, 0, data.length);
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer from its native memory,
+     * without copying. The write holds a reference to the buffer until its
+     * callback, so the caller may release its own right away. Writes held
+     * back by cork or auto flush are sent first.
+     */
+    public int write(final NativeBuffer buffer) {
+        Objects.requireNonNull(buffer);
+        final ByteBuffer data = buffer.buffer();
+        final int length = data.remaining();
+        flushWrites();
+        buffer.retain();
+        boolean written = false;
+        try {
+            final int r = _write_owned(pointer, buffer, data, data.position(), length, loop.getContext());
+            written = true;
+            writeQueued(length);
+            return r;
+        } finally {
+            if (!written) {
+                buffer.release();
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer to every stream with a
+     * single native call. The writes share one reference to the buffer,
+     * which is released after the last of them completes, and each stream
+     * gets its own write callback. The streams must belong to the same
+     * loop. Returns the number of streams the write was queued on, the
+     * others get the reason in {@code errors} if given, at their index.
+     */
+    public static int broadcast(final NativeBuffer buffer, final StreamHandle[] streams, final Exception[] errors) {
+        Objects.requireNonNull(buffer);
+        final ByteBuffer data = buffer.buffer();
+        buffer.retain();
+        int queued = 0;
+        try {
+            queued = broadcast(buffer, data, null, data.position(), data.remaining(), streams, errors);
+        } finally {
+            if (queued == 0) {
+                buffer.release();
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer to every stream with a
+     * single native call, copying a heap buffer once for all of them. See
+     * {@link #broadcast(NativeBuffer, StreamHandle[], Exception[])}.
+     */
+    public static int broadcast(final ByteBuffer buffer, final StreamHandle[] streams, final Exception[] errors) {
+        Objects.requireNonNull(buffer);
+        if (buffer.hasArray()) {
+            return broadcast(null, null, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), streams, errors);
+        }
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer is neither direct nor backed by an accessible array");
+        }
+        return broadcast(buffer, buffer, null, buffer.position(), buffer.remaining(), streams, errors);
+    }
+
+    private static int broadcast(final Object owner,
+                                 final ByteBuffer buffer,
+                                 final byte[] data,
+                                 final int offset,
+                                 final int length,
+                                 final StreamHandle[] streams,
+                                 final Exception[] errors) {
+        Objects.requireNonNull(streams);
+        if (errors != null && errors.length < streams.length) {
+            throw new IllegalArgumentException("errors shorter than streams");
+        }
+        if (streams.length == 0) {
+            return 0;
+        }
+        final LoopHandle loop = streams[0].loop;
+        final long[] pointers = new long[streams.length];
+        for (int i = 0; i < streams.length; i++) {
+            final StreamHandle stream = streams[i];
+            if (stream.loop != loop) {
+                throw new IllegalArgumentException("streams of different loops");
+            }
+            stream.flushWrites();
+            pointers[i] = stream.pointer;
+        }
+        // failures are needed to know which streams queued the bytes
+        final Exception[] failures = errors != null ? errors : new Exception[streams.length];
+        Arrays.fill(failures, 0, streams.length, null);
+        final int queued = _broadcast(pointers, owner, buffer, data, offset, length, loop.getContext(), failures);
+        for (int i = 0; i < streams.length; i++) {
+            if (failures[i] == null) {
+                streams[i].writeQueued(length);
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Writes the remaining bytes of all buffers, in order, with a single
+     * libuv write request and a single write callback. Heap buffers are
+     * copied, direct buffers are written in place and must not be modified
+     * until the write callback.
+     */
+    public int write(final ByteBuffer[] buffers) {
+        Objects.requireNonNull(buffers);
+        if (buffers.length == 0) {
+            throw new IllegalArgumentException("no buffers to write");
+        }
+        if (isBatching()) {
+            for (final ByteBuffer buffer : buffers) {
+                Objects.requireNonNull(buffer);
+                queueWrite(buffer.duplicate());
+            }
+            return 0;
+        }
+        final ByteBuffer[] bufs = buffers.clone();
+        final int r = writev(bufs);
+        long bytes = 0;
+        for (final ByteBuffer buffer : bufs) {
+            bytes += buffer.remaining();
+        }
+        writeQueued(bytes);
+        return r;
+    }
+
+    private int writev(final ByteBuffer[] bufs) {
+        final int[] ranges = new int[2 * bufs.length];
+        byte[][] arrays = null;
+        for (int i = 0; i < bufs.length; i++) {
+            final ByteBuffer buffer = bufs[i];
+            Objects.requireNonNull(buffer);
+            if (buffer.hasArray()) {
+                if (arrays == null) {
+                    arrays = new byte[bufs.length][];
+                }
+                arrays[i] = buffer.array();
+                ranges[2 * i] = buffer.arrayOffset() + buffer.position();
+            } else if (buffer.isDirect()) {
+                ranges[2 * i] = buffer.position();
+            } else {
+                throw new IllegalArgumentException("buffer is neither direct nor backed by an accessible array");
+            }
+            ranges[2 * i + 1] = buffer.remaining();
+        }
+        return _writev(pointer, bufs, arrays, ranges, loop.getContext());
+    }
+
     public int closeWrite() {
+        flushWrites();
         return _close_write(pointer, loop.getContext());
     }
 
+    public int closeWrite(final long requestId) {
+        flushWrites();
+        return _close_write_request(pointer, requestId);
+    }
+
     public void close() {
+        if (pendingWrites != null) {
+            for (final ByteBuffer buffer : pendingWrites) {
+                queuedWriteBytes -= buffer.remaining();
+            }
+            pendingWrites.clear();
+        }
         if (!closed) {
             _close(pointer);
         }
@@ -166,7 +804,9 @@ class StreamHandle extends Handle {
     }
 
     public int accept(final StreamHandle client) {
-        return _accept(pointer, client.pointer);
+        final int r = _accept(pointer, client.pointer);
+        inheritCallbacks(client);
+        return r;
     }
 
     public boolean isReadable() {
@@ -194,45 +834,162 @@ class StreamHandle extends Handle {
         super.finalize();
     }
 
+    private void callRead(final ByteBuffer data, final long memory) {
+        final StreamNativeReadCallback onNativeRead = callbacks.onNativeRead;
+        if (onNativeRead != null) {
+            final NativeBuffer buffer = data == null ? null : NativeBuffer.adoptWithinLimit(data, memory);
+            loop.getCallbackHandler().handleStreamNativeReadCallback(onNativeRead, buffer);
+        } else {
+            // freed once the data is unreachable
+            if (data != null) {
+                NativeBuffer.adopt(data, memory);
+            }
+            callRead(data);
+        }
+    }
+
     private void callRead(final ByteBuffer data) {
-        if (onRead != null) {
-            loop.getCallbackHandler().handleStreamReadCallback(onRead, data);
+        final StreamCallbackSet cbs = callbacks;
+        if (cbs.onRead != null) {
+            loop.getCallbackHandler().handleStreamReadCallback(cbs.onRead, data);
+        } else if (cbs.onConnectionRead != null) {
+            loop.getCallbackHandler().handleConnectionReadCallback(cbs.onConnectionRead, this, data);
         }
     }
 
-    private void callRead2(final ByteBuffer data, long handle, int type) {
-        if (onRead2 != null) {
-            loop.getCallbackHandler().handleStreamRead2Callback(onRead2, data, handle, type);
+    private boolean callPooledRead(final ByteBuffer data, final long memory) {
+        if (callbacks.onNativeRead != null) {
+            // ownership passes to the native buffer, not back to the pool
+            callRead(data, memory);
+            return true;
+        }
+        readBufferRetained = false;
+        callRead(data);
+        final boolean retained = readBufferRetained;
+        readBufferRetained = false;
+        if (retained) {
+            synchronized (retainedReadBuffers) {
+                retainedReadBuffers.put(data, memory);
+            }
+        }
+        return retained;
+    }
+
+    private void callReadInto(final int index, final int nread) {
+        if (callbacks.onReadInto != null) {
+            final ByteBuffer buffer = index < 0 ? null : readBuffers[index];
+            loop.getCallbackHandler().handleStreamReadIntoCallback(callbacks.onReadInto, nread, buffer);
+        }
+    }
+
+    private void callRead2(final ByteBuffer data, final long memory, long handle, int type) {
+        if (data != null) {
+            NativeBuffer.adopt(data, memory);
+        }
+        if (callbacks.onRead2 != null) {
+            loop.getCallbackHandler().handleStreamRead2Callback(callbacks.onRead2, data, handle, type);
+        }
+    }
+
+    private void callWrite(final int status, final Exception error, final Object data, final Object context, final long size) {
+        queuedWriteBytes -= size;
+        if (data instanceof NativeBuffer) {
+            ((NativeBuffer) data).release();
+        }
+        final StreamCallbackSet cbs = callbacks;
+        if (cbs.onWrite != null) {
+            loop.getCallbackHandler(context).handleStreamWriteCallback(cbs.onWrite, status, error);
+        } else if (cbs.onConnectionWrite != null) {
+            loop.getCallbackHandler(context).handleConnectionWriteCallback(cbs.onConnectionWrite, this, status, error);
         }
+        updateWritability();
     }
 
-    private void callWrite(final int status, final Exception error, final Object context) {
-        if (onWrite != null) {
-            loop.getCallbackHandler(context).handleStreamWriteCallback(onWrite, status, error);
+    private void callRequest(final int type, final long requestId, final int status, final Exception error, final long size) {
+        final StreamCallbackSet cbs = callbacks;
+        switch (type) {
+            case WRITE_REQUEST:
+                queuedWriteBytes -= size;
+                if (cbs.onWriteRequest != null) {
+                    final int result = status < 0 ? status : (int) size;
+                    loop.getCallbackHandler().handleRequestCallback(cbs.onWriteRequest, requestId, result, error);
+                }
+                updateWritability();
+                break;
+            case SHUTDOWN_REQUEST:
+                if (cbs.onShutdownRequest != null) {
+                    loop.getCallbackHandler().handleRequestCallback(cbs.onShutdownRequest, requestId, status, error);
+                }
+                break;
+            case CONNECT_REQUEST:
+                if (cbs.onConnectRequest != null) {
+                    loop.getCallbackHandler().handleRequestCallback(cbs.onConnectRequest, requestId, status, error);
+                }
+                break;
+            default:
+                assert false : "unsupported request type " + type;
+        }
+    }
+
+    private void callWrites(final int count, final long bytes, final Exception error, final Object[] owners) {
+        queuedWriteBytes -= bytes;
+        if (owners != null) {
+            for (final Object owner : owners) {
+                ((NativeBuffer) owner).release();
+            }
+        }
+        if (onWrites != null) {
+            loop.getCallbackHandler().handleStreamWritesCallback(onWrites, count, bytes, error);
+        }
+        updateWritability();
+    }
+
+    private void callWriteError(final int errno) {
+        final StreamCallbackSet cbs = callbacks;
+        if (cbs.onErrorCode != null) {
+            loop.getCallbackHandler().handleStreamErrorCodeCallback(cbs.onErrorCode, errno);
+        } else if (cbs.onError != null) {
+            // only built when somebody wants it
+            loop.getCallbackHandler().handleStreamErrorCallback(cbs.onError, NativeException.fromErrno(errno, "uv_write"));
+        }
+    }
+
+    private void callWritability(final boolean writable) {
+        final StreamCallbackSet cbs = callbacks;
+        if (cbs.onWritabilityChanged != null) {
+            loop.getCallbackHandler().handleStreamWritabilityCallback(cbs.onWritabilityChanged, writable);
+        } else if (cbs.onConnectionWritabilityChanged != null) {
+            loop.getCallbackHandler().handleConnectionWritabilityCallback(cbs.onConnectionWritabilityChanged, this, writable);
         }
     }
 
     private void callConnect(final int status, final Exception error, final Object context) {
-        if (onConnect != null) {
-            loop.getCallbackHandler(context).handleStreamConnectCallback(onConnect, status, error);
+        if (callbacks.onConnect != null) {
+            loop.getCallbackHandler(context).handleStreamConnectCallback(callbacks.onConnect, status, error);
         }
     }
 
-    private void callConnection(final int status, final Exception error) {
-        if (onConnection != null) {
-            loop.getCallbackHandler().handleStreamConnectionCallback(onConnection, status, error);
+    void callConnection(final int status, final Exception error) {
+        if (callbacks.onConnection != null) {
+            loop.getCallbackHandler().handleStreamConnectionCallback(callbacks.onConnection, status, error);
         }
     }
 
     private void callClose() {
-        if (onClose != null) {
-            loop.getCallbackHandler().handleStreamCloseCallback(onClose);
+        final StreamCallbackSet cbs = callbacks;
+        if (cbs.onClose != null) {
+            loop.getCallbackHandler().handleStreamCloseCallback(cbs.onClose);
+        } else if (cbs.onConnectionClose != null) {
+            loop.getCallbackHandler().handleConnectionCloseCallback(cbs.onConnectionClose, this);
         }
     }
 
     private void callShutdown(final int status, final Exception error, final Object context) {
-        if (onShutdown != null) {
-            loop.getCallbackHandler(context).handleStreamShutdownCallback(onShutdown, status, error);
+        final StreamCallbackSet cbs = callbacks;
+        if (cbs.onShutdown != null) {
+            loop.getCallbackHandler(context).handleStreamShutdownCallback(cbs.onShutdown, status, error);
+        } else if (cbs.onConnectionShutdown != null) {
+            loop.getCallbackHandler(context).handleConnectionShutdownCallback(cbs.onConnectionShutdown, this, status, error);
         }
     }
 
@@ -246,6 +1003,21 @@ class StreamHandle extends Handle {
 
     private native void _read_stop(final long ptr);
 
+    private native void _set_read_buffer_pooling(final long ptr, final boolean pooled);
+
+    private native void _set_read_size(final long ptr, final int minimum, final int initial, final int maximum);
+
+    private native void _set_framing(final long ptr,
+                                     final int mode,
+                                     final int length,
+                                     final int headerSize,
+                                     final boolean bigEndian,
+                                     final byte[] delimiter);
+
+    private static native void _release_read_buffer(final long memory);
+
+    private native void _set_read_buffers(final long ptr, final ByteBuffer[] buffers);
+
     private native boolean _readable(final long ptr);
 
     private native boolean _writable(final long ptr);
@@ -257,6 +1029,49 @@ class StreamHandle extends Handle {
                               final int length,
                               final Object context);
 
+    private native int _write_request(final long ptr,
+                                      final ByteBuffer buffer,
+                                      final byte[] data,
+                                      final int offset,
+                                      final int length,
+                                      final long requestId);
+
+    private native int _writev(final long ptr,
+                               final ByteBuffer[] buffers,
+                               final byte[][] arrays,
+                               final int[] ranges,
+                               final Object context);
+
+    private native int _write_owned(final long ptr,
+                                    final Object owner,
+                                    final ByteBuffer buffer,
+                                    final int offset,
+                                    final int length,
+                                    final Object context);
+
+    private static native int _broadcast(final long[] streams,
+                                         final Object owner,
+                                         final ByteBuffer buffer,
+                                         final byte[] data,
+                                         final int offset,
+                                         final int length,
+                                         final Object context,
+                                         final Exception[] errors);
+
+    private native void _set_write_batching(final long ptr, final boolean batching);
+
+    private native int _write_forget(final long ptr,
+                                     final ByteBuffer buffer,
+                                     final byte[] data,
+                                     final int offset,
+                                     final int length);
+
+    private native int _write_copy(final long ptr,
+                                   final ByteBuffer buffer,
+                                   final int length,
+                                   final long handlePointer,
+                                   final Object context);
+
     private native int _write2(final long ptr,
                                final ByteBuffer buffer,
                                final byte[] data,
@@ -271,6 +1086,8 @@ class StreamHandle extends Handle {
 
     private native int _close_write(final long ptr, final Object context);
 
+    private native int _close_write_request(final long ptr, final long requestId);
+
     private native int _listen(final long ptr, final int backlog);
 
     private native int _accept(final long ptr, final long client);
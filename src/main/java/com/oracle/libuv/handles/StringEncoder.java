@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes strings as utf-8 into a direct buffer owned by the loop, which the
+ * natives copy from before the call returns. Pure ascii strings are stored
+ * a char at a time without going through the encoder.
+ */
+final class StringEncoder {
+
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+    private static final int MAX_CAPACITY = 64 * 1024;
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+
+    /**
+     * Returns the shared buffer holding the encoded string from position
+     * zero to its limit, or null if the string is too long to be encoded in
+     * place. The buffer is overwritten by the next call.
+     */
+    ByteBuffer encode(final String str) {
+        final int length = str.length();
+        if (length > MAX_CAPACITY) {
+            return null;
+        }
+        ensureCapacity(length, 0);
+        final ByteBuffer out = buffer;
+        out.clear();
+        int i = 0;
+        for (; i < length; i++) {
+            final char c = str.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            out.put(i, (byte) c);
+        }
+        if (i == length) {
+            out.limit(length).position(0);
+            return out;
+        }
+        final long required = i + (long) MAX_BYTES_PER_CHAR * (length - i);
+        if (required > MAX_CAPACITY) {
+            return null;
+        }
+        ensureCapacity((int) required, i);
+        buffer.limit(buffer.capacity()).position(i);
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(str, i, length), buffer, true);
+        encoder.flush(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void ensureCapacity(final int capacity, final int keep) {
+        if (buffer.capacity() >= capacity) {
+            return;
+        }
+        int size = buffer.capacity();
+        while (size < capacity) {
+            size *= 2;
+        }
+        final ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(size, MAX_CAPACITY));
+        buffer.limit(keep).position(0);
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+}
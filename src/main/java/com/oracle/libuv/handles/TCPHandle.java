@@ -25,15 +25,22 @@
 
 package com.oracle.libuv.handles;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 import com.oracle.libuv.Address;
 import com.oracle.libuv.LibUVPermission;
 import com.oracle.libuv.LibUVPermission.AddressResolver;
+import com.oracle.libuv.cb.TCPConnectionsCallback;
 
 public class TCPHandle extends StreamHandle {
 
     private int bindPort = 0;
+    private TCPConnectionsCallback onConnections = null;
+
+    static {
+        _static_initialize();
+    }
 
     protected TCPHandle(final LoopHandle loop) {
         super(_new(loop.pointer()), loop);
@@ -47,6 +54,18 @@ public class TCPHandle extends StreamHandle {
         super(pointer, loop);
     }
 
+    public void setConnectionsCallback(final TCPConnectionsCallback callback) {
+        onConnections = callback;
+    }
+
+    /**
+     * Sets the callbacks shared by every connection accepted from now on,
+     * including those accepted in batches.
+     */
+    public void setConnectionTemplate(final ConnectionTemplate<? super TCPHandle> template) {
+        useConnectionTemplate(template);
+    }
+
     public int bind(final String address, final int port) {
         Objects.requireNonNull(address);
         bindPort = port;
@@ -73,12 +92,55 @@ public class TCPHandle extends StreamHandle {
         return _connect6(pointer, address, port, loop.getContext());
     }
 
+    /**
+     * Connects like {@link #connect(String, int)} but completes through the
+     * connect request callback with the given id.
+     */
+    public int connect(final String address, final int port, final long requestId) {
+        Objects.requireNonNull(address);
+        LibUVPermission.checkConnect(address, port);
+        return _connect_request(pointer, address, port, false, requestId);
+    }
+
+    public int connect6(final String address, final int port, final long requestId) {
+        Objects.requireNonNull(address);
+        LibUVPermission.checkConnect(address, port);
+        return _connect_request(pointer, address, port, true, requestId);
+    }
+
+    /**
+     * Connects to an address encoded ahead of time, without parsing a host.
+     */
+    public int connect(final ResolvedAddress address) {
+        Objects.requireNonNull(address);
+        LibUVPermission.checkConnect(address.getHost(), address.getPort());
+        return _connect_to(pointer, address.pointer(), loop.getContext());
+    }
+
+    public int connect(final ResolvedAddress address, final long requestId) {
+        Objects.requireNonNull(address);
+        LibUVPermission.checkConnect(address.getHost(), address.getPort());
+        return _connect_to_request(pointer, address.pointer(), requestId);
+    }
+
     @Override
     public int listen(final int backlog) {
         LibUVPermission.checkListen(bindPort);
         return super.listen(backlog);
     }
 
+    /**
+     * Listens with the accept done natively: every connection pending on
+     * the listen socket in a loop iteration is accepted into a new handle,
+     * and the handles are passed together to the connections callback at
+     * the end of the iteration. Errors, including clients denied by the
+     * security manager, go to the connection callback.
+     */
+    public int listenBatched(final int backlog) {
+        LibUVPermission.checkListen(bindPort);
+        return _listen_batched(pointer, backlog);
+    }
+
     @Override
     public int accept(final StreamHandle client) {
         Objects.requireNonNull(client);
@@ -88,13 +150,48 @@ public class TCPHandle extends StreamHandle {
         // Check once the native call has been done otherwise peerName is not available.
         // If Accept becomes asynchronous, we will have to adapt the check to be done once
         // the peerName is available.
+        checkAccept(tcpClient);
+        return accepted;
+    }
+
+    private static void checkAccept(final TCPHandle client) {
         LibUVPermission.checkAccept(new AddressResolver() {
             @Override
             public Address resolve() {
-                return tcpClient.getPeerName();
+                return client.getPeerName();
             }
         });
-        return accepted;
+    }
+
+    private void callConnections(final long[] clients) {
+        final TCPHandle[] accepted = new TCPHandle[clients.length];
+        int count = 0;
+        SecurityException denied = null;
+        for (final long client : clients) {
+            final TCPHandle handle = new TCPHandle(loop, client, true);
+            inheritCallbacks(handle);
+            try {
+                checkAccept(handle);
+            } catch (final SecurityException ex) {
+                handle.close();
+                denied = ex;
+                continue;
+            }
+            accepted[count++] = handle;
+        }
+        if (onConnections != null) {
+            if (count > 0) {
+                loop.getCallbackHandler().handleTCPConnectionsCallback(onConnections,
+                        count == accepted.length ? accepted : Arrays.copyOf(accepted, count));
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                accepted[i].close();
+            }
+        }
+        if (denied != null) {
+            callConnection(-1, denied);
+        }
     }
 
     public Address getSocketName() {
@@ -122,12 +219,16 @@ public class TCPHandle extends StreamHandle {
         return _simultaneous_accepts(pointer, enable ? 1 : 0);
     }
 
+    private static native void _static_initialize();
+
     private static native long _new(final long loop);
 
     private static native long _new(final long loop, final int fd);
 
     private static native long _new(final long loop, final long socket);
 
+    private native int _listen_batched(final long ptr, final int backlog);
+
     private native int _bind(final long ptr, final String address, final int port);
 
     private native int _bind6(final long ptr, final String address, final int port);
@@ -136,6 +237,12 @@ public class TCPHandle extends StreamHandle {
 
     private native int _connect6(final long ptr, final String address, final int port, final Object context);
 
+    private native int _connect_request(final long ptr, final String address, final int port, final boolean ipv6, final long requestId);
+
+    private native int _connect_to(final long ptr, final long address, final Object context);
+
+    private native int _connect_to_request(final long ptr, final long address, final long requestId);
+
     private native int _open(final long ptr, final int fd);
 
     private native Address _socket_name(final long ptr);
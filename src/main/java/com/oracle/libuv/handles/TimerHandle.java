@@ -49,6 +49,10 @@ public class TimerHandle extends Handle {
     protected TimerHandle(final LoopHandle loop) {
         super(_new(loop.pointer()), loop);
         _initialize(pointer);
+        final int eventId = loop.registerEvents(this);
+        if (eventId != 0) {
+            _set_event_id(pointer, eventId);
+        }
     }
 
     public int start(final long timeout, final long repeat) {
@@ -78,6 +82,11 @@ public class TimerHandle extends Handle {
         closed = true;
     }
 
+    @Override
+    void dispatchEvent(final int type, final int status, final int value) {
+        callback(type, status);
+    }
+
     @Override
     protected void finalize() throws Throwable {
         close();
@@ -98,6 +107,8 @@ public class TimerHandle extends Handle {
 
     private native void _initialize(final long ptr);
 
+    private native void _set_event_id(final long ptr, final int id);
+
     private native int _start(final long ptr, final long timeout, final long repeat);
 
     private native int _again(final long ptr);
@@ -27,20 +27,39 @@ package com.oracle.libuv.handles;
 
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 import com.oracle.libuv.Address;
 import com.oracle.libuv.LibUVPermission;
+import com.oracle.libuv.cb.RequestCallback;
 import com.oracle.libuv.cb.UDPCloseCallback;
+import com.oracle.libuv.cb.UDPNativeRecvCallback;
+import com.oracle.libuv.cb.UDPPeerRecvCallback;
+import com.oracle.libuv.cb.UDPRecvBatchCallback;
 import com.oracle.libuv.cb.UDPRecvCallback;
+import com.oracle.libuv.cb.UDPSendBatchCallback;
 import com.oracle.libuv.cb.UDPSendCallback;
 
 public class UDPHandle extends Handle {
 
+    // must match UDPCallbacks in udp.h
+    public static final int DEFAULT_RECV_BUFFER_SIZE = 2048;
+    public static final int MAX_RECV_BUFFER_SIZE = 64 * 1024;
+
     private boolean closed;
 
     private UDPRecvCallback onRecv = null;
+    private UDPNativeRecvCallback onNativeRecv = null;
+    private UDPPeerRecvCallback onPeerRecv = null;
+    private UDPRecvBatchCallback onRecvBatch = null;
+    private UDPRecvBatch recvBatch = null;
+    private boolean recvStarted = false;
+    private final UDPPeer peer = new UDPPeer();
+    private int recvBufferSize = DEFAULT_RECV_BUFFER_SIZE;
     private UDPSendCallback onSend = null;
+    private UDPSendBatchCallback onSendBatch = null;
+    private RequestCallback onSendRequest = null;
     private UDPCloseCallback onClose = null;
 
     public enum Membership {
@@ -63,10 +82,96 @@ public class UDPHandle extends Handle {
         onRecv = callback;
     }
 
+    /**
+     * Takes precedence over the recv callback. The callback owns the
+     * {@link NativeBuffer} it gets and should release it once done with
+     * the datagram.
+     */
+    public void setNativeRecvCallback(final UDPNativeRecvCallback callback) {
+        onNativeRecv = callback;
+    }
+
+    /**
+     * Takes precedence over the other recv callbacks. The sender comes as
+     * a {@link UDPPeer} that is reused for every datagram rather than as a
+     * new {@link Address}, so no address string is made unless the
+     * callback asks for one.
+     */
+    public void setPeerRecvCallback(final UDPPeerRecvCallback callback) {
+        onPeerRecv = callback;
+        _set_peer_recv(pointer, callback != null);
+    }
+
+    /**
+     * Sets the size of the buffer each datagram is received into, 2048
+     * bytes unless set, up to 65536. Longer datagrams are delivered cut
+     * to this size and counted by {@link #getTruncatedCount()}; set it to
+     * the MTU of the network, 9000 for jumbo frames. Batch mode uses the
+     * slot size instead.
+     */
+    public void setRecvBufferSize(final int size) {
+        if (size <= 0 || size > MAX_RECV_BUFFER_SIZE) {
+            throw new IllegalArgumentException("invalid recv buffer size: " + size);
+        }
+        _set_recv_buffer_size(pointer, size);
+        recvBufferSize = size;
+    }
+
+    public int getRecvBufferSize() {
+        return recvBufferSize;
+    }
+
+    /**
+     * The number of datagrams that were longer than the buffer or the
+     * batch slot they were received into and lost their tail.
+     */
+    public long getTruncatedCount() {
+        return _truncated_count(pointer);
+    }
+
+    public void setRecvBatchCallback(final UDPRecvBatchCallback callback) {
+        onRecvBatch = callback;
+    }
+
+    /**
+     * Makes datagrams be received into {@code slots} preallocated slots
+     * of {@code slotSize} bytes each and handed to the recv batch callback
+     * many at a time, instead of one by one to the other recv callbacks.
+     * On linux whatever is queued on the socket is read with a single
+     * recvmmsg. Must be called before {@code recvStart}, and only once.
+     */
+    public void enableRecvBatch(final int slots, final int slotSize) {
+        if (slots <= 0 || slotSize <= 0) {
+            throw new IllegalArgumentException("invalid recv batch: " + slots + " slots of " + slotSize + " bytes");
+        }
+        if (recvBatch != null) {
+            throw new IllegalStateException("recv batch already enabled");
+        }
+        if (recvStarted) {
+            throw new IllegalStateException("recv batch enabled after recvStart");
+        }
+        recvBatch = new UDPRecvBatch(_enable_recv_batch(pointer, slots, slotSize), slots, slotSize);
+    }
+
     public void setSendCallback(final UDPSendCallback callback) {
         onSend = callback;
     }
 
+    /**
+     * Completes batches sent with {@code sendBatch}, once per batch with
+     * the number of datagrams sent and the first error, if any.
+     */
+    public void setSendBatchCallback(final UDPSendBatchCallback callback) {
+        onSendBatch = callback;
+    }
+
+    /**
+     * Completes sends made with a request id.
+     */
+    public void setSendRequestCallback(final RequestCallback callback) {
+        onSendRequest = callback;
+    }
+
     public void setCloseCallback(final UDPCloseCallback callback) {
         onClose = callback;
     }
@@ -117,12 +222,12 @@ public class UDPHandle extends Handle {
                     final String host) {
         Objects.requireNonNull(str);
         Objects.requireNonNull(host);
-        final byte[] data;
-        try {
-            data = str.getBytes("utf-8");
-        } catch (final UnsupportedEncodingException e) {
-            throw new RuntimeException(e); // "utf-8" is always supported
+        final ByteBuffer encoded = loop.getStringEncoder().encode(str);
+        if (encoded != null) {
+            LibUVPermission.checkUDPSend(host, port);
+            return _send_copy(pointer, encoded, encoded.remaining(), port, host, false, loop.getContext());
         }
+        final byte[] data = str.getBytes(StandardCharsets.UTF_8);
         return send(ByteBuffer.wrap(data), 0, data.length, port, host);
     }
 
@@ -131,12 +236,12 @@ public class UDPHandle extends Handle {
                      final String host) {
         Objects.requireNonNull(str);
         Objects.requireNonNull(host);
-        final byte[] data;
-        try {
-            data = str.getBytes("utf-8");
-        } catch (final UnsupportedEncodingException e) {
-            throw new RuntimeException(e); // "utf-8" is always supported
+        final ByteBuffer encoded = loop.getStringEncoder().encode(str);
+        if (encoded != null) {
+            LibUVPermission.checkUDPSend(host, port);
+            return _send_copy(pointer, encoded, encoded.remaining(), port, host, true, loop.getContext());
         }
+        final byte[] data = str.getBytes(StandardCharsets.UTF_8);
         return send6(ByteBuffer.wrap(data), 0, data.length, port, host);
     }
 
@@ -210,7 +315,148 @@ public class UDPHandle extends Handle {
                 _send6(pointer, buffer, null, offset, length, port, host, loop.getContext());
     }
 
+    /**
+     * Sends like {@link #send(ByteBuffer, int, int, int, String)} but
+     * completes through the send request callback with the given id. No
+     * context is held: heap bytes are copied, and a direct buffer is kept
+     * reachable until the request completes.
+     */
+    public int send(final ByteBuffer buffer,
+                    final int offset,
+                    final int length,
+                    final int port,
+                    final String host,
+                    final long requestId) {
+        return sendRequest(buffer, offset, length, port, host, false, requestId);
+    }
+
+    public int send6(final ByteBuffer buffer,
+                     final int offset,
+                     final int length,
+                     final int port,
+                     final String host,
+                     final long requestId) {
+        return sendRequest(buffer, offset, length, port, host, true, requestId);
+    }
+
+    private int sendRequest(final ByteBuffer buffer,
+                            final int offset,
+                            final int length,
+                            final int port,
+                            final String host,
+                            final boolean ipv6,
+                            final long requestId) {
+        Objects.requireNonNull(buffer);
+        Objects.requireNonNull(host);
+        LibUVPermission.checkUDPSend(host, port);
+        if (buffer.hasArray()) {
+            return _send_request(pointer, null, buffer.array(), buffer.arrayOffset() + offset, length, port, host, ipv6, requestId);
+        }
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("buffer is neither direct nor backed by an accessible array");
+        }
+        return _send_request(pointer, buffer, null, offset, length, port, host, ipv6, requestId);
+    }
+
+    /**
+     * Sends to an address encoded ahead of time, without parsing a host.
+     */
+    public int send(final ByteBuffer buffer,
+                    final ResolvedAddress to) {
+        Objects.requireNonNull(buffer);
+        return send(buffer, 0, buffer.capacity(), to);
+    }
+
+    public int send(final ByteBuffer buffer,
+                    final int offset,
+                    final int length,
+                    final ResolvedAddress to) {
+        Objects.requireNonNull(buffer);
+        Objects.requireNonNull(to);
+        LibUVPermission.checkUDPSend(to.getAddress(), to.getPort());
+        return buffer.hasArray() ?
+                _send_to(pointer, buffer, buffer.array(), offset, length, to.pointer(), loop.getContext()) :
+                _send_to(pointer, buffer, null, offset, length, to.pointer(), loop.getContext());
+    }
+
+    /**
+     * Sends each buffer, from its position to its limit, to the host and
+     * port at the same index, with as few system calls as it takes
+     * (sendmmsg on linux). The whole batch gets one completion with the
+     * number of datagrams sent and the first error, if any. The buffers
+     * must be direct and left untouched until then. Returns the number of
+     * datagrams sent or queued.
+     */
+    public int sendBatch(final ByteBuffer[] buffers,
+                         final int[] ports,
+                         final String[] hosts) {
+        return sendBatch(buffers, ports, hosts, false);
+    }
+
+    public int sendBatch6(final ByteBuffer[] buffers,
+                          final int[] ports,
+                          final String[] hosts) {
+        return sendBatch(buffers, ports, hosts, true);
+    }
+
+    /**
+     * Sends a batch like {@link #sendBatch(ByteBuffer[], int[], String[])}
+     * to addresses encoded ahead of time, which may mix families.
+     */
+    public int sendBatch(final ByteBuffer[] buffers,
+                         final ResolvedAddress[] to) {
+        Objects.requireNonNull(buffers);
+        Objects.requireNonNull(to);
+        if (to.length != buffers.length) {
+            throw new IllegalArgumentException("buffers and addresses differ in length");
+        }
+        final int[] offsets = new int[buffers.length];
+        final int[] lengths = new int[buffers.length];
+        final long[] addresses = new long[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            checkBatchBuffer(buffers[i]);
+            Objects.requireNonNull(to[i]);
+            LibUVPermission.checkUDPSend(to[i].getAddress(), to[i].getPort());
+            offsets[i] = buffers[i].position();
+            lengths[i] = buffers[i].remaining();
+            addresses[i] = to[i].pointer();
+        }
+        return _send_batch_to(pointer, buffers.clone(), offsets, lengths, addresses, loop.getContext());
+    }
+
+    private static void checkBatchBuffer(final ByteBuffer buffer) {
+        Objects.requireNonNull(buffer);
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("batched buffers must be direct");
+        }
+    }
+
+    private int sendBatch(final ByteBuffer[] buffers,
+                          final int[] ports,
+                          final String[] hosts,
+                          final boolean ipv6) {
+        Objects.requireNonNull(buffers);
+        Objects.requireNonNull(ports);
+        Objects.requireNonNull(hosts);
+        if (ports.length != buffers.length || hosts.length != buffers.length) {
+            throw new IllegalArgumentException("buffers, ports and hosts differ in length");
+        }
+        final int[] offsets = new int[buffers.length];
+        final int[] lengths = new int[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            final ByteBuffer buffer = buffers[i];
+            checkBatchBuffer(buffer);
+            Objects.requireNonNull(hosts[i]);
+            LibUVPermission.checkUDPSend(hosts[i], ports[i]);
+            offsets[i] = buffer.position();
+            lengths[i] = buffer.remaining();
+        }
+        // native code holds on to the copy until the batch completes
+        return _send_batch(pointer, buffers.clone(), offsets, lengths, ports, hosts, ipv6, loop.getContext());
+    }
+
     public int recvStart() {
+        recvStarted = true;
         return _recv_start(pointer);
     }
 
@@ -246,9 +492,39 @@ public class UDPHandle extends Handle {
         super.finalize();
     }
 
-    private void callRecv(final int nread, final ByteBuffer data, final Address address) {
-        if (onRecv != null) {
-            loop.getCallbackHandler().handleUDPRecvCallback(onRecv, nread, data, address);
+    private void callRecv(final int nread, final ByteBuffer data, final long memory, final Address address) {
+        if (onNativeRecv != null) {
+            final NativeBuffer buffer = data == null ? null : NativeBuffer.adoptWithinLimit(data, memory);
+            loop.getCallbackHandler().handleUDPNativeRecvCallback(onNativeRecv, nread, buffer, address);
+        } else {
+            // freed once the data is unreachable
+            if (data != null) {
+                NativeBuffer.adopt(data, memory);
+            }
+            if (onRecv != null) {
+                loop.getCallbackHandler().handleUDPRecvCallback(onRecv, nread, data, address);
+            }
+        }
+    }
+
+    private void callRecvPeer(final int nread, final ByteBuffer data, final long memory, final int family, final int port, final long high, final long low) {
+        if (data != null) {
+            NativeBuffer.adopt(data, memory);
+        }
+        if (onPeerRecv != null) {
+            peer.set(family, port, high, low);
+            loop.getCallbackHandler().handleUDPPeerRecvCallback(onPeerRecv, nread, data, peer);
+        }
+    }
+
+    private void callRecvBatch(final int count, final Exception error) {
+        recvBatch.reset(count);
+        try {
+            if (onRecvBatch != null) {
+                loop.getCallbackHandler().handleUDPRecvBatchCallback(onRecvBatch, recvBatch, error);
+            }
+        } finally {
+            recvBatch.reset(0);
         }
     }
 
@@ -258,6 +534,18 @@ public class UDPHandle extends Handle {
         }
     }
 
+    private void callSendBatch(final int sent, final Exception error, final Object context) {
+        if (onSendBatch != null) {
+            loop.getCallbackHandler(context).handleUDPSendBatchCallback(onSendBatch, sent, error);
+        }
+    }
+
+    private void callSendRequest(final long requestId, final int status, final Exception error) {
+        if (onSendRequest != null) {
+            loop.getCallbackHandler().handleRequestCallback(onSendRequest, requestId, status, error);
+        }
+    }
+
     private void callClose() {
         if (onClose != null) {
             loop.getCallbackHandler().handleUDPCloseCallback(onClose);
@@ -293,6 +581,14 @@ public class UDPHandle extends Handle {
                              final String host,
                              final Object context);
 
+    private native int _send_copy(final long ptr,
+                                  final ByteBuffer buffer,
+                                  final int length,
+                                  final int port,
+                                  final String host,
+                                  final boolean ipv6,
+                                  final Object context);
+
     private native int _send6(final long ptr,
                               final ByteBuffer buffer,
                               final byte[] data,
@@ -302,10 +598,46 @@ public class UDPHandle extends Handle {
                               final String host,
                               final Object context);
 
+    private native int _send_request(final long ptr,
+                                     final ByteBuffer buffer,
+                                     final byte[] data,
+                                     final int offset,
+                                     final int length,
+                                     final int port,
+                                     final String host,
+                                     final boolean ipv6,
+                                     final long requestId);
+
+    private native int _send_batch(final long ptr,
+                                   final ByteBuffer[] buffers,
+                                   final int[] offsets,
+                                   final int[] lengths,
+                                   final int[] ports,
+                                   final String[] hosts,
+                                   final boolean ipv6,
+                                   final Object context);
+
+    private native int _send_batch_to(final long ptr,
+                                      final ByteBuffer[] buffers,
+                                      final int[] offsets,
+                                      final int[] lengths,
+                                      final long[] addresses,
+                                      final Object context);
+
+    private native int _send_to(final long ptr,
+                                final ByteBuffer buffer,
+                                final byte[] data,
+                                final int offset,
+                                final int length,
+                                final long address,
+                                final Object context);
+
     private native int _recv_start(final long ptr);
 
     private native int _recv_stop(final long ptr);
 
+    private native ByteBuffer _enable_recv_batch(final long ptr, final int slots, final int slotSize);
+
     private native int _set_ttl(long ptr,
                                 int ttl);
 
@@ -323,6 +655,12 @@ public class UDPHandle extends Handle {
     private native int _set_broadcast(long ptr,
                                       int on);
 
+    private native void _set_recv_buffer_size(final long ptr, final int size);
+
+    private native long _truncated_count(final long ptr);
+
+    private native void _set_peer_recv(final long ptr, final boolean peerRecv);
+
     private native void _close(final long ptr);
 
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import com.oracle.libuv.Address;
+
+/**
+ * The sender of a datagram handed to a {@link UDPHandle} peer recv
+ * callback, as primitives. A handle reuses one instance for every
+ * datagram, so it is only valid during the callback; use {@link #copy()}
+ * to keep it. The textual forms are built only when asked for.
+ */
+public final class UDPPeer {
+
+    private int family;
+    private int port;
+    private long high;
+    private long low;
+
+    UDPPeer() {
+    }
+
+    private UDPPeer(final UDPPeer that) {
+        set(that.family, that.port, that.high, that.low);
+    }
+
+    void set(final int family, final int port, final long high, final long low) {
+        this.family = family;
+        this.port = port;
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Whether the sender is known at all.
+     */
+    public boolean isKnown() {
+        return family != 0;
+    }
+
+    public boolean isIPv6() {
+        return family == 6;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * The IPv4 address in network byte order, the first octet in the
+     * highest byte. Meaningless for an IPv6 sender.
+     */
+    public int getIPv4() {
+        return (int) low;
+    }
+
+    /**
+     * The first eight bytes of the IPv6 address, in network byte order.
+     * Zero for an IPv4 sender.
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * The last eight bytes of the IPv6 address, in network byte order,
+     * or the IPv4 address in its low 32 bits.
+     */
+    public long getLow() {
+        return low;
+    }
+
+    public InetAddress getInetAddress() {
+        if (family == 0) {
+            return null;
+        }
+        final byte[] address = new byte[family == 4 ? 4 : 16];
+        if (family == 4) {
+            putBytes(address, 0, low, 4);
+        } else {
+            putBytes(address, 0, high, 8);
+            putBytes(address, 8, low, 8);
+        }
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (final UnknownHostException ex) {
+            // cannot happen with an address of the right length
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public String getIp() {
+        final InetAddress address = getInetAddress();
+        return address == null ? null : address.getHostAddress();
+    }
+
+    /**
+     * The sender as the recv callbacks see it, or null if it is not known.
+     */
+    public Address toAddress() {
+        return family == 0 ? null : new Address(getIp(), port, family == 4 ? "IPv4" : "IPv6");
+    }
+
+    /**
+     * A copy that stays valid after the callback returns.
+     */
+    public UDPPeer copy() {
+        return new UDPPeer(this);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof UDPPeer)) {
+            return false;
+        }
+        final UDPPeer that = (UDPPeer) other;
+        return family == that.family && port == that.port && high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = family;
+        hash = 31 * hash + port;
+        hash = 31 * hash + (int) (high ^ (high >>> 32));
+        hash = 31 * hash + (int) (low ^ (low >>> 32));
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return family == 0 ? "{unknown}" : "{ip: " + getIp() + ", port: " + port + "}";
+    }
+
+    private static void putBytes(final byte[] bytes, final int offset, final long value, final int count) {
+        for (int i = 0; i < count; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * (count - 1 - i)));
+        }
+    }
+}
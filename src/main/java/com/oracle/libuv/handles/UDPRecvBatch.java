@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.libuv.handles;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.oracle.libuv.Address;
+
+/**
+ * Datagrams received together by a {@link UDPHandle} in batch mode. The
+ * batch and the buffers it hands out are views of native memory that is
+ * reused for the next batch, so they are only valid during the callback.
+ */
+public final class UDPRecvBatch {
+
+    // must match RecvRecordField in udp.h
+    private static final int LENGTH = 0;
+    private static final int FLAGS = 1;
+    private static final int FAMILY = 2;
+    private static final int PORT = 3;
+    private static final int ADDRESS = 4;
+    static final int RECORD_INTS = 8;
+    private static final int RECORD_SIZE = RECORD_INTS * 4;
+
+    // UV_UDP_PARTIAL in uv.h
+    private static final int PARTIAL = 2;
+
+    private final ByteBuffer records;
+    private final ByteBuffer[] data;
+    private int size;
+
+    UDPRecvBatch(final ByteBuffer arena, final int slots, final int slotSize) {
+        final ByteBuffer view = arena.duplicate();
+        view.limit(slots * RECORD_SIZE);
+        records = view.slice().order(ByteOrder.nativeOrder());
+        data = new ByteBuffer[slots];
+        for (int i = 0; i < slots; i++) {
+            final int start = slots * RECORD_SIZE + i * slotSize;
+            view.limit(start + slotSize).position(start);
+            data[i] = view.slice();
+        }
+    }
+
+    void reset(final int size) {
+        this.size = size;
+    }
+
+    /**
+     * The number of datagrams in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The datagram at the given index, positioned at its first byte and
+     * limited to its length.
+     */
+    public ByteBuffer data(final int index) {
+        final ByteBuffer buffer = data[checkIndex(index)];
+        buffer.clear();
+        buffer.limit(length(index));
+        return buffer;
+    }
+
+    public int length(final int index) {
+        return field(index, LENGTH);
+    }
+
+    /**
+     * The port the datagram at the given index came from.
+     */
+    public int port(final int index) {
+        return field(index, PORT);
+    }
+
+    /**
+     * The address the datagram at the given index came from, or null if
+     * it is not known. It is formatted by uv_inet_ntop, the same as the
+     * addresses handed to the other recv callbacks.
+     */
+    public Address source(final int index) {
+        final int family = field(index, FAMILY);
+        if (family == 0) {
+            return null;
+        }
+        final String ip = _inet_ntop(records, index * RECORD_SIZE + ADDRESS * 4, family);
+        return new Address(ip, port(index), family == 4 ? "IPv4" : "IPv6");
+    }
+
+    /**
+     * Whether the datagram at the given index was longer than its slot
+     * and lost its tail.
+     */
+    public boolean isTruncated(final int index) {
+        return (flags(index) & PARTIAL) != 0;
+    }
+
+    int flags(final int index) {
+        return field(index, FLAGS);
+    }
+
+    private int field(final int index, final int field) {
+        return records.getInt(checkIndex(index) * RECORD_SIZE + field * 4);
+    }
+
+    private int checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " not in batch of " + size);
+        }
+        return index;
+    }
+
+    private static native String _inet_ntop(final ByteBuffer records, final int offset, final int family);
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+#include <assert.h>
+#include <stdint.h>
+#include <stdlib.h>
+
+#include "buffer_pool.h"
+
+BufferPool::BufferPool(size_t slot_size, size_t max_free, size_t alignment) :
+    _slot_size(slot_size),
+    _max_free(max_free),
+    _alignment(alignment) {
+  assert((alignment & (alignment - 1)) == 0);
+  _free = NULL;
+  _free_count = 0;
+  _outstanding = 0;
+  _acquired = 0;
+  _reused = 0;
+  _destroyed = false;
+  int r = uv_mutex_init(&_mutex);
+  assert(r == 0);
+}
+
+BufferPool::~BufferPool() {
+  assert(_outstanding == 0);
+  assert(_free == NULL);
+  uv_mutex_destroy(&_mutex);
+}
+
+char* BufferPool::acquire(size_t size) {
+  Header* h = NULL;
+  uv_mutex_lock(&_mutex);
+  assert(!_destroyed);
+  if (size <= _slot_size && _free) {
+    h = _free;
+    _free = h->slot.next;
+    _free_count--;
+    _reused++;
+  }
+  _outstanding++;
+  _acquired++;
+  uv_mutex_unlock(&_mutex);
+
+  if (!h) {
+    size_t capacity = size <= _slot_size ? _slot_size : size;
+    char* memory = reinterpret_cast<char*>(malloc(sizeof(Header) + capacity + _alignment));
+    if (!memory) {
+      uv_mutex_lock(&_mutex);
+      _outstanding--;
+      _acquired--;
+      uv_mutex_unlock(&_mutex);
+      return NULL;
+    }
+    char* b = memory + sizeof(Header);
+    if (_alignment) {
+      // the header sits right below the aligned start
+      uintptr_t address = reinterpret_cast<uintptr_t>(b);
+      b += (_alignment - (address & (_alignment - 1))) & (_alignment - 1);
+    }
+    h = header(b);
+    h->slot.pool = this;
+    h->slot.size = capacity;
+    h->slot.memory = memory;
+  }
+  h->slot.next = NULL;
+  return base(h);
+}
+
+void BufferPool::release(char* base) {
+  if (!base) {
+    return;
+  }
+  Header* h = header(base);
+  assert(h->slot.pool);
+  h->slot.pool->recycle(h);
+}
+
+void BufferPool::recycle(Header* h) {
+  bool keep;
+  bool last;
+  uv_mutex_lock(&_mutex);
+  assert(_outstanding > 0);
+  _outstanding--;
+  keep = !_destroyed && h->slot.size == _slot_size && _free_count < _max_free;
+  if (keep) {
+    h->slot.next = _free;
+    _free = h;
+    _free_count++;
+  }
+  last = _destroyed && _outstanding == 0;
+  uv_mutex_unlock(&_mutex);
+
+  if (!keep) {
+    free(h->slot.memory);
+  }
+  if (last) {
+    delete this;
+  }
+}
+
+void BufferPool::destroy() {
+  bool last;
+  uv_mutex_lock(&_mutex);
+  assert(!_destroyed);
+  _destroyed = true;
+  while (_free) {
+    Header* h = _free;
+    _free = h->slot.next;
+    free(h->slot.memory);
+  }
+  _free_count = 0;
+  last = _outstanding == 0;
+  uv_mutex_unlock(&_mutex);
+
+  if (last) {
+    delete this;
+  }
+}
+
+void BufferPool::stats(Stats* stats) {
+  uv_mutex_lock(&_mutex);
+  stats->slot_size = _slot_size;
+  stats->acquired = _acquired;
+  stats->reused = _reused;
+  stats->outstanding = _outstanding;
+  stats->idle = _free_count;
+  uv_mutex_unlock(&_mutex);
+}
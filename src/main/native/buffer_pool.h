@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+#ifndef _libuv_java_buffer_pool_h_
+#define _libuv_java_buffer_pool_h_
+
+#include <stddef.h>
+
+#include "uv.h"
+
+/*
+ * A free list of fixed size native buffers, one per loop, so that reads do
+ * not hit malloc on every callback. Buffers larger than the slot size are
+ * allocated and freed individually. Every buffer carries a small header
+ * pointing back at its pool so that it can be released from any thread,
+ * and even after the pool has been destroyed.
+ */
+class BufferPool {
+public:
+  struct Stats {
+    size_t slot_size;
+    size_t acquired;
+    size_t reused;
+    size_t outstanding;
+    size_t idle;
+  };
+
+private:
+  union Header {
+    struct {
+      BufferPool* pool;
+      Header* next;
+      size_t size;
+      void* memory;
+    } slot;
+    double _align;
+    char _pad[32];
+  };
+
+  const size_t _slot_size;
+  const size_t _max_free;
+  const size_t _alignment;
+
+  Header* _free;
+  size_t _free_count;
+  size_t _outstanding;
+  size_t _acquired;
+  size_t _reused;
+  bool _destroyed;
+  uv_mutex_t _mutex;
+
+  ~BufferPool();
+
+  static inline Header* header(char* base) {
+    return reinterpret_cast<Header*>(base - sizeof(Header));
+  }
+
+  static inline char* base(Header* header) {
+    return reinterpret_cast<char*>(header) + sizeof(Header);
+  }
+
+  void recycle(Header* header);
+
+public:
+  static const size_t DEFAULT_SLOT_SIZE = 64 * 1024;
+  static const size_t DEFAULT_MAX_FREE = 16;
+
+  // buffers start at a multiple of alignment, a power of two, if not 0
+  BufferPool(size_t slot_size, size_t max_free, size_t alignment = 0);
+
+  // returns a buffer of at least size bytes, or NULL if out of memory
+  char* acquire(size_t size);
+
+  // returns a buffer obtained from any pool's acquire
+  static void release(char* base);
+
+  // frees idle buffers, the pool itself goes away with its last buffer
+  void destroy();
+
+  void stats(Stats* stats);
+
+  inline size_t slot_size() const { return _slot_size; }
+};
+
+#endif // _libuv_java_buffer_pool_h_
@@ -31,6 +31,7 @@
 #include "uv.h"
 #include "exception.h"
 #include "stream.h"
+#include "loop.h"
 #include "com_oracle_libuv_handles_CheckHandle.h"
 
 class CheckCallbacks {
@@ -41,6 +42,7 @@ private:
 
   JNIEnv* _env;
   jobject _instance;
+  jint _event_id;
 
 public:
   static void static_initialize(JNIEnv* env, jclass cls);
@@ -50,6 +52,9 @@ public:
 
   void initialize(JNIEnv* env, jobject instance);
 
+  inline jint event_id() const { return _event_id; }
+  inline void set_event_id(jint id) { _event_id = id; }
+
   void on_check(int status);
   void on_close();
 };
@@ -80,6 +85,7 @@ void CheckCallbacks::initialize(JNIEnv* env, jobject instance) {
 
 CheckCallbacks::CheckCallbacks() {
   _env = NULL;
+  _event_id = 0;
 }
 
 CheckCallbacks::~CheckCallbacks() {
@@ -108,14 +114,20 @@ static void _check_cb(uv_check_t* handle, int status) {
   assert(handle);
   assert(handle->data);
   CheckCallbacks* cb = reinterpret_cast<CheckCallbacks*>(handle->data);
-  cb->on_check(status);
+  if (!LoopData::of(handle->loop)->post_event(cb->event_id(), CHECK_CALLBACK, status, 0)) {
+    cb->on_check(status);
+  }
 }
 
 static void _close_cb(uv_handle_t* handle) {
   assert(handle);
   assert(handle->data);
   CheckCallbacks* cb = reinterpret_cast<CheckCallbacks*>(handle->data);
-  cb->on_close();
+  LoopData* data = LoopData::of(handle->loop);
+  if (!data->post_event(cb->event_id(), CHECK_CLOSE_CALLBACK, 0, 0)) {
+    cb->on_close();
+  }
+  data->post_event(cb->event_id(), EventRing::RELEASE_EVENT, 0, 0);
   delete cb;
   delete handle;
 }
@@ -166,6 +178,21 @@ JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_CheckHandle__1initialize
   cb->initialize(env, that);
 }
 
+/*
+ * Class:     com_oracle_libuv_handles_CheckHandle
+ * Method:    _set_event_id
+ * Signature: (JI)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_CheckHandle__1set_1event_1id
+  (JNIEnv *env, jobject that, jlong check, jint id) {
+
+  assert(check);
+  uv_check_t* handle = reinterpret_cast<uv_check_t*>(check);
+  assert(handle->data);
+  CheckCallbacks* cb = reinterpret_cast<CheckCallbacks*>(handle->data);
+  cb->set_event_id(id);
+}
+
 /*
  * Class:     com_oracle_libuv_handles_CheckHandle
  * Method:    _start
@@ -27,18 +27,43 @@
 #include <stdlib.h>
 #include <jni.h>
 
+#include "buffer_pool.h"
 #include "context.h"
 
  ContextHolder::ContextHolder(JNIEnv* env, jobject data, jobject context) {
   _data = data ? (jobject) env->NewGlobalRef(data) : NULL;
+  _bytes = NULL;
   _env = env;
   _context = context ? (jobject) env->NewGlobalRef(context) : NULL;
+  _request_id = 0;
+  _by_id = false;
  }
 
  ContextHolder::ContextHolder(JNIEnv* env, jobject context) {
   _data = NULL;
+  _bytes = NULL;
   _env = env;
   _context = context ? (jobject) env->NewGlobalRef(context) : NULL;
+  _request_id = 0;
+  _by_id = false;
+ }
+
+ ContextHolder::ContextHolder(JNIEnv* env, jlong request_id) {
+  _data = NULL;
+  _bytes = NULL;
+  _env = env;
+  _context = NULL;
+  _request_id = request_id;
+  _by_id = true;
+ }
+
+ ContextHolder::ContextHolder(JNIEnv* env, jobject data, jlong request_id) {
+  _data = data ? (jobject) env->NewGlobalRef(data) : NULL;
+  _bytes = NULL;
+  _env = env;
+  _context = NULL;
+  _request_id = request_id;
+  _by_id = true;
  }
 
  ContextHolder::~ContextHolder() {
@@ -48,4 +73,5 @@
   if (_data) {
    _env->DeleteGlobalRef(_data);
   }
+  BufferPool::release(_bytes);
  }
@@ -29,18 +29,30 @@
 #include <jni.h>
 
 #include "uv.h"
+#include "loop.h"
 
-class ContextHolder {
+class ContextHolder : public LoopRequest<LoopData::CONTEXT_HOLDER> {
   private:
     jobject _context;
     jobject _data;
+    char* _bytes;
     JNIEnv* _env;
+    jlong _request_id;
+    bool _by_id;
 
   public:
     inline jobject context() { return _context; }
     inline jobject data() { return _data; }
+    // requests made with a request id hold no java references but the
+    // direct buffer they use, if any
+    inline bool by_id() const { return _by_id; }
+    inline jlong request_id() const { return _request_id; }
+    // staging bytes that live as long as the request, released with the holder
+    inline void set_bytes(char* bytes) { _bytes = bytes; }
     ContextHolder(JNIEnv* env, jobject data, jobject context);
     ContextHolder(JNIEnv* env, jobject context);
+    ContextHolder(JNIEnv* env, jlong request_id);
+    ContextHolder(JNIEnv* env, jobject data, jlong request_id);
     ~ContextHolder();
 };
 
@@ -31,6 +31,7 @@
 #include <string>
 
 #include "uv.h"
+#include "exception.h"
 #include "com_oracle_libuv_NativeException.h"
 
 const char* get_uv_errno_string(int errorno) {
@@ -47,40 +48,44 @@ const char* get_uv_errno_message(int errorno) {
   return uv_strerror(err);
 }
 
-static inline jstring utf(JNIEnv* env, const std::string& s) {
+jstring utf(JNIEnv* env, const std::string& s) {
     return env->NewStringUTF(s.data());
 }
 
-jthrowable NewException(JNIEnv* env, int errorno, const char *syscall, const char *msg, const char *path) {
-  assert(env);
+static jclass _native_exception_cid = NULL;
+static jmethodID _native_exception_init_mid = NULL;
+static jmethodID _native_exception_shared_init_mid = NULL;
 
-  jobject syscall_arg = syscall ? env->NewStringUTF(syscall) : NULL;
+// stackless exceptions for every error code, built once by _static_initialize
+// and handed to error-code-only callbacks for the codes switched on by
+// _preallocate instead of new ones
+static jthrowable _shared_exceptions[UV_MAX_ERRORS];
+static volatile bool _shared_enabled[UV_MAX_ERRORS];
 
-  std::string errno_message = get_uv_errno_message(errorno);
-  if (!msg || !msg[0]) {
-    msg = errno_message.data();
+jthrowable NewException(JNIEnv* env, int errorno) {
+  if (errorno >= 0 && errorno < UV_MAX_ERRORS && _shared_enabled[errorno]) {
+    assert(_shared_exceptions[errorno]);
+    return (jthrowable) env->NewLocalRef(_shared_exceptions[errorno]);
   }
+  return NewException(env, errorno, NULL, NULL, NULL);
+}
 
-  std::string errno_string = get_uv_errno_string(errorno);
-  std::string message = msg;
-  std::string cons1 = errno_string + ", ";
-  std::string cons2 = cons1 + message;
-
-  jclass nativeExceptionClassID = env->FindClass("com/oracle/libuv/NativeException");
-  assert(nativeExceptionClassID);
-  jmethodID nativeExceptionConstructorMID = env->GetMethodID(
-      nativeExceptionClassID,
-      "<init>",
-      "(ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
-  assert(nativeExceptionConstructorMID);
+jthrowable NewException(JNIEnv* env, int errorno, const char *syscall, const char *msg, const char *path) {
+  assert(env);
+  assert(_native_exception_cid);
 
-  jthrowable e;
-  std::string path_str;
+  const char* errno_string = get_uv_errno_string(errorno);
+  const char* errno_message = get_uv_errno_message(errorno);
+  if (!msg || !msg[0]) {
+    msg = errno_message;
+  }
 
-  jstring err_str = utf(env, errno_string);
-  jstring err_msg = utf(env, errno_message);
+  std::string message(errno_string);
+  message.append(", ").append(msg);
 
+  jstring err_path = NULL;
   if (path) {
+    std::string path_str;
 #ifdef _WIN32
     if (strncmp(path, "\\\\?\\UNC\\", 8) == 0) {
       path_str = "\\\\" + std::string(path + 8);
@@ -92,33 +97,27 @@ jthrowable NewException(JNIEnv* env, int errorno, const char *syscall, const cha
 #else
     path_str = std::string(path);
 #endif
+    message.append(" '").append(path_str).append("'");
+    err_path = utf(env, path_str);
+  }
 
-    std::string cons3 = cons2 + " '";
-    std::string cons4 = cons3 + path_str;
-    std::string cons5 = cons4 + "'";
-
-    jstring err_cons5 = utf(env, cons5);
-    jstring err_path = utf(env, path_str);
-
-    e = (jthrowable) env->NewObject(nativeExceptionClassID, nativeExceptionConstructorMID,
-        errorno, err_str, err_msg, syscall_arg, err_cons5, err_path);
-
-    env->DeleteLocalRef(err_cons5);
-    env->DeleteLocalRef(err_path);
-  } else {
-    jstring err_cons2 = utf(env, cons2);
-
-    e = (jthrowable) env->NewObject(nativeExceptionClassID, nativeExceptionConstructorMID,
-        errorno, err_str, err_msg, syscall_arg, err_cons2, NULL);
+  jstring syscall_arg = syscall ? env->NewStringUTF(syscall) : NULL;
+  jstring err_str = env->NewStringUTF(errno_string);
+  jstring err_msg = env->NewStringUTF(errno_message);
+  jstring err_message = utf(env, message);
 
-    env->DeleteLocalRef(err_cons2);
-  }
+  jthrowable e = (jthrowable) env->NewObject(_native_exception_cid, _native_exception_init_mid,
+      errorno, err_str, err_msg, syscall_arg, err_message, err_path);
 
-  if (syscall_arg != NULL) {
+  if (syscall_arg) {
     env->DeleteLocalRef(syscall_arg);
   }
+  if (err_path) {
+    env->DeleteLocalRef(err_path);
+  }
   env->DeleteLocalRef(err_str);
   env->DeleteLocalRef(err_msg);
+  env->DeleteLocalRef(err_message);
 
   return e;
 }
@@ -155,4 +154,80 @@ JNIEXPORT void JNICALL Java_com_oracle_libuv_NativeException__1static_1initializ
   assert(_oom_cid);
   _oom_cid = (jclass) env->NewGlobalRef(_oom_cid);
   assert(_oom_cid);
+
+  _native_exception_cid = (jclass) env->NewGlobalRef(cls);
+  assert(_native_exception_cid);
+  _native_exception_init_mid = env->GetMethodID(
+      _native_exception_cid,
+      "<init>",
+      "(ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
+  assert(_native_exception_init_mid);
+  _native_exception_shared_init_mid = env->GetMethodID(
+      _native_exception_cid,
+      "<init>",
+      "(ILjava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
+  assert(_native_exception_shared_init_mid);
+
+  for (int i = 0; i < UV_MAX_ERRORS; i++) {
+    const char* errno_string = get_uv_errno_string(i);
+    const char* errno_message = get_uv_errno_message(i);
+    std::string message(errno_string);
+    message.append(", ").append(errno_message);
+    jstring err_str = env->NewStringUTF(errno_string);
+    OOM(env, err_str);
+    jstring err_msg = env->NewStringUTF(errno_message);
+    OOM(env, err_msg);
+    jstring err_message = utf(env, message);
+    OOM(env, err_message);
+    jthrowable e = (jthrowable) env->NewObject(_native_exception_cid, _native_exception_shared_init_mid,
+        i, err_str, err_msg, err_message);
+    env->DeleteLocalRef(err_str);
+    env->DeleteLocalRef(err_msg);
+    env->DeleteLocalRef(err_message);
+    OOM(env, e);
+    _shared_exceptions[i] = (jthrowable) env->NewGlobalRef(e);
+    env->DeleteLocalRef(e);
+    OOM(env, _shared_exceptions[i]);
+  }
+}
+
+/*
+ * Class:     com_oracle_libuv_NativeException
+ * Method:    _new_exception
+ * Signature: (ILjava/lang/String;)Lcom/oracle/libuv/NativeException;
+ */
+JNIEXPORT jthrowable JNICALL Java_com_oracle_libuv_NativeException__1new_1exception
+  (JNIEnv* env, jclass cls, jint errorno, jstring syscall) {
+
+  const char* csyscall = syscall ? env->GetStringUTFChars(syscall, 0) : NULL;
+  jthrowable exception = csyscall ? NewException(env, errorno, csyscall, NULL, NULL) : NewException(env, errorno);
+  if (csyscall) {
+    env->ReleaseStringUTFChars(syscall, csyscall);
+  }
+  return exception;
+}
+
+/*
+ * Class:     com_oracle_libuv_NativeException
+ * Method:    _preallocate
+ * Signature: (Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_NativeException__1preallocate
+  (JNIEnv* env, jclass cls, jstring errno_string) {
+
+  assert(errno_string);
+  const char* name = env->GetStringUTFChars(errno_string, 0);
+  OOME(env, name);
+  int errorno = -1;
+  for (int i = 0; i < UV_MAX_ERRORS; i++) {
+    if (strcmp(get_uv_errno_string(i), name) == 0) {
+      errorno = i;
+      break;
+    }
+  }
+  env->ReleaseStringUTFChars(errno_string, name);
+  if (errorno >= 0) {
+    _shared_enabled[errorno] = true;
+  }
+  return errorno;
 }
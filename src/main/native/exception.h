@@ -62,12 +62,10 @@ const char* get_uv_errno_string(int errorno);
 const char* get_uv_errno_message(int errorno);
 jstring utf(JNIEnv* env, const std::string& s);
 jthrowable NewException(JNIEnv* env, int errorno, const char *syscall, const char *msg, const char *path);
+// for callbacks that get only an error code, may return a shared stackless instance
+jthrowable NewException(JNIEnv* env, int errorno);
 void ThrowOutOfMemoryError(JNIEnv* env, const char* func, const char* file, const char* line, const char* msg);
 
-inline jthrowable NewException(JNIEnv* env, int errorno) {
-  return NewException(env, errorno, NULL, NULL, NULL);
-}
-
 inline void ThrowException(JNIEnv* env, int errorno, const char *syscall, const char *msg, const char *path) {
   env->Throw(NewException(env, errorno, syscall, msg, path));
 }
@@ -30,6 +30,8 @@
 #include "uv.h"
 #include "stats.h"
 #include "exception.h"
+#include "buffer_pool.h"
+#include "loop.h"
 #include "com_oracle_libuv_Files.h"
 
 #ifdef __MACOS__
@@ -44,26 +46,34 @@
 
 class FileCallback;
 
-class FileRequest {
+class FileRequest : public LoopRequest<LoopData::FILE_REQUEST> {
 private:
   FileCallback* _file_callback;
   jobject _buffer;
   jbyteArray _data;
   jbyte* _bytes;
+  char* _staged;
   jsize _offset;
   jobject _callback;
   jint _fd;
   jstring _path;
   jobject _context;
   jint _flags;
+  jlong _request_id;
+  bool _by_id;
 public:
   FileRequest(FileCallback* ptr, jobject callback, jint fd, jstring path, jobject context);
   FileRequest(FileCallback* ptr, jobject callback, jint fd, jstring path, jint flags, jobject context);
+  // a request made with a request id, holding no java references but
+  // the direct buffer it uses, if any
+  FileRequest(FileCallback* ptr, jint fd, jlong request_id, jobject buffer);
   ~FileRequest();
 
   void init(FileCallback* ptr, jobject callback, jint fd, jstring path, jint flags, jobject context);
   void get_bytes(jobject buffer, jbyteArray data, jsize offset, jsize length);
   void set_bytes(jint length);
+  // holds staging bytes until the request is done
+  void set_staged(char* staged) { _staged = staged; }
 
   FileCallback* file_callback() { return _file_callback; }
 
@@ -80,8 +90,15 @@ public:
   jobject context() { return _context; }
 
   jbyte* bytes() { return _bytes; }
+
+  bool by_id() { return _by_id; }
+
+  jlong request_id() { return _request_id; }
 };
 
+// fails to compile if FileRequest outgrows its pool's buffers
+typedef char file_request_fits_pool[sizeof(FileRequest) <= LoopData::FILE_REQUEST_SIZE ? 1 : -1];
+
 class FileCallback {
 private:
   static jclass _files_cid;
@@ -96,6 +113,7 @@ private:
   static jmethodID _stats_callback_mid;
   static jmethodID _utime_callback_mid;
   static jmethodID _write_callback_mid;
+  static jmethodID _request_callback_mid;
   static jmethodID _stats_init_mid;
 
   JNIEnv* _env;
@@ -116,6 +134,7 @@ public:
   void initialize(JNIEnv* env, jobject instance, uv_loop_t* loop);
   void fs_cb(FileRequest* request, uv_fs_type fs_type, ssize_t result, void* ptr);
   void fs_cb(FileRequest* request, uv_fs_type fs_type, const char* target_path, int errorno);
+  void request_cb(FileRequest* request, uv_fs_type fs_type, jint result, jthrowable exception);
 };
 
 jclass FileCallback::_files_cid = NULL;
@@ -131,6 +150,7 @@ jmethodID FileCallback::_readlink_callback_mid = NULL;
 jmethodID FileCallback::_stats_callback_mid = NULL;
 jmethodID FileCallback::_utime_callback_mid = NULL;
 jmethodID FileCallback::_write_callback_mid = NULL;
+jmethodID FileCallback::_request_callback_mid = NULL;
 jmethodID FileCallback::_stats_init_mid = NULL;
 
 FileRequest::FileRequest(FileCallback* ptr, jobject callback, jint fd, jstring path, jint flags, jobject context) {
@@ -141,16 +161,26 @@ FileRequest::FileRequest(FileCallback* ptr, jobject callback, jint fd, jstring p
   init(ptr, callback, fd, path, 0, context);
 }
 
+FileRequest::FileRequest(FileCallback* ptr, jint fd, jlong request_id, jobject buffer) {
+  init(ptr, NULL, fd, NULL, 0, NULL);
+  _buffer = buffer ? _file_callback->env()->NewGlobalRef(buffer) : NULL;
+  _request_id = request_id;
+  _by_id = true;
+}
+
 void FileRequest::init(FileCallback* ptr, jobject callback, jint fd, jstring path, jint flags, jobject context) {
   _file_callback = ptr;
   _callback = callback ? _file_callback->env()->NewGlobalRef(callback) : NULL;
   _fd = fd;
   _path = path ? (jstring) _file_callback->env()->NewGlobalRef(path) : NULL;
   _bytes = NULL;
+  _staged = NULL;
   _buffer = NULL;
   _data = NULL;
   _context = context ? (jobject) _file_callback->env()->NewGlobalRef(context) : NULL;
   _flags = flags;
+  _request_id = 0;
+  _by_id = false;
 }
 
 
@@ -177,6 +207,8 @@ if (_context) {
   if (_path) {
     _file_callback->env()->DeleteGlobalRef(_path);
   }
+
+  BufferPool::release(_staged);
 }
 
 void FileRequest::get_bytes(jobject buffer, jbyteArray data, jsize offset, jsize length) {
@@ -242,6 +274,9 @@ void FileCallback::static_initialize(JNIEnv* env, jclass cls) {
   _write_callback_mid = env->GetMethodID(_files_cid, "callWrite", "(Ljava/lang/Object;ILjava/lang/Exception;Ljava/lang/Object;)V");
   assert(_write_callback_mid);
 
+  _request_callback_mid = env->GetMethodID(_files_cid, "callRequest", "(IJILjava/lang/Exception;)V");
+  assert(_request_callback_mid);
+
   _stats_init_mid = env->GetMethodID(_stats_cid, "<init>", "(IIIIIIIJIJJJJ)V");
   assert(_stats_init_mid);
 
@@ -271,6 +306,11 @@ void FileCallback::fs_cb(FileRequest* request, uv_fs_type fs_type, ssize_t resul
   assert(_env);
   assert(request);
 
+  if (request->by_id()) {
+    request_cb(request, fs_type, static_cast<jint>(result), NULL);
+    return;
+  }
+
   switch (fs_type) {
     case UV_FS_CLOSE:
       _env->CallVoidMethod(
@@ -428,6 +468,15 @@ void FileCallback::fs_cb(FileRequest* request, uv_fs_type fs_type, const char* t
     exception = NewException(_env, errorno, NULL, NULL, target_path);
   }
 
+  if (request->by_id()) {
+    // requests by id have no path
+    request_cb(request, fs_type, -1, exception);
+    if (exception) {
+      _env->DeleteLocalRef(exception);
+    }
+    return;
+  }
+
   switch (fs_type) {
     case UV_FS_CLOSE:
       _env->CallVoidMethod(
@@ -552,6 +601,16 @@ void FileCallback::fs_cb(FileRequest* request, uv_fs_type fs_type, const char* t
   }
 }
 
+void FileCallback::request_cb(FileRequest* request, uv_fs_type fs_type, jint result, jthrowable exception) {
+  _env->CallVoidMethod(
+      _instance,
+      _request_callback_mid,
+      fs_type,
+      request->request_id(),
+      result,
+      exception);
+}
+
 static void _fs_cb(uv_fs_t* req) {
   assert(req);
   assert(req->data);
@@ -568,8 +627,23 @@ static void _fs_cb(uv_fs_t* req) {
   }
 
   uv_fs_req_cleanup(req);
-  delete(req);
-  delete(request);
+  delete_request(req);
+  delete request;
+}
+
+// a request for the threadpool carrying the given FileRequest, or NULL if
+// either could not be had from its pool, with the other given back
+static uv_fs_t* _fs_request(uv_loop_t* loop, FileRequest* request) {
+  if (!request) {
+    return NULL;
+  }
+  uv_fs_t* req = new_request<uv_fs_t>(loop, LoopData::FS_REQUEST);
+  if (!req) {
+    delete request;
+    return NULL;
+  }
+  req->data = request;
+  return req;
 }
 
 /*
@@ -638,8 +712,8 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1close__JILjava_lang_Object_
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, fd, NULL, context));
+    OOME(env, req);
     r = uv_fs_close(cb->loop(), req, fd, _fs_cb);
   } else {
     uv_fs_t req;
@@ -666,8 +740,11 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1open
   int fd;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, flags, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, flags, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOME(env, req);
     fd = uv_fs_open(cb->loop(), req, cpath, flags, mode, _fs_cb);
   } else {
     uv_fs_t req;
@@ -694,10 +771,10 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1read
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    FileRequest* request = new FileRequest(cb, callback, fd, NULL, context);
+    FileRequest* request = new (cb->loop()) FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), request);
+    OOME(env, req);
     request->get_bytes(buffer, data, static_cast<jsize>(offset), static_cast<jsize>(length));
-    req->data = request;
     jbyte* base = request->bytes();
     r = uv_fs_read(cb->loop(), req, fd, base + offset, length, position, _fs_cb);
   } else {
@@ -733,8 +810,11 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1unlink
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOME(env, req);
     r = uv_fs_unlink(cb->loop(), req, cpath, _fs_cb);
   } else {
     uv_fs_t req;
@@ -761,13 +841,21 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1write
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, fd, NULL, context);
+    FileRequest* request = new (cb->loop()) FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), request);
+    OOME(env, req);
     if (data) {
-      jbyte* base = (jbyte*) env->GetPrimitiveArrayCritical(data, NULL);
+      // the threadpool writes after we are back in java, when the array
+      // may have moved, so it gets a copy
+      char* base = LoopData::of(cb->loop())->stage(length);
+      if (!base) {
+        delete request;
+        delete_request(req);
+      }
       OOME(env, base);
-      r = uv_fs_write(cb->loop(), req, fd, base + offset, length, position, _fs_cb);
-      env->ReleasePrimitiveArrayCritical(data, base, 0);
+      env->GetByteArrayRegion(data, (jsize) offset, (jsize) length, reinterpret_cast<jbyte*>(base));
+      request->set_staged(base);
+      r = uv_fs_write(cb->loop(), req, fd, base, length, position, _fs_cb);
     } else {
       jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
       r = uv_fs_write(cb->loop(), req, fd, base + offset, length, position, _fs_cb);
@@ -775,10 +863,12 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1write
   } else {
     uv_fs_t req;
     if (data) {
-      jbyte* base = (jbyte*) env->GetPrimitiveArrayCritical(data, NULL);
+      // a blocking write must not hold a critical region stalling the gc
+      char* base = LoopData::of(cb->loop())->stage(length);
       OOME(env, base);
-      r = uv_fs_write(cb->loop(), &req, fd, base + offset, length, position, NULL);
-      env->ReleasePrimitiveArrayCritical(data, base, 0);
+      env->GetByteArrayRegion(data, (jsize) offset, (jsize) length, reinterpret_cast<jbyte*>(base));
+      r = uv_fs_write(cb->loop(), &req, fd, base, length, position, NULL);
+      BufferPool::release(base);
     } else {
       jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
       r = uv_fs_write(cb->loop(), &req, fd, base + offset, length, position, NULL);
@@ -791,6 +881,90 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1write
   return r;
 }
 
+// the address of a direct buffer, NULL with an IllegalArgumentException
+// pending for any other buffer
+static jbyte* _direct_address(JNIEnv* env, jobject buffer) {
+  jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
+  if (!base) {
+    jclass iae = env->FindClass("java/lang/IllegalArgumentException");
+    if (iae) {
+      env->ThrowNew(iae, "not a direct buffer");
+      env->DeleteLocalRef(iae);
+    }
+  }
+  return base;
+}
+
+/*
+ * Class:     com_oracle_libuv_Files
+ * Method:    _read_request
+ * Signature: (JILjava/nio/ByteBuffer;JJJJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1read_1request
+  (JNIEnv *env, jobject that, jlong ptr, jint fd, jobject buffer, jlong length, jlong offset, jlong position, jlong request_id) {
+
+  assert(ptr);
+  FileCallback* cb = reinterpret_cast<FileCallback*>(ptr);
+  jbyte* base = _direct_address(env, buffer);
+  if (!base) {
+    return -1;
+  }
+  // the buffer must stay reachable until the read is done
+  FileRequest* request = new (cb->loop()) FileRequest(cb, fd, request_id, buffer);
+  uv_fs_t* req = _fs_request(cb->loop(), request);
+  OOME(env, req);
+  int r = uv_fs_read(cb->loop(), req, fd, base + offset, length, position, _fs_cb);
+  if (r < 0) {
+    delete request;
+    delete_request(req);
+    ThrowException(env, uv_last_error(cb->loop()).code, "uv_fs_read");
+  }
+  return r;
+}
+
+/*
+ * Class:     com_oracle_libuv_Files
+ * Method:    _write_request
+ * Signature: (JILjava/nio/ByteBuffer;[BJJJJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1write_1request
+  (JNIEnv *env, jobject that, jlong ptr, jint fd, jobject buffer, jbyteArray data, jlong length, jlong offset, jlong position, jlong request_id) {
+
+  assert(ptr);
+  FileCallback* cb = reinterpret_cast<FileCallback*>(ptr);
+  char* base;
+  if (data) {
+    // the threadpool writes after we are back in java, so it gets a copy
+    base = LoopData::of(cb->loop())->stage(length);
+    OOME(env, base);
+    env->GetByteArrayRegion(data, (jsize) offset, (jsize) length, reinterpret_cast<jbyte*>(base));
+  } else {
+    jbyte* address = _direct_address(env, buffer);
+    if (!address) {
+      return -1;
+    }
+    base = reinterpret_cast<char*>(address + offset);
+  }
+  // a direct buffer must stay reachable until the write is done
+  FileRequest* request = new (cb->loop()) FileRequest(cb, fd, request_id, data ? NULL : buffer);
+  uv_fs_t* req = _fs_request(cb->loop(), request);
+  if (!req && data) {
+    BufferPool::release(base);
+  }
+  OOME(env, req);
+  if (data) {
+    request->set_staged(base);
+  }
+  int r = uv_fs_write(cb->loop(), req, fd, base, length, position, _fs_cb);
+  if (r < 0) {
+    // also releases the staged copy
+    delete request;
+    delete_request(req);
+    ThrowException(env, uv_last_error(cb->loop()).code, "uv_fs_write");
+  }
+  return r;
+}
+
 /*
  * Class:     com_oracle_libuv_Files
  * Method:    _mkdir
@@ -805,8 +979,11 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1mkdir
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOME(env, req);
     r = uv_fs_mkdir(cb->loop(), req, cpath, mode, _fs_cb);
   } else {
     uv_fs_t req;
@@ -834,8 +1011,11 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1rmdir
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOME(env, req);
     r = uv_fs_rmdir(cb->loop(), req, cpath, _fs_cb);
   } else {
     uv_fs_t req;
@@ -863,8 +1043,11 @@ JNIEXPORT jobjectArray JNICALL Java_com_oracle_libuv_Files__1readdir
   jobjectArray names = NULL;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOMN(env, req);
     uv_fs_readdir(cb->loop(), req, cpath, flags, _fs_cb);
   } else {
     uv_fs_t req;
@@ -910,8 +1093,11 @@ JNIEXPORT jobject JNICALL Java_com_oracle_libuv_Files__1stat
   jobject stats = NULL;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOMN(env, req);
     uv_fs_stat(cb->loop(), req, cpath, _fs_cb);
   } else {
     uv_fs_t req;
@@ -939,8 +1125,8 @@ JNIEXPORT jobject JNICALL Java_com_oracle_libuv_Files__1fstat
   jobject stats = NULL;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, fd, NULL, context));
+    OOMN(env, req);
     uv_fs_fstat(cb->loop(), req, fd, _fs_cb);
   } else {
     uv_fs_t req;
@@ -969,8 +1155,12 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1rename
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, new_path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, new_path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, src_path);
+      env->ReleaseStringUTFChars(new_path, dst_path);
+    }
+    OOME(env, req);
     r = uv_fs_rename(cb->loop(), req, src_path, dst_path, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1004,8 +1194,8 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1fsync
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, fd, NULL, context));
+    OOME(env, req);
     r = uv_fs_fsync(cb->loop(), req, fd, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1031,8 +1221,8 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1fdatasync
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, fd, NULL, context));
+    OOME(env, req);
     r = uv_fs_fdatasync(cb->loop(), req, fd, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1058,8 +1248,8 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1ftruncate
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, fd, NULL, context));
+    OOME(env, req);
     r = uv_fs_ftruncate(cb->loop(), req, fd, offset, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1085,8 +1275,8 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1sendfile
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, in_fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, in_fd, NULL, context));
+    OOME(env, req);
     r = uv_fs_sendfile(cb->loop(), req, out_fd, in_fd, offset, length, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1113,8 +1303,11 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1chmod
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOME(env, req);
     r = uv_fs_chmod(cb->loop(), req, cpath, mode, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1142,8 +1335,11 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1utime
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOME(env, req);
     r = uv_fs_utime(cb->loop(), req, cpath, atime, mtime, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1170,8 +1366,8 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1futime
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, fd, NULL, context));
+    OOME(env, req);
     r = uv_fs_futime(cb->loop(), req, fd, atime, mtime, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1198,8 +1394,11 @@ JNIEXPORT jobject JNICALL Java_com_oracle_libuv_Files__1lstat
   jobject stats = NULL;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOMN(env, req);
     uv_fs_lstat(cb->loop(), req, cpath, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1229,8 +1428,12 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1link
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, new_path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, new_path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, src_path);
+      env->ReleaseStringUTFChars(new_path, dst_path);
+    }
+    OOME(env, req);
     r = uv_fs_link(cb->loop(), req, src_path, dst_path, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1266,8 +1469,12 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1symlink
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, src_path);
+      env->ReleaseStringUTFChars(new_path, dst_path);
+    }
+    OOME(env, req);
     r = uv_fs_symlink(cb->loop(), req, src_path, dst_path, flags, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1296,8 +1503,11 @@ JNIEXPORT jstring JNICALL Java_com_oracle_libuv_Files__1readlink
   jstring link = NULL;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOMN(env, req);
     uv_fs_readlink(cb->loop(), req, cpath, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1325,8 +1535,8 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1fchmod
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, fd, NULL, context));
+    OOME(env, req);
     r = uv_fs_fchmod(cb->loop(), req, fd, mode, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1353,8 +1563,11 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1chown
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, 0, path, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, 0, path, context));
+    if (!req) {
+      env->ReleaseStringUTFChars(path, cpath);
+    }
+    OOME(env, req);
     r = uv_fs_chown(cb->loop(), req, cpath, (uv_uid_t) uid, (uv_gid_t) gid, _fs_cb);
   } else {
     uv_fs_t req;
@@ -1381,8 +1594,8 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_Files__1fchown
   int r;
 
   if (callback) {
-    uv_fs_t* req = new uv_fs_t();
-    req->data = new FileRequest(cb, callback, fd, NULL, context);
+    uv_fs_t* req = _fs_request(cb->loop(), new (cb->loop()) FileRequest(cb, callback, fd, NULL, context));
+    OOME(env, req);
     r = uv_fs_fchown(cb->loop(), req, fd, (uv_uid_t) uid, (uv_gid_t) gid, _fs_cb);
   } else {
     uv_fs_t req;
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+#include <assert.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include "framer.h"
+
+Framer::Framer() {
+  _mode = NONE;
+  _length = 0;
+  _header_size = 0;
+  _big_endian = true;
+  _delimiter_size = 0;
+  _pending = NULL;
+  _pending_size = 0;
+  _pending_capacity = 0;
+}
+
+Framer::~Framer() {
+  free(_pending);
+}
+
+void Framer::configure(Mode mode, size_t length, size_t header_size, bool big_endian,
+                       const char* delimiter, size_t delimiter_size) {
+  assert(delimiter_size <= MAX_DELIMITER_SIZE);
+  _mode = mode;
+  _length = length;
+  _header_size = header_size;
+  _big_endian = big_endian;
+  _delimiter_size = delimiter_size;
+  if (delimiter_size) {
+    memcpy(_delimiter, delimiter, delimiter_size);
+  }
+}
+
+ssize_t Framer::next(const char* data, size_t size, size_t* offset, size_t* length) const {
+  switch (_mode) {
+  case FIXED_LENGTH:
+    if (size < _length) {
+      return 0;
+    }
+    *offset = 0;
+    *length = _length;
+    return _length;
+
+  case LENGTH_PREFIX: {
+    if (size < _header_size) {
+      return 0;
+    }
+    const unsigned char* header = reinterpret_cast<const unsigned char*>(data);
+    size_t n = 0;
+    for (size_t i = 0; i < _header_size; i++) {
+      size_t b = header[_big_endian ? i : _header_size - 1 - i];
+      n = (n << 8) | b;
+    }
+    if (n > _length) {
+      return -1;
+    }
+    if (size - _header_size < n) {
+      return 0;
+    }
+    *offset = _header_size;
+    *length = n;
+    return _header_size + n;
+  }
+
+  case DELIMITER: {
+    size_t limit = _length + _delimiter_size;
+    size_t end = size < limit ? size : limit;
+    for (size_t i = 0; i + _delimiter_size <= end; i++) {
+      if (data[i] == _delimiter[0] && memcmp(data + i, _delimiter, _delimiter_size) == 0) {
+        *offset = 0;
+        *length = i;
+        return i + _delimiter_size;
+      }
+    }
+    return size >= limit ? -1 : 0;
+  }
+
+  default:
+    assert(_mode == NONE);
+    return 0;
+  }
+}
+
+bool Framer::append(const char* data, size_t size) {
+  if (_pending_size + size > _pending_capacity) {
+    size_t capacity = _pending_capacity ? _pending_capacity : 256;
+    while (capacity < _pending_size + size) {
+      capacity *= 2;
+    }
+    char* pending = reinterpret_cast<char*>(realloc(_pending, capacity));
+    if (!pending) {
+      return false;
+    }
+    _pending = pending;
+    _pending_capacity = capacity;
+  }
+  memcpy(_pending + _pending_size, data, size);
+  _pending_size += size;
+  return true;
+}
+
+void Framer::consume(size_t size) {
+  assert(size <= _pending_size);
+  _pending_size -= size;
+  if (_pending_size) {
+    memmove(_pending, _pending + size, _pending_size);
+  }
+}
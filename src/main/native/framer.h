@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+#ifndef _libuv_java_framer_h_
+#define _libuv_java_framer_h_
+
+#include <stddef.h>
+
+#include "uv.h"
+
+/*
+ * Splits a byte stream into frames of a fixed length, frames preceded by
+ * their length, or frames ended by a delimiter. The bytes of a frame that
+ * has not been fully received are kept until the rest arrives.
+ */
+class Framer {
+public:
+  // must be equal to the framing modes in StreamHandle.java
+  enum Mode {
+    NONE = 0,
+    FIXED_LENGTH = 1,
+    LENGTH_PREFIX = 2,
+    DELIMITER = 3
+  };
+
+  static const size_t MAX_DELIMITER_SIZE = 16;
+
+private:
+  Mode _mode;
+  size_t _length;
+  size_t _header_size;
+  bool _big_endian;
+  char _delimiter[MAX_DELIMITER_SIZE];
+  size_t _delimiter_size;
+
+  char* _pending;
+  size_t _pending_size;
+  size_t _pending_capacity;
+
+public:
+  Framer();
+  ~Framer();
+
+  // the length is the frame length in FIXED_LENGTH mode and the largest
+  // accepted frame length in the other modes
+  void configure(Mode mode, size_t length, size_t header_size, bool big_endian,
+                 const char* delimiter, size_t delimiter_size);
+
+  inline Mode mode() const { return _mode; }
+
+  // looks for a frame at the start of data, returns the number of bytes it
+  // spans and where its payload is, 0 if the frame is incomplete and -1 if
+  // the frame is longer than allowed
+  ssize_t next(const char* data, size_t size, size_t* offset, size_t* length) const;
+
+  inline char* pending() const { return _pending; }
+  inline size_t pending_size() const { return _pending_size; }
+  bool append(const char* data, size_t size);
+  void consume(size_t size);
+  inline void discard() { _pending_size = 0; }
+};
+
+#endif // _libuv_java_framer_h_
@@ -31,6 +31,7 @@
 #include "uv.h"
 #include "exception.h"
 #include "stream.h"
+#include "loop.h"
 #include "com_oracle_libuv_handles_IdleHandle.h"
 
 class IdleCallbacks {
@@ -41,6 +42,7 @@ private:
 
   JNIEnv* _env;
   jobject _instance;
+  jint _event_id;
 
 public:
   static void static_initialize(JNIEnv* env, jclass cls);
@@ -50,6 +52,9 @@ public:
 
   void initialize(JNIEnv* env, jobject instance);
 
+  inline jint event_id() const { return _event_id; }
+  inline void set_event_id(jint id) { _event_id = id; }
+
   void on_idle(int status);
   void on_close();
 };
@@ -80,6 +85,7 @@ void IdleCallbacks::initialize(JNIEnv* env, jobject instance) {
 
 IdleCallbacks::IdleCallbacks() {
   _env = NULL;
+  _event_id = 0;
 }
 
 IdleCallbacks::~IdleCallbacks() {
@@ -108,14 +114,20 @@ static void _idle_cb(uv_idle_t* handle, int status) {
   assert(handle);
   assert(handle->data);
   IdleCallbacks* cb = reinterpret_cast<IdleCallbacks*>(handle->data);
-  cb->on_idle(status);
+  if (!LoopData::of(handle->loop)->post_event(cb->event_id(), IDLE_CALLBACK, status, 0)) {
+    cb->on_idle(status);
+  }
 }
 
 static void _close_cb(uv_handle_t* handle) {
   assert(handle);
   assert(handle->data);
   IdleCallbacks* cb = reinterpret_cast<IdleCallbacks*>(handle->data);
-  cb->on_close();
+  LoopData* data = LoopData::of(handle->loop);
+  if (!data->post_event(cb->event_id(), IDLE_CLOSE_CALLBACK, 0, 0)) {
+    cb->on_close();
+  }
+  data->post_event(cb->event_id(), EventRing::RELEASE_EVENT, 0, 0);
   delete cb;
   delete handle;
 }
@@ -166,6 +178,21 @@ JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_IdleHandle__1initialize
   cb->initialize(env, that);
 }
 
+/*
+ * Class:     com_oracle_libuv_handles_IdleHandle
+ * Method:    _set_event_id
+ * Signature: (JI)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_IdleHandle__1set_1event_1id
+  (JNIEnv *env, jobject that, jlong idle, jint id) {
+
+  assert(idle);
+  uv_idle_t* handle = reinterpret_cast<uv_idle_t*>(idle);
+  assert(handle->data);
+  IdleCallbacks* cb = reinterpret_cast<IdleCallbacks*>(handle->data);
+  cb->set_event_id(id);
+}
+
 /*
  * Class:     com_oracle_libuv_handles_IdleHandle
  * Method:    _start
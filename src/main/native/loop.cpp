@@ -24,17 +24,191 @@
  */
 
 #include <stdio.h>
+#include <stdlib.h>
 #include <string.h>
 #include <assert.h>
 #include <vector>
 
 #include "uv.h"
+#include "context.h"
 #include "exception.h"
 #include "handle.h"
+#include "loop.h"
 #include "com_oracle_libuv_handles_LoopHandle.h"
 
 static jclass _string_cid = NULL;
 
+static const size_t DEFAULT_STAGING_SIZES[] = { 4 * 1024, 16 * 1024, 64 * 1024 };
+
+// slot sizes by LoopData::RequestKind, larger requests are allocated on
+// their own
+static const size_t REQUEST_SIZES[] = {
+  sizeof(uv_write_t) + 2 * sizeof(void*), // with a size or owner alongside
+  sizeof(uv_shutdown_t),
+  sizeof(uv_connect_t),
+  sizeof(uv_udp_send_t) + sizeof(void*), // with the batch it belongs to
+  sizeof(uv_fs_t),
+  sizeof(ContextHolder),
+  LoopData::FILE_REQUEST_SIZE
+};
+
+jmethodID EventRing::_call_events_mid = NULL;
+
+void EventRing::static_initialize(JNIEnv* env, jclass cls) {
+  _call_events_mid = env->GetMethodID(cls, "callEvents", "()V");
+  assert(_call_events_mid);
+}
+
+EventRing::EventRing(JNIEnv* env, jobject instance, jint capacity) {
+  assert(capacity > 0);
+  _env = env;
+  _instance = env->NewGlobalRef(instance);
+  _capacity = capacity;
+  _draining = false;
+  _buffer = static_cast<jint*>(calloc(HEADER_INTS + capacity * RECORD_INTS, sizeof(jint)));
+  if (_buffer) {
+    _buffer[1] = capacity;
+  }
+}
+
+void EventRing::start(uv_loop_t* loop) {
+  // drains whatever was posted during the iteration without keeping the
+  // loop alive, records posted later are drained when run returns
+  uv_check_init(loop, &_check);
+  _check.data = this;
+  uv_check_start(&_check, _check_cb);
+  uv_unref(reinterpret_cast<uv_handle_t*>(&_check));
+}
+
+void EventRing::stop() {
+  uv_check_stop(&_check);
+  uv_close(reinterpret_cast<uv_handle_t*>(&_check), NULL);
+}
+
+EventRing::~EventRing() {
+  _env->DeleteGlobalRef(_instance);
+  free(_buffer);
+}
+
+void EventRing::_check_cb(uv_check_t* handle, int status) {
+  assert(handle);
+  assert(handle->data);
+  EventRing* ring = reinterpret_cast<EventRing*>(handle->data);
+  if (ring->_buffer[0] > 0 || !ring->_overflow.empty()) {
+    ring->drain();
+  }
+}
+
+void EventRing::post(jint id, jint type, jint status, jint value) {
+  assert(_buffer);
+  jint count = _buffer[0];
+  if (count == _capacity || !_overflow.empty()) {
+    if (_draining) {
+      // java is still reading the ring, the record waits its turn
+      jint record[] = { id, type, status, value };
+      _overflow.insert(_overflow.end(), record, record + RECORD_INTS);
+      return;
+    }
+    drain();
+    count = _buffer[0];
+  }
+  jint* record = _buffer + HEADER_INTS + count * RECORD_INTS;
+  record[0] = id;
+  record[1] = type;
+  record[2] = status;
+  record[3] = value;
+  _buffer[0] = count + 1;
+}
+
+void EventRing::drain() {
+  assert(!_draining);
+  _draining = true;
+  for (;;) {
+    _env->CallVoidMethod(_instance, _call_events_mid);
+    // java resets the count, unless the upcall failed before it could
+    _buffer[0] = 0;
+    if (_overflow.empty() || _env->ExceptionCheck()) {
+      break;
+    }
+    size_t ints = _overflow.size();
+    size_t max_ints = static_cast<size_t>(_capacity) * RECORD_INTS;
+    if (ints > max_ints) {
+      ints = max_ints;
+    }
+    memcpy(_buffer + HEADER_INTS, &_overflow[0], ints * sizeof(jint));
+    _overflow.erase(_overflow.begin(), _overflow.begin() + ints);
+    _buffer[0] = static_cast<jint>(ints / RECORD_INTS);
+  }
+  _draining = false;
+}
+
+LoopData::LoopData() {
+  assert(read_size(READ_POOLS - 1) == BufferPool::DEFAULT_SLOT_SIZE);
+  for (int i = 0; i < READ_POOLS; i++) {
+    _read_pools[i] = new BufferPool(read_size(i), BufferPool::DEFAULT_MAX_FREE);
+  }
+  _staging_pool_count = 0;
+  _events = NULL;
+  assert(sizeof(REQUEST_SIZES) / sizeof(REQUEST_SIZES[0]) == REQUEST_KINDS);
+  for (int i = 0; i < REQUEST_KINDS; i++) {
+    _request_pools[i] = new BufferPool(REQUEST_SIZES[i], REQUEST_MAX_FREE);
+  }
+  set_staging_sizes(DEFAULT_STAGING_SIZES, sizeof(DEFAULT_STAGING_SIZES) / sizeof(DEFAULT_STAGING_SIZES[0]));
+}
+
+LoopData::~LoopData() {
+  for (int i = 0; i < READ_POOLS; i++) {
+    _read_pools[i]->destroy();
+  }
+  for (int i = 0; i < _staging_pool_count; i++) {
+    _staging_pools[i]->destroy();
+  }
+  for (int i = 0; i < REQUEST_KINDS; i++) {
+    _request_pools[i]->destroy();
+  }
+  delete _events;
+}
+
+void LoopData::set_staging_sizes(const size_t* sizes, int count) {
+  assert(count > 0 && count <= MAX_STAGING_POOLS);
+  for (int i = 0; i < _staging_pool_count; i++) {
+    _staging_pools[i]->destroy();
+  }
+  for (int i = 0; i < count; i++) {
+    assert(i == 0 || sizes[i - 1] < sizes[i]);
+    _staging_pools[i] = new BufferPool(sizes[i], BufferPool::DEFAULT_MAX_FREE, STAGING_ALIGNMENT);
+  }
+  _staging_pool_count = count;
+}
+
+char* LoopData::stage(size_t size) {
+  // larger than every class, allocated and freed on its own
+  int index = _staging_pool_count - 1;
+  for (int i = 0; i < _staging_pool_count; i++) {
+    if (size <= _staging_pools[i]->slot_size()) {
+      index = i;
+      break;
+    }
+  }
+  return _staging_pools[index]->acquire(size);
+}
+
+uv_buf_t LoopData::read_buffer(BufferPool* pool, size_t size) {
+  char* base = pool->acquire(size);
+  if (!base && size > MIN_READ_SIZE) {
+    // a short read, or a truncated datagram, beats no read at all
+    size = MIN_READ_SIZE;
+    base = _read_pools[0]->acquire(size);
+  }
+  if (!base) {
+    // libuv 0.10 asserts that alloc_cb returns memory and has no way to
+    // report ENOBUFS, reading into NULL would be worse than stopping
+    fprintf(stderr, "libuv-java: out of memory for a %lu byte read buffer\n", static_cast<unsigned long>(size));
+    abort();
+  }
+  return uv_buf_init(base, static_cast<unsigned int>(size));
+}
+
 static void _close_cb(uv_handle_t* handle) {
 }
 
@@ -62,6 +236,8 @@ JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_LoopHandle__1static_1initia
   assert(_string_cid);
   _string_cid = (jclass) env->NewGlobalRef(_string_cid);
   assert(_string_cid);
+
+  EventRing::static_initialize(env, cls);
 }
 
 /*
@@ -74,6 +250,7 @@ JNIEXPORT jlong JNICALL Java_com_oracle_libuv_handles_LoopHandle__1new
 
   uv_loop_t* ptr = uv_loop_new();
   assert(ptr);
+  ptr->data = new LoopData();
   return reinterpret_cast<jlong>(ptr);
 }
 
@@ -111,6 +288,14 @@ JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_LoopHandle__1destroy
 
   assert(ptr);
   uv_loop_t* handle = reinterpret_cast<uv_loop_t*>(ptr);
+  LoopData* data = LoopData::of(handle);
+  if (data->events()) {
+    // the ring's check handle is embedded in it, closed before it goes
+    data->events()->stop();
+    uv_run(handle, UV_RUN_NOWAIT);
+  }
+  delete data;
+  handle->data = NULL;
   uv_loop_delete(handle);
 }
 
@@ -164,5 +349,110 @@ JNIEXPORT jthrowable JNICALL Java_com_oracle_libuv_handles_LoopHandle__1get_1las
   uv_loop_t* loop = reinterpret_cast<uv_loop_t*>(ptr);
   int code = uv_last_error(loop).code;
 
-  return NewException(env, code);
+  return NewException(env, code, NULL, NULL, NULL);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_LoopHandle
+ * Method:    _set_staging_sizes
+ * Signature: (J[I)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_LoopHandle__1set_1staging_1sizes
+  (JNIEnv *env, jobject that, jlong ptr, jintArray sizes) {
+
+  assert(ptr);
+  uv_loop_t* loop = reinterpret_cast<uv_loop_t*>(ptr);
+  jsize count = env->GetArrayLength(sizes);
+  assert(count > 0 && count <= LoopData::MAX_STAGING_POOLS);
+  jint values[LoopData::MAX_STAGING_POOLS];
+  env->GetIntArrayRegion(sizes, 0, count, values);
+  size_t staging_sizes[LoopData::MAX_STAGING_POOLS];
+  for (jsize i = 0; i < count; i++) {
+    staging_sizes[i] = static_cast<size_t>(values[i]);
+  }
+  LoopData::of(loop)->set_staging_sizes(staging_sizes, count);
+}
+
+// counters per pool, must match LoopHandle.POOL_COUNTERS
+static const jsize POOL_COUNTERS = 5;
+
+// the counters of the pools, see LoopHandle.toPoolStats
+static jlongArray _pool_stats(JNIEnv* env, BufferPool** pools, jsize count) {
+  jlongArray stats = env->NewLongArray(count * POOL_COUNTERS);
+  OOMN(env, stats);
+  for (jsize i = 0; i < count; i++) {
+    BufferPool::Stats s;
+    pools[i]->stats(&s);
+    jlong values[] = {
+      static_cast<jlong>(s.slot_size),
+      static_cast<jlong>(s.acquired),
+      static_cast<jlong>(s.reused),
+      static_cast<jlong>(s.outstanding),
+      static_cast<jlong>(s.idle)
+    };
+    env->SetLongArrayRegion(stats, i * POOL_COUNTERS, POOL_COUNTERS, values);
+  }
+  return stats;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_LoopHandle
+ * Method:    _staging_stats
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_oracle_libuv_handles_LoopHandle__1staging_1stats
+  (JNIEnv *env, jobject that, jlong ptr) {
+
+  assert(ptr);
+  LoopData* data = LoopData::of(reinterpret_cast<uv_loop_t*>(ptr));
+  BufferPool* pools[LoopData::MAX_STAGING_POOLS];
+  jsize count = data->staging_pool_count();
+  for (jsize i = 0; i < count; i++) {
+    pools[i] = data->staging_pool(i);
+  }
+  return _pool_stats(env, pools, count);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_LoopHandle
+ * Method:    _request_stats
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_oracle_libuv_handles_LoopHandle__1request_1stats
+  (JNIEnv *env, jobject that, jlong ptr) {
+
+  assert(ptr);
+  LoopData* data = LoopData::of(reinterpret_cast<uv_loop_t*>(ptr));
+  BufferPool* pools[LoopData::REQUEST_KINDS];
+  for (int i = 0; i < LoopData::REQUEST_KINDS; i++) {
+    pools[i] = data->request_pool(i);
+  }
+  return _pool_stats(env, pools, LoopData::REQUEST_KINDS);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_LoopHandle
+ * Method:    _enable_events
+ * Signature: (JI)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_oracle_libuv_handles_LoopHandle__1enable_1events
+  (JNIEnv *env, jobject that, jlong ptr, jint capacity) {
+
+  assert(ptr);
+  uv_loop_t* loop = reinterpret_cast<uv_loop_t*>(ptr);
+  LoopData* data = LoopData::of(loop);
+  EventRing* events = new EventRing(env, that, capacity);
+  jint* memory = events->buffer();
+  if (!memory) {
+    delete events;
+  }
+  OOMN(env, memory);
+  jobject buffer = env->NewDirectByteBuffer(memory, events->buffer_size());
+  if (!buffer) {
+    delete events;
+    return NULL;
+  }
+  events->start(loop);
+  data->set_events(events);
+  return buffer;
 }
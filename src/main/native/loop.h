@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+#ifndef _libuv_java_loop_h_
+#define _libuv_java_loop_h_
+
+#include <assert.h>
+#include <string.h>
+#include <jni.h>
+#include <vector>
+
+#include "uv.h"
+#include "buffer_pool.h"
+
+// compact callback records that handles append instead of calling into
+// java, drained with a single upcall per loop iteration. The buffer is
+// shared with java: a header holding the record count and capacity is
+// followed by records of four ints, handle id, type, status and value.
+class EventRing {
+public:
+  static const int HEADER_INTS = 2;
+  static const int RECORD_INTS = 4;
+
+  // posted after the last record of a closed handle, frees its id
+  static const jint RELEASE_EVENT = 0;
+
+private:
+  static jmethodID _call_events_mid;
+
+  JNIEnv* _env;
+  jobject _instance;
+  uv_check_t _check;
+  jint* _buffer;
+  jint _capacity;
+  bool _draining;
+  // records posted while a full ring is being drained, moved into the
+  // ring in order once java is done with it
+  std::vector<jint> _overflow;
+
+  static void _check_cb(uv_check_t* handle, int status);
+
+public:
+  static void static_initialize(JNIEnv* env, jclass cls);
+
+  EventRing(JNIEnv* env, jobject instance, jint capacity);
+  ~EventRing();
+
+  void start(uv_loop_t* loop);
+  // the ring must not be deleted before the loop has run once more
+  void stop();
+
+  inline jint* buffer() const { return _buffer; }
+  inline jlong buffer_size() const {
+    return static_cast<jlong>(HEADER_INTS + _capacity * RECORD_INTS) * sizeof(jint);
+  }
+
+  // records are never dropped nor reordered, so close and release
+  // records always follow everything posted before them for the handle
+  void post(jint id, jint type, jint status, jint value);
+
+  void drain();
+};
+
+// native state shared by all handles of a loop, hung off uv_loop_t.data
+class LoopData {
+public:
+  // read buffers come in powers of two from 256 bytes to 64k, one pool each
+  static const int READ_POOLS = 9;
+  static const size_t MIN_READ_SIZE = 256;
+
+  // heap bytes handed to asynchronous writes are copied into page aligned
+  // staging buffers, in size classes that can be changed from java
+  static const int MAX_STAGING_POOLS = 8;
+  static const size_t STAGING_ALIGNMENT = 4096;
+
+  // request structs and their holders come from free lists, one per kind,
+  // must match LoopHandle.RequestType
+  enum RequestKind {
+    WRITE_REQUEST,
+    SHUTDOWN_REQUEST,
+    CONNECT_REQUEST,
+    UDP_SEND_REQUEST,
+    FS_REQUEST,
+    CONTEXT_HOLDER,
+    FILE_REQUEST,
+    REQUEST_KINDS
+  };
+  static const size_t REQUEST_MAX_FREE = 1024;
+  // FileRequest is private to file.cpp, which checks at compile time
+  // that it fits
+  static const size_t FILE_REQUEST_SIZE = 128;
+
+private:
+  BufferPool* _read_pools[READ_POOLS];
+  BufferPool* _staging_pools[MAX_STAGING_POOLS];
+  int _staging_pool_count;
+  EventRing* _events;
+  BufferPool* _request_pools[REQUEST_KINDS];
+
+public:
+  static inline LoopData* of(uv_loop_t* loop) {
+    assert(loop);
+    assert(loop->data);
+    return reinterpret_cast<LoopData*>(loop->data);
+  }
+
+  LoopData();
+  ~LoopData();
+
+  static inline size_t read_size(int index) { return MIN_READ_SIZE << index; }
+
+  // the smallest read size class that holds size bytes
+  static inline int read_size_index(size_t size) {
+    int index = 0;
+    while (index < READ_POOLS - 1 && read_size(index) < size) {
+      index++;
+    }
+    return index;
+  }
+
+  inline BufferPool* read_pool() { return _read_pools[READ_POOLS - 1]; }
+  inline BufferPool* read_pool(int index) { return _read_pools[index]; }
+
+  // a read buffer of size bytes from the pool, or failing that a smaller
+  // one, never NULL since libuv 0.10 cannot take a failed alloc_cb
+  uv_buf_t read_buffer(BufferPool* pool, size_t size);
+
+  // sizes must be ascending, buffers staged before keep their old pools
+  void set_staging_sizes(const size_t* sizes, int count);
+
+  // a staging buffer of at least size bytes, or NULL if out of memory, to
+  // be returned with BufferPool::release
+  char* stage(size_t size);
+
+  inline int staging_pool_count() const { return _staging_pool_count; }
+  inline BufferPool* staging_pool(int index) { return _staging_pools[index]; }
+
+  // zeroed memory for a request of the given kind, or NULL if out of
+  // memory, returned with delete_request
+  inline void* new_request(RequestKind kind, size_t size) {
+    char* request = _request_pools[kind]->acquire(size);
+    if (request) {
+      memset(request, 0, size);
+    }
+    return request;
+  }
+
+  static inline void delete_request(void* request) {
+    BufferPool::release(static_cast<char*>(request));
+  }
+
+  inline BufferPool* request_pool(int kind) { return _request_pools[kind]; }
+
+  inline EventRing* events() const { return _events; }
+  inline void set_events(EventRing* events) { assert(!_events); _events = events; }
+
+  // appends a record for the handle with the given id if the loop
+  // dispatches through an event ring, false if the caller should call into
+  // java itself
+  inline bool post_event(jint id, jint type, jint status, jint value) {
+    if (!id || !_events) {
+      return false;
+    }
+    _events->post(id, type, status, value);
+    return true;
+  }
+};
+
+// a libuv request struct from the loop's free list, zeroed like new T(),
+// or NULL if out of memory
+template <typename T>
+inline T* new_request(uv_loop_t* loop, LoopData::RequestKind kind) {
+  return static_cast<T*>(LoopData::of(loop)->new_request(kind, sizeof(T)));
+}
+
+inline void delete_request(void* request) {
+  LoopData::delete_request(request);
+}
+
+// a base for request structs allocated with new (loop), which come from
+// the loop's free list of the kind, and are deleted as usual. new (loop)
+// yields NULL when out of memory, which every caller must check
+template <int KIND>
+struct LoopRequest {
+  static void* operator new(size_t size, uv_loop_t* loop) throw() {
+    return LoopData::of(loop)->new_request(static_cast<LoopData::RequestKind>(KIND), size);
+  }
+  static void operator delete(void* request) {
+    LoopData::delete_request(request);
+  }
+  static void operator delete(void* request, uv_loop_t* loop) {
+    LoopData::delete_request(request);
+  }
+};
+
+#endif // _libuv_java_loop_h_
@@ -40,7 +40,7 @@ static void _pipe_connect_cb(uv_connect_t* req, int status) {
   StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(req->handle->data);
   cb->on_connect(status, status < 0 ? uv_last_error(req->handle->loop).code : 0, req_data->context());
   delete req_data;
-  delete req;
+  delete_request(req);
 }
 
 /*
@@ -110,8 +110,14 @@ JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_PipeHandle__1connect
 
   assert(pipe);
   uv_pipe_t* handle = reinterpret_cast<uv_pipe_t*>(pipe);
-  uv_connect_t* connect = new uv_connect_t();
-  connect->data = new ContextHolder(env, context);
+  uv_connect_t* connect = new_request<uv_connect_t>(handle->loop, LoopData::CONNECT_REQUEST);
+  OOM(env, connect);
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, context);
+  if (!req_data) {
+    delete_request(connect);
+  }
+  OOM(env, req_data);
+  connect->data = req_data;
   connect->handle = reinterpret_cast<uv_stream_t*>(handle);
   const char *pipeName = env->GetStringUTFChars(name, 0);
   uv_pipe_connect(connect, handle, pipeName, _pipe_connect_cb);
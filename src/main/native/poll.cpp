@@ -31,6 +31,7 @@
 #include "uv.h"
 #include "exception.h"
 #include "stream.h"
+#include "loop.h"
 #include "com_oracle_libuv_handles_PollHandle.h"
 
 class PollCallbacks {
@@ -41,6 +42,7 @@ private:
 
   JNIEnv* _env;
   jobject _instance;
+  jint _event_id;
 
 public:
   static void static_initialize(JNIEnv* env, jclass cls);
@@ -50,9 +52,16 @@ public:
 
   void initialize(JNIEnv *env, jobject instance);
 
+  inline jint event_id() const { return _event_id; }
+  inline void set_event_id(jint id) { _event_id = id; }
+
   void on_poll(int status, int events);
 };
 
+typedef enum {
+  POLL_CALLBACK = 1
+} PollHandleCallbackType;
+
 jclass PollCallbacks::_poll_handle_cid = NULL;
 
 jmethodID PollCallbacks::_poll_callback_mid = NULL;
@@ -74,6 +83,7 @@ void PollCallbacks::initialize(JNIEnv *env, jobject instance) {
 
 PollCallbacks::PollCallbacks() {
   _env = NULL;
+  _event_id = 0;
 }
 
 PollCallbacks::~PollCallbacks() {
@@ -93,13 +103,16 @@ static void _poll_cb(uv_poll_t* handle, int status, int events) {
   assert(handle);
   assert(handle->data);
   PollCallbacks* cb = reinterpret_cast<PollCallbacks*>(handle->data);
-  cb->on_poll(status, events);
+  if (!LoopData::of(handle->loop)->post_event(cb->event_id(), POLL_CALLBACK, status, events)) {
+    cb->on_poll(status, events);
+  }
 }
 
 static void _close_cb(uv_handle_t* handle) {
   assert(handle);
   assert(handle->data);
   PollCallbacks* cb = reinterpret_cast<PollCallbacks*>(handle->data);
+  LoopData::of(handle->loop)->post_event(cb->event_id(), EventRing::RELEASE_EVENT, 0, 0);
   delete cb;
   delete handle;
 }
@@ -170,6 +183,21 @@ JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_PollHandle__1initialize
   cb->initialize(env, that);
 }
 
+/*
+ * Class:     com_oracle_libuv_handles_PollHandle
+ * Method:    _set_event_id
+ * Signature: (JI)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_PollHandle__1set_1event_1id
+  (JNIEnv *env, jobject that, jlong poll, jint id) {
+
+  assert(poll);
+  uv_poll_t* handle = reinterpret_cast<uv_poll_t*>(poll);
+  assert(handle->data);
+  PollCallbacks* cb = reinterpret_cast<PollCallbacks*>(handle->data);
+  cb->set_event_id(id);
+}
+
 /*
  * Class:     com_oracle_libuv_handles_PollHandle
  * Method:    _start
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+#include <assert.h>
+#include <string.h>
+
+#include "uv.h"
+#include "com_oracle_libuv_handles_ResolvedAddress.h"
+
+/*
+ * Class:     com_oracle_libuv_handles_ResolvedAddress
+ * Method:    _size
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_ResolvedAddress__1size
+  (JNIEnv *env, jclass cls) {
+
+  return sizeof(sockaddr_in6) > sizeof(sockaddr_in) ? sizeof(sockaddr_in6) : sizeof(sockaddr_in);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_ResolvedAddress
+ * Method:    _encode
+ * Signature: (Ljava/nio/ByteBuffer;[BII)J
+ */
+JNIEXPORT jlong JNICALL Java_com_oracle_libuv_handles_ResolvedAddress__1encode
+  (JNIEnv *env, jclass cls, jobject buffer, jbyteArray address, jint port, jint scope_id) {
+
+  char* base = reinterpret_cast<char*>(env->GetDirectBufferAddress(buffer));
+  assert(base);
+  jsize length = env->GetArrayLength(address);
+  if (length == 4) {
+    sockaddr_in* a4 = reinterpret_cast<sockaddr_in*>(base);
+    memset(a4, 0, sizeof *a4);
+    a4->sin_family = AF_INET;
+    a4->sin_port = htons(static_cast<unsigned short>(port));
+    env->GetByteArrayRegion(address, 0, length, reinterpret_cast<jbyte*>(&a4->sin_addr));
+  } else {
+    assert(length == 16);
+    sockaddr_in6* a6 = reinterpret_cast<sockaddr_in6*>(base);
+    memset(a6, 0, sizeof *a6);
+    a6->sin6_family = AF_INET6;
+    a6->sin6_port = htons(static_cast<unsigned short>(port));
+    a6->sin6_scope_id = scope_id;
+    env->GetByteArrayRegion(address, 0, length, reinterpret_cast<jbyte*>(&a6->sin6_addr));
+  }
+  return reinterpret_cast<jlong>(base);
+}
@@ -30,6 +30,8 @@
 #include "uv.h"
 #include "exception.h"
 #include "context.h"
+#include "loop.h"
+#include "framer.h"
 #include "stream.h"
 #include "udp.h"
 #include "com_oracle_libuv_handles_StreamHandle.h"
@@ -39,15 +41,24 @@ jstring StreamCallbacks::_IPV6 = NULL;
 
 jclass StreamCallbacks::_address_cid = NULL;
 jclass StreamCallbacks::_stream_handle_cid = NULL;
+jclass StreamCallbacks::_native_buffer_cid = NULL;
+jclass StreamCallbacks::_object_cid = NULL;
 
 jmethodID StreamCallbacks::_address_init_mid = NULL;
 jmethodID StreamCallbacks::_call_read_callback_mid = NULL;
+jmethodID StreamCallbacks::_call_pooled_read_callback_mid = NULL;
+jmethodID StreamCallbacks::_call_read_into_callback_mid = NULL;
 jmethodID StreamCallbacks::_call_read2_callback_mid = NULL;
 jmethodID StreamCallbacks::_call_write_callback_mid = NULL;
+jmethodID StreamCallbacks::_call_write_error_callback_mid = NULL;
+jmethodID StreamCallbacks::_call_writes_callback_mid = NULL;
 jmethodID StreamCallbacks::_call_connect_callback_mid = NULL;
 jmethodID StreamCallbacks::_call_connection_callback_mid = NULL;
+jmethodID StreamCallbacks::_call_connections_callback_mid = NULL;
 jmethodID StreamCallbacks::_call_close_callback_mid = NULL;
 jmethodID StreamCallbacks::_call_shutdown_callback_mid = NULL;
+jmethodID StreamCallbacks::_call_request_callback_mid = NULL;
+jmethodID StreamCallbacks::_native_buffer_release_mid = NULL;
 
 void StreamCallbacks::static_initialize(JNIEnv* env, jclass cls) {
   _IPV4 = env->NewStringUTF("IPv4");
@@ -59,15 +70,39 @@ void StreamCallbacks::static_initialize(JNIEnv* env, jclass cls) {
   _stream_handle_cid = (jclass) env->NewGlobalRef(cls);
   assert(_stream_handle_cid);
 
-  _call_read_callback_mid = env->GetMethodID(_stream_handle_cid, "callRead", "(Ljava/nio/ByteBuffer;)V");
+  _call_read_callback_mid = env->GetMethodID(_stream_handle_cid, "callRead", "(Ljava/nio/ByteBuffer;J)V");
   assert(_call_read_callback_mid);
 
-  _call_read2_callback_mid = env->GetMethodID(_stream_handle_cid, "callRead2", "(Ljava/nio/ByteBuffer;JI)V");
+  _call_pooled_read_callback_mid = env->GetMethodID(_stream_handle_cid, "callPooledRead", "(Ljava/nio/ByteBuffer;J)Z");
+  assert(_call_pooled_read_callback_mid);
+
+  _call_read_into_callback_mid = env->GetMethodID(_stream_handle_cid, "callReadInto", "(II)V");
+  assert(_call_read_into_callback_mid);
+
+  _call_read2_callback_mid = env->GetMethodID(_stream_handle_cid, "callRead2", "(Ljava/nio/ByteBuffer;JJI)V");
   assert(_call_read2_callback_mid);
 
-  _call_write_callback_mid = env->GetMethodID(_stream_handle_cid, "callWrite", "(ILjava/lang/Exception;Ljava/lang/Object;)V");
+  _call_write_callback_mid = env->GetMethodID(_stream_handle_cid, "callWrite", "(ILjava/lang/Exception;Ljava/lang/Object;Ljava/lang/Object;J)V");
   assert(_call_write_callback_mid);
 
+  _call_write_error_callback_mid = env->GetMethodID(_stream_handle_cid, "callWriteError", "(I)V");
+  assert(_call_write_error_callback_mid);
+
+  _call_writes_callback_mid = env->GetMethodID(_stream_handle_cid, "callWrites", "(IJLjava/lang/Exception;[Ljava/lang/Object;)V");
+  assert(_call_writes_callback_mid);
+
+  _native_buffer_cid = env->FindClass("com/oracle/libuv/handles/NativeBuffer");
+  assert(_native_buffer_cid);
+  _native_buffer_cid = (jclass) env->NewGlobalRef(_native_buffer_cid);
+  assert(_native_buffer_cid);
+  _native_buffer_release_mid = env->GetMethodID(_native_buffer_cid, "release", "()Z");
+  assert(_native_buffer_release_mid);
+
+  _object_cid = env->FindClass("java/lang/Object");
+  assert(_object_cid);
+  _object_cid = (jclass) env->NewGlobalRef(_object_cid);
+  assert(_object_cid);
+
   _call_connect_callback_mid = env->GetMethodID(_stream_handle_cid, "callConnect", "(ILjava/lang/Exception;Ljava/lang/Object;)V");
   assert(_call_connect_callback_mid);
 
@@ -80,6 +115,9 @@ void StreamCallbacks::static_initialize(JNIEnv* env, jclass cls) {
   _call_shutdown_callback_mid = env->GetMethodID(_stream_handle_cid, "callShutdown", "(ILjava/lang/Exception;Ljava/lang/Object;)V");
   assert(_call_shutdown_callback_mid);
 
+  _call_request_callback_mid = env->GetMethodID(_stream_handle_cid, "callRequest", "(IJILjava/lang/Exception;J)V");
+  assert(_call_request_callback_mid);
+
   static_initialize_address(env);
 }
 
@@ -104,12 +142,138 @@ void StreamCallbacks::initialize(JNIEnv *env, jobject instance) {
   _instance = _env->NewGlobalRef(instance);
 }
 
+// write completions of one loop iteration, reported to java together from
+// a check handle, the native buffers written are kept for java to release
+struct WriteBatch {
+  uv_check_t* check;
+  jint count;
+  jlong bytes;
+  int error_code;
+  jobject* owners;
+  jsize owner_count;
+  jsize owner_capacity;
+};
+
 StreamCallbacks::StreamCallbacks() {
   _env = NULL;
+  _instance = NULL;
+  _pooled_reads = false;
+  _read_size = -1;
+  _read_size_min = -1;
+  _read_size_max = -1;
+  _read_size_shrink = false;
+  _read_ring = NULL;
+  _framer = NULL;
+  _accept_batch = NULL;
+  _write_batch = NULL;
 }
 
 StreamCallbacks::~StreamCallbacks() {
-  _env->DeleteGlobalRef(_instance);
+  assert(!_accept_batch);
+  if (_write_batch) {
+    assert(!_write_batch->check);
+    assert(_write_batch->count == 0);
+    delete[] _write_batch->owners;
+    delete _write_batch;
+  }
+  delete _framer;
+  if (_read_ring) {
+    set_read_buffers(NULL);
+  }
+  // accepted clients dropped before reaching java were never initialized
+  if (_instance) {
+    _env->DeleteGlobalRef(_instance);
+  }
+}
+
+// caller supplied read buffers, filled round robin
+struct ReadRing {
+  jobject buffers;
+  uv_buf_t* bufs;
+  jsize size;
+  jsize next;
+};
+
+bool StreamCallbacks::set_read_buffers(jobjectArray buffers) {
+  assert(_env);
+  if (_read_ring) {
+    _env->DeleteGlobalRef(_read_ring->buffers);
+    delete[] _read_ring->bufs;
+    delete _read_ring;
+    _read_ring = NULL;
+  }
+  if (!buffers) {
+    return true;
+  }
+
+  jsize size = _env->GetArrayLength(buffers);
+  assert(size > 0);
+  uv_buf_t* ring = new uv_buf_t[size];
+  for (jsize i = 0; i < size; i++) {
+    jobject buffer = _env->GetObjectArrayElement(buffers, i);
+    char* base = reinterpret_cast<char*>(_env->GetDirectBufferAddress(buffer));
+    jlong capacity = _env->GetDirectBufferCapacity(buffer);
+    _env->DeleteLocalRef(buffer);
+    if (!base || capacity <= 0) {
+      delete[] ring;
+      return false;
+    }
+    ring[i] = uv_buf_init(base, static_cast<unsigned int>(capacity));
+  }
+  // the array keeps the buffers, and so the memory in the ring, reachable
+  _read_ring = new ReadRing();
+  _read_ring->buffers = _env->NewGlobalRef(buffers);
+  _read_ring->bufs = ring;
+  _read_ring->size = size;
+  _read_ring->next = 0;
+  return true;
+}
+
+void StreamCallbacks::set_read_size(size_t minimum, size_t initial, size_t maximum) {
+  _read_size_min = static_cast<signed char>(LoopData::read_size_index(minimum));
+  _read_size_max = static_cast<signed char>(LoopData::read_size_index(maximum));
+  _read_size = static_cast<signed char>(LoopData::read_size_index(initial));
+  _read_size_shrink = false;
+}
+
+// grows the read size quickly when reads fill the buffer, shrinks it a step
+// at a time after two reads in a row would have fit in the next size down
+void StreamCallbacks::record_read(ssize_t nread) {
+  if (_read_size < 0 || nread <= 0) {
+    return;
+  }
+  size_t size = static_cast<size_t>(nread);
+  if (size <= LoopData::read_size(_read_size > 0 ? _read_size - 1 : 0)) {
+    if (_read_size_shrink) {
+      _read_size = _read_size - 1 > _read_size_min ? _read_size - 1 : _read_size_min;
+      _read_size_shrink = false;
+    } else {
+      _read_size_shrink = true;
+    }
+  } else if (size >= LoopData::read_size(_read_size)) {
+    _read_size = _read_size + 2 < _read_size_max ? _read_size + 2 : _read_size_max;
+    _read_size_shrink = false;
+  }
+}
+
+uv_buf_t StreamCallbacks::on_alloc(uv_loop_t* loop, size_t suggested_size) {
+  if (_read_ring) {
+    return _read_ring->bufs[_read_ring->next];
+  }
+  LoopData* data = LoopData::of(loop);
+  size_t size = suggested_size;
+  BufferPool* pool = data->read_pool();
+  if (_read_size >= 0) {
+    size = LoopData::read_size(_read_size);
+    pool = data->read_pool(_read_size);
+  }
+  return data->read_buffer(pool, size);
+}
+
+void StreamCallbacks::release(uv_buf_t* buf) {
+  if (!_read_ring) {
+    BufferPool::release(buf->base);
+  }
 }
 
 void StreamCallbacks::throw_exception(int code, const char* syscall) {
@@ -117,64 +281,355 @@ void StreamCallbacks::throw_exception(int code, const char* syscall) {
   ThrowException(_env, code, syscall);
 }
 
-void StreamCallbacks::on_read(uv_buf_t* buf, jsize nread) {
+// the memory of a read handed to java, the read buffer itself unless the
+// data fills only a small part of it, the returned memory is owned by the
+// caller and is NULL if no memory was left for the copy
+static char* _owned_read(uv_loop_t* loop, uv_buf_t* buf, jsize nread) {
+  if (static_cast<size_t>(nread) > buf->len / 2) {
+    return buf->base;
+  }
+  BufferPool* pool = LoopData::of(loop)->read_pool(LoopData::read_size_index(nread));
+  char* copy = pool->acquire(nread);
+  if (copy) {
+    memcpy(copy, buf->base, nread);
+  }
+  BufferPool::release(buf->base);
+  return copy;
+}
+
+void StreamCallbacks::on_read(uv_loop_t* loop, uv_buf_t* buf, jsize nread) {
   assert(_env);
+  if (_read_ring) {
+    // the data is already where the caller wants it, only say where
+    jint index = -1;
+    if (nread > 0) {
+      assert(buf->base == _read_ring->bufs[_read_ring->next].base);
+      index = _read_ring->next;
+      _read_ring->next = (_read_ring->next + 1) % _read_ring->size;
+    }
+    if (nread != 0) {
+      _env->CallVoidMethod(
+          _instance,
+          _call_read_into_callback_mid,
+          index,
+          nread);
+    }
+    return;
+  }
   if (nread < 0) {
     _env->CallVoidMethod(
         _instance,
         _call_read_callback_mid,
-        NULL);
+        NULL,
+        static_cast<jlong>(0));
+  } else if (nread > 0 && _pooled_reads) {
+    deliver_pooled(buf->base, nread);
+    return;
   } else if (nread > 0) {
-    jbyte* data = new jbyte[nread];
-    memcpy(data, buf->base, nread);
-    jobject arg = _env->NewDirectByteBuffer(data, nread);
-    OOM(_env, arg);
-    _env->CallVoidMethod(
-        _instance,
-        _call_read_callback_mid,
-        arg);
-    _env->DeleteLocalRef(arg);
+    char* base = _owned_read(loop, buf, nread);
+    OOM(_env, base);
+    deliver_owned(base, nread);
+    return;
+  }
+  BufferPool::release(buf->base);
+}
+
+// hands out a pool buffer whose ownership passes to java
+void StreamCallbacks::deliver_owned(char* base, jsize size) {
+  jobject arg = _env->NewDirectByteBuffer(base, size);
+  if (!arg) {
+    BufferPool::release(base);
+  }
+  OOM(_env, arg);
+  _env->CallVoidMethod(
+      _instance,
+      _call_read_callback_mid,
+      arg,
+      reinterpret_cast<jlong>(base));
+  _env->DeleteLocalRef(arg);
+}
+
+// hands out a pool buffer that goes back to the pool when the callback
+// returns unless the callback retained it
+void StreamCallbacks::deliver_pooled(char* base, jsize size) {
+  jobject arg = _env->NewDirectByteBuffer(base, size);
+  if (!arg) {
+    BufferPool::release(base);
+  }
+  OOM(_env, arg);
+  jboolean retained = _env->CallBooleanMethod(
+      _instance,
+      _call_pooled_read_callback_mid,
+      arg,
+      reinterpret_cast<jlong>(base));
+  _env->DeleteLocalRef(arg);
+  if (!retained) {
+    BufferPool::release(base);
+  }
+}
+
+// hands a frame to java the same way as a whole read
+void StreamCallbacks::deliver(uv_loop_t* loop, const char* data, jsize size) {
+  BufferPool* pool = LoopData::of(loop)->read_pool(LoopData::read_size_index(size));
+  char* base = pool->acquire(size);
+  OOM(_env, base);
+  memcpy(base, data, size);
+  if (_pooled_reads) {
+    deliver_pooled(base, size);
+  } else {
+    deliver_owned(base, size);
+  }
+}
+
+void StreamCallbacks::set_framing(int mode, size_t length, size_t header_size, bool big_endian,
+                                  const char* delimiter, size_t delimiter_size) {
+  if (!_framer) {
+    if (mode == Framer::NONE) {
+      return;
+    }
+    _framer = new Framer();
+  }
+  // bytes of an incomplete frame carry over to the new framing
+  _framer->configure(static_cast<Framer::Mode>(mode), length, header_size, big_endian,
+                     delimiter, delimiter_size);
+}
+
+void StreamCallbacks::on_frames(uv_stream_t* stream, uv_buf_t* buf, jsize nread) {
+  assert(_env);
+  assert(_framer);
+  Framer* framer = _framer;
+  if (framer->mode() == Framer::NONE && framer->pending_size() == 0) {
+    on_read(stream->loop, buf, nread);
+    return;
+  }
+  if (nread <= 0) {
+    // a frame cut short by the end of the stream is dropped
+    if (nread < 0) {
+      framer->discard();
+    }
+    on_read(stream->loop, buf, nread);
+    return;
+  }
+
+  const char* data = buf->base;
+  size_t size = nread;
+  bool buffered = framer->pending_size() > 0;
+  if (buffered) {
+    if (!framer->append(data, size)) {
+      release(buf);
+      throw_exception(UV_ENOMEM, "read frame");
+      return;
+    }
+    data = framer->pending();
+    size = framer->pending_size();
+  }
+
+  size_t used = 0;
+  while (used < size) {
+    if (uv_is_closing(reinterpret_cast<uv_handle_t*>(stream)) || _env->ExceptionCheck()) {
+      used = size;
+      break;
+    }
+    if (framer->mode() == Framer::NONE) {
+      // a callback turned framing off, the rest is delivered as is
+      deliver(stream->loop, data + used, static_cast<jsize>(size - used));
+      used = size;
+      break;
+    }
+    size_t offset;
+    size_t length;
+    ssize_t r = framer->next(data + used, size - used, &offset, &length);
+    if (r == 0) {
+      break;
+    }
+    if (r < 0) {
+      uv_read_stop(stream);
+      framer->discard();
+      release(buf);
+      throw_exception(UV_ENOBUFS, "read frame");
+      return;
+    }
+    deliver(stream->loop, data + used + offset, static_cast<jsize>(length));
+    used += r;
+  }
+
+  if (buffered) {
+    framer->consume(used);
+  } else if (used < size && !framer->append(data + used, size - used)) {
+    release(buf);
+    throw_exception(UV_ENOMEM, "read frame");
+    return;
   }
-  delete[] buf->base;
+  release(buf);
 }
 
-void StreamCallbacks::on_read2(uv_buf_t* buf, jsize nread, jlong ptr, uv_handle_type pending) {
+void StreamCallbacks::on_read2(uv_loop_t* loop, uv_buf_t* buf, jsize nread, jlong ptr, uv_handle_type pending) {
   assert(_env);
   if (nread < 0) {
     _env->CallVoidMethod(
         _instance,
         _call_read2_callback_mid,
         NULL,
+        static_cast<jlong>(0),
         ptr,
         pending);
   } else if (nread > 0) {
-    jbyte* data = new jbyte[nread];
-    memcpy(data, buf->base, nread);
-    jobject array = _env->NewDirectByteBuffer(data, nread);
-    OOM(_env, array);
+    char* base = _owned_read(loop, buf, nread);
+    OOM(_env, base);
+    jobject arg = _env->NewDirectByteBuffer(base, nread);
+    if (!arg) {
+      BufferPool::release(base);
+    }
+    OOM(_env, arg);
     _env->CallVoidMethod(
         _instance,
         _call_read2_callback_mid,
-        array,
+        arg,
+        reinterpret_cast<jlong>(base),
         ptr,
         pending);
-    _env->DeleteLocalRef(array);
+    _env->DeleteLocalRef(arg);
+    return;
+  }
+  release(buf);
+}
+
+static void _write_batch_check_cb(uv_check_t* check, int status) {
+  assert(check);
+  assert(check->data);
+  reinterpret_cast<StreamCallbacks*>(check->data)->flush_writes();
+}
+
+static void _write_batch_close_cb(uv_handle_t* handle) {
+  delete reinterpret_cast<uv_check_t*>(handle);
+}
+
+void StreamCallbacks::set_write_batching(uv_stream_t* stream, bool batching) {
+  if (batching && !_write_batch) {
+    WriteBatch* batch = new WriteBatch();
+    batch->check = new uv_check_t();
+    uv_check_init(stream->loop, batch->check);
+    batch->check->data = this;
+    batch->count = 0;
+    batch->bytes = 0;
+    batch->error_code = 0;
+    batch->owners = NULL;
+    batch->owner_count = 0;
+    batch->owner_capacity = 0;
+    _write_batch = batch;
+  } else if (!batching && _write_batch) {
+    flush_writes();
+    close_write_batch();
+    delete[] _write_batch->owners;
+    delete _write_batch;
+    _write_batch = NULL;
   }
-  delete[] buf->base;
 }
 
-void StreamCallbacks::on_write(int status, int error_code, jobject buffer, jobject context) {
+void StreamCallbacks::flush_writes() {
+  WriteBatch* batch = _write_batch;
+  if (!batch || batch->count == 0) {
+    return;
+  }
+  if (batch->check) {
+    uv_check_stop(batch->check);
+  }
+
+  jobjectArray owners = NULL;
+  if (batch->owner_count > 0) {
+    owners = _env->NewObjectArray(batch->owner_count, _object_cid, NULL);
+    if (!owners) {
+      // java cannot be handed the buffers, they are released here and the
+      // writes still reported
+      _env->ExceptionClear();
+      for (jsize i = 0; i < batch->owner_count; i++) {
+        _env->CallBooleanMethod(batch->owners[i], _native_buffer_release_mid);
+        _env->DeleteGlobalRef(batch->owners[i]);
+      }
+      batch->owner_count = 0;
+    }
+  }
+  for (jsize i = 0; i < batch->owner_count; i++) {
+    _env->SetObjectArrayElement(owners, i, batch->owners[i]);
+    _env->DeleteGlobalRef(batch->owners[i]);
+  }
+  jint count = batch->count;
+  jlong bytes = batch->bytes;
+  int error_code = batch->error_code;
+  batch->count = 0;
+  batch->bytes = 0;
+  batch->error_code = 0;
+  batch->owner_count = 0;
+
+  jthrowable exception = error_code ? NewException(_env, error_code) : NULL;
+  _env->CallVoidMethod(
+      _instance,
+      _call_writes_callback_mid,
+      count,
+      bytes,
+      exception,
+      owners);
+  if (exception) { _env->DeleteLocalRef(exception); }
+  if (owners) { _env->DeleteLocalRef(owners); }
+}
+
+// writes cancelled by closing the stream complete after the check handle
+// is gone, they are flushed just before the close callback
+void StreamCallbacks::close_write_batch() {
+  if (_write_batch && _write_batch->check) {
+    uv_close(reinterpret_cast<uv_handle_t*>(_write_batch->check), _write_batch_close_cb);
+    _write_batch->check = NULL;
+  }
+}
+
+void StreamCallbacks::on_write(int status, int error_code, jobject buffer, jobject context, size_t size) {
   assert(_env);
+  WriteBatch* batch = _write_batch;
+  if (batch) {
+    batch->count++;
+    batch->bytes += size;
+    if (error_code && !batch->error_code) {
+      batch->error_code = error_code;
+    }
+    if (buffer && _env->IsInstanceOf(buffer, _native_buffer_cid)) {
+      if (batch->owner_count == batch->owner_capacity) {
+        jsize capacity = batch->owner_capacity ? 2 * batch->owner_capacity : 8;
+        jobject* owners = new jobject[capacity];
+        for (jsize i = 0; i < batch->owner_count; i++) {
+          owners[i] = batch->owners[i];
+        }
+        delete[] batch->owners;
+        batch->owners = owners;
+        batch->owner_capacity = capacity;
+      }
+      batch->owners[batch->owner_count++] = _env->NewGlobalRef(buffer);
+    }
+    if (batch->check && batch->count == 1) {
+      uv_check_start(batch->check, _write_batch_check_cb);
+    }
+    return;
+  }
   jthrowable exception = error_code ? NewException(_env, error_code) : NULL;
   _env->CallVoidMethod(
       _instance,
       _call_write_callback_mid,
       status,
       exception,
-      context);
+      buffer,
+      context,
+      static_cast<jlong>(size));
   if (exception) { _env->DeleteLocalRef(exception); }
 }
 
+// java builds an exception only if its callback wants one
+void StreamCallbacks::on_write_error(int error_code) {
+  assert(_env);
+  _env->CallVoidMethod(
+      _instance,
+      _call_write_error_callback_mid,
+      error_code);
+}
+
 void StreamCallbacks::on_connect(int status, int error_code, jobject context) {
   assert(_env);
   jthrowable exception = error_code ? NewException(_env, error_code) : NULL;
@@ -210,6 +665,41 @@ void StreamCallbacks::on_shutdown(int status, int error_code, jobject context) {
   if (exception) { _env->DeleteLocalRef(exception); }
 }
 
+void StreamCallbacks::on_request(int type, jlong request_id, int status, int error_code, size_t size) {
+  assert(_env);
+  jthrowable exception = error_code ? NewException(_env, error_code) : NULL;
+  _env->CallVoidMethod(
+      _instance,
+      _call_request_callback_mid,
+      type,
+      request_id,
+      status,
+      exception,
+      static_cast<jlong>(size));
+  if (exception) { _env->DeleteLocalRef(exception); }
+}
+
+void StreamCallbacks::static_initialize_connections(JNIEnv* env, jclass tcp_cls) {
+  _call_connections_callback_mid = env->GetMethodID(tcp_cls, "callConnections", "([J)V");
+  assert(_call_connections_callback_mid);
+}
+
+bool StreamCallbacks::on_connections(jlong* clients, jsize count) {
+  assert(_env);
+  assert(_call_connections_callback_mid);
+  jlongArray array = _env->NewLongArray(count);
+  if (!array) {
+    return false;
+  }
+  _env->SetLongArrayRegion(array, 0, count, clients);
+  _env->CallVoidMethod(
+      _instance,
+      _call_connections_callback_mid,
+      array);
+  _env->DeleteLocalRef(array);
+  return true;
+}
+
 void StreamCallbacks::on_close() {
   assert(_env);
   _env->CallVoidMethod(
@@ -250,14 +740,21 @@ jobject StreamCallbacks::_address_to_js(JNIEnv* env, const sockaddr* addr) {
 }
 
 static uv_buf_t _alloc_cb(uv_handle_t* handle, size_t suggested_size) {
-  return uv_buf_init(new char[suggested_size], static_cast<unsigned int>(suggested_size));
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(handle->data);
+  assert(cb);
+  return cb->on_alloc(handle->loop, suggested_size);
 }
 
 static void _read_cb(uv_stream_t* stream, ssize_t nread, uv_buf_t buf) {
   StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(stream->data);
   assert(cb);
   jsize size = static_cast<jsize>(nread);
-  cb->on_read(&buf, size);
+  cb->record_read(nread);
+  if (cb->framing()) {
+    cb->on_frames(stream, &buf, size);
+  } else {
+    cb->on_read(stream->loop, &buf, size);
+  }
 }
 
 static void _shutdown_cb(uv_shutdown_t* req, int status) {
@@ -267,15 +764,21 @@ static void _shutdown_cb(uv_shutdown_t* req, int status) {
   assert(req->handle->data);
   StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(req->handle->data);
   ContextHolder* req_data = reinterpret_cast<ContextHolder*>(req->data);
-  cb->on_shutdown(status, status < 0 ? uv_last_error(req->handle->loop).code : 0, req_data->context());
+  int error_code = status < 0 ? uv_last_error(req->handle->loop).code : 0;
+  if (req_data->by_id()) {
+    cb->on_request(STREAM_SHUTDOWN_REQUEST, req_data->request_id(), status, error_code, 0);
+  } else {
+    cb->on_shutdown(status, error_code, req_data->context());
+  }
   delete req_data;
-  delete req;
+  delete_request(req);
 }
 
 static void _close_cb(uv_handle_t* handle) {
   assert(handle);
   assert(handle->data);
   StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(handle->data);
+  cb->flush_writes();
   cb->on_close();
   delete cb;
   delete handle;
@@ -287,64 +790,146 @@ static void _read2_cb(uv_pipe_t* pipe, ssize_t nread, uv_buf_t buf, uv_handle_ty
   assert(cb);
   uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(pipe);
   jsize size = static_cast<jsize>(nread);
+  cb->record_read(nread);
   if (pending == UV_TCP) {
     uv_tcp_t* tcp = new uv_tcp_t();
     r = uv_tcp_init(handle->loop, tcp);
     if (r) {
       cb->throw_exception(r, "read2_cb.uv_tcp_init");
+      cb->release(&buf);
       return;
     }
     tcp->data = new StreamCallbacks();
     r = uv_accept(handle, reinterpret_cast<uv_stream_t*>(tcp));
     if (r) {
       cb->throw_exception(r, "read2_cb.uv_accept(tcp)");
+      cb->release(&buf);
       return;
     }
-    cb->on_read2(&buf, size, reinterpret_cast<jlong>(tcp), pending);
+    cb->on_read2(handle->loop, &buf, size, reinterpret_cast<jlong>(tcp), pending);
   } else if (pending == UV_NAMED_PIPE) {
     uv_pipe_t* p = new uv_pipe_t();
     r = uv_pipe_init(handle->loop, p, 1);
     if (r) {
       cb->throw_exception(r, "read2_cb.uv_pipe_init");
+      cb->release(&buf);
       return;
     }
     p->data = new StreamCallbacks();
     r = uv_accept(handle, reinterpret_cast<uv_stream_t*>(p));
     if (r) {
       cb->throw_exception(r, "read2_cb.uv_accept(pipe)");
+      cb->release(&buf);
       return;
     }
-    cb->on_read2(&buf, size, reinterpret_cast<jlong>(p), pending);
+    cb->on_read2(handle->loop, &buf, size, reinterpret_cast<jlong>(p), pending);
   } else if (pending == UV_UDP) {
     uv_udp_t* udp = new uv_udp_t();
     r = uv_udp_init(handle->loop, udp);
     if (r) {
       cb->throw_exception(r, "read2_cb.uv_udp_init");
+      cb->release(&buf);
       return;
     }
     udp->data = new UDPCallbacks();
     r = uv_accept(handle, reinterpret_cast<uv_stream_t*>(udp));
     if (r) {
       cb->throw_exception(r, "read2_cb.uv_accept(udp)");
+      cb->release(&buf);
       return;
     }
-    cb->on_read2(&buf, size, reinterpret_cast<jlong>(udp), pending);
+    cb->on_read2(handle->loop, &buf, size, reinterpret_cast<jlong>(udp), pending);
   } else {
     assert(pending == UV_UNKNOWN_HANDLE);
-    cb->on_read(&buf, size);
+    cb->on_read(handle->loop, &buf, size);
   }
 }
 
+// a write request that remembers how many bytes it carries
+struct StreamWrite : LoopRequest<LoopData::WRITE_REQUEST> {
+  uv_write_t req;
+  size_t size;
+};
+
 static void _write_cb(uv_write_t* req, int status) {
   assert(req->handle);
   assert(req->handle->data);
   StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(req->handle->data);
+  StreamWrite* write = reinterpret_cast<StreamWrite*>(req);
   ContextHolder* req_data = reinterpret_cast<ContextHolder*>(req->data);
-  cb->on_write(status, status < 0 ? uv_last_error(req->handle->loop).code : 0, req_data->data(), req_data->context());
-  delete req;
+  int error_code = status < 0 ? uv_last_error(req->handle->loop).code : 0;
+  if (req_data->by_id()) {
+    // never batched, the caller waits for this particular id
+    cb->on_request(STREAM_WRITE_REQUEST, req_data->request_id(), status, error_code, write->size);
+  } else {
+    cb->on_write(status, error_code, req_data->data(), req_data->context(), write->size);
+  }
+  delete write;
   delete req_data;
 }
 
+// a write nobody waits for, its bytes are a copy owned by the request and
+// java only hears of it if it fails
+struct ForgottenWrite : LoopRequest<LoopData::WRITE_REQUEST> {
+  uv_write_t req;
+  char* bytes;
+};
+
+static void _forgotten_write_cb(uv_write_t* req, int status) {
+  assert(req->handle);
+  assert(req->handle->data);
+  ForgottenWrite* write = reinterpret_cast<ForgottenWrite*>(req);
+  if (status < 0) {
+    int code = uv_last_error(req->handle->loop).code;
+    // writes cancelled by closing the stream are not worth reporting
+    if (code != UV_ECANCELED) {
+      StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(req->handle->data);
+      cb->on_write_error(code);
+    }
+  }
+  BufferPool::release(write->bytes);
+  delete write;
+}
+
+// one buffer written to many streams, the bytes and the references that
+// keep them alive are shared by the writes and freed with the last one
+struct Broadcast {
+  JNIEnv* env;
+  jobject owner;
+  jobject context;
+  char* bytes;
+  jsize pending;
+};
+
+struct BroadcastWrite : LoopRequest<LoopData::WRITE_REQUEST> {
+  uv_write_t req;
+  size_t size;
+  Broadcast* broadcast;
+};
+
+static void _broadcast_write_cb(uv_write_t* req, int status) {
+  assert(req->handle);
+  assert(req->handle->data);
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(req->handle->data);
+  BroadcastWrite* write = reinterpret_cast<BroadcastWrite*>(req);
+  Broadcast* broadcast = write->broadcast;
+  bool last = --broadcast->pending == 0;
+  // only the last write hands the owner back to java to be released
+  cb->on_write(status, status < 0 ? uv_last_error(req->handle->loop).code : 0,
+               last ? broadcast->owner : NULL, broadcast->context, write->size);
+  delete write;
+  if (last) {
+    if (broadcast->owner) {
+      broadcast->env->DeleteGlobalRef(broadcast->owner);
+    }
+    if (broadcast->context) {
+      broadcast->env->DeleteGlobalRef(broadcast->context);
+    }
+    BufferPool::release(broadcast->bytes);
+    delete broadcast;
+  }
+}
+
 static void _connection_cb(uv_stream_t* stream, int status) {
   assert(stream);
   assert(stream->data);
@@ -352,6 +937,147 @@ static void _connection_cb(uv_stream_t* stream, int status) {
   cb->on_connection(status, status < 0 ? uv_last_error(stream->loop).code : 0);
 }
 
+// connections accepted while the listen socket is drained, handed to java
+// in one upcall from a check handle at the end of the loop iteration
+struct AcceptBatch {
+  uv_check_t check;
+  uv_stream_t* server;
+  jlong* clients;
+  jsize count;
+  jsize capacity;
+};
+
+static void _discard_close_cb(uv_handle_t* handle) {
+  assert(handle);
+  assert(handle->data);
+  delete reinterpret_cast<StreamCallbacks*>(handle->data);
+  if (handle->type == UV_TCP) {
+    delete reinterpret_cast<uv_tcp_t*>(handle);
+  } else {
+    delete reinterpret_cast<uv_pipe_t*>(handle);
+  }
+}
+
+static void _discard_clients(jlong* clients, jsize count) {
+  for (jsize i = 0; i < count; i++) {
+    uv_close(reinterpret_cast<uv_handle_t*>(clients[i]), _discard_close_cb);
+  }
+}
+
+static void _accept_check_cb(uv_check_t* check, int status) {
+  assert(check);
+  assert(check->data);
+  AcceptBatch* batch = reinterpret_cast<AcceptBatch*>(check->data);
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(batch->server->data);
+  uv_check_stop(check);
+  jsize count = batch->count;
+  batch->count = 0;
+  if (count > 0 && !cb->on_connections(batch->clients, count)) {
+    _discard_clients(batch->clients, count);
+  }
+}
+
+static void _accept_batch_close_cb(uv_handle_t* handle) {
+  assert(handle);
+  assert(handle->data);
+  AcceptBatch* batch = reinterpret_cast<AcceptBatch*>(handle->data);
+  delete[] batch->clients;
+  delete batch;
+}
+
+void StreamCallbacks::start_accept_batching(uv_stream_t* server) {
+  if (_accept_batch) {
+    return;
+  }
+  AcceptBatch* batch = new AcceptBatch();
+  batch->server = server;
+  batch->clients = NULL;
+  batch->count = 0;
+  batch->capacity = 0;
+  uv_check_init(server->loop, &batch->check);
+  batch->check.data = batch;
+  _accept_batch = batch;
+}
+
+void StreamCallbacks::add_accepted(uv_stream_t* client) {
+  AcceptBatch* batch = _accept_batch;
+  assert(batch);
+  if (batch->count == batch->capacity) {
+    jsize capacity = batch->capacity ? 2 * batch->capacity : 16;
+    jlong* clients = new jlong[capacity];
+    if (batch->count) {
+      memcpy(clients, batch->clients, batch->count * sizeof(jlong));
+    }
+    delete[] batch->clients;
+    batch->clients = clients;
+    batch->capacity = capacity;
+  }
+  batch->clients[batch->count++] = reinterpret_cast<jlong>(client);
+  if (batch->count == 1) {
+    uv_check_start(&batch->check, _accept_check_cb);
+  }
+}
+
+void StreamCallbacks::close_accept_batch() {
+  AcceptBatch* batch = _accept_batch;
+  if (!batch) {
+    return;
+  }
+  _discard_clients(batch->clients, batch->count);
+  batch->count = 0;
+  uv_close(reinterpret_cast<uv_handle_t*>(&batch->check), _accept_batch_close_cb);
+  _accept_batch = NULL;
+}
+
+static uv_stream_t* _new_client(uv_stream_t* server) {
+  if (server->type == UV_TCP) {
+    uv_tcp_t* tcp = new uv_tcp_t();
+    if (uv_tcp_init(server->loop, tcp)) {
+      delete tcp;
+      return NULL;
+    }
+    return reinterpret_cast<uv_stream_t*>(tcp);
+  }
+  assert(server->type == UV_NAMED_PIPE);
+  uv_pipe_t* pipe = new uv_pipe_t();
+  if (uv_pipe_init(server->loop, pipe, reinterpret_cast<uv_pipe_t*>(server)->ipc)) {
+    delete pipe;
+    return NULL;
+  }
+  return reinterpret_cast<uv_stream_t*>(pipe);
+}
+
+// accepts every pending connection as it is reported so that libuv keeps
+// draining the listen socket instead of waiting for java to call accept
+static void _batched_connection_cb(uv_stream_t* server, int status) {
+  assert(server);
+  assert(server->data);
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(server->data);
+  if (status < 0) {
+    cb->on_connection(status, uv_last_error(server->loop).code);
+    return;
+  }
+  uv_stream_t* client = _new_client(server);
+  if (!client) {
+    cb->on_connection(-1, uv_last_error(server->loop).code);
+    return;
+  }
+  client->data = new StreamCallbacks();
+  if (uv_accept(server, client)) {
+    int code = uv_last_error(server->loop).code;
+    uv_close(reinterpret_cast<uv_handle_t*>(client), _discard_close_cb);
+    cb->on_connection(-1, code);
+    return;
+  }
+  cb->add_accepted(client);
+}
+
+int StreamCallbacks::listen_batched(uv_stream_t* server, int backlog) {
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(server->data);
+  cb->start_accept_batching(server);
+  return uv_listen(server, backlog, _batched_connection_cb);
+}
+
 /*
  * Class:     com_oracle_libuv_handles_StreamHandle
  * Method:    _static_initialize
@@ -466,47 +1192,378 @@ JNIEXPORT jboolean JNICALL Java_com_oracle_libuv_handles_StreamHandle__1writable
   return r == 0 ? JNI_TRUE : JNI_FALSE;
 }
 
+// queues a write of the bytes of a heap array, copied into a staging
+// buffer owned by the holder, or of a direct buffer written in place
+static int _write_buffer(JNIEnv* env, uv_stream_t* handle, jobject buffer, jbyteArray data, jint offset, jint length, ContextHolder* req_data) {
+  OOME(env, req_data);
+  StreamWrite* write = new (handle->loop) StreamWrite();
+  if (!write) {
+    delete req_data;
+  }
+  OOME(env, write);
+  write->size = length;
+  uv_write_t* req = &write->req;
+  req->handle = handle;
+  req->data = req_data;
+  uv_buf_t buf;
+  if (data) {
+    // the array may move once we are back in java, libuv gets a copy
+    char* base = LoopData::of(handle->loop)->stage(length);
+    if (!base) {
+      delete req_data;
+      delete write;
+    }
+    OOME(env, base);
+    env->GetByteArrayRegion(data, offset, length, reinterpret_cast<jbyte*>(base));
+    req_data->set_bytes(base);
+    buf.base = base;
+  } else {
+    jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
+    buf.base = reinterpret_cast<char*>(base + offset);
+  }
+  buf.len = length;
+  int r = uv_write(req, handle, &buf, 1, _write_cb);
+  if (r) {
+    delete req_data;
+    delete write;
+    ThrowException(env, handle->loop, "uv_write");
+  }
+  return r;
+}
+
 /*
  * Class:     com_oracle_libuv_handles_StreamHandle
  * Method:    _write
- * Signature: (JLjava/nio/ByteBuffer;[BII)I
+ * Signature: (JLjava/nio/ByteBuffer;[BIILjava/lang/Object;)I
  */
 JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1write
   (JNIEnv *env, jobject that, jlong stream, jobject buffer, jbyteArray data, jint offset, jint length, jobject context) {
 
   assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  // a direct buffer must stay reachable until the write is done
+  ContextHolder* req_data = data ? new (handle->loop) ContextHolder(env, context) : new (handle->loop) ContextHolder(env, buffer, context);
+  return _write_buffer(env, handle, buffer, data, offset, length, req_data);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _write_request
+ * Signature: (JLjava/nio/ByteBuffer;[BIIJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1write_1request
+  (JNIEnv *env, jobject that, jlong stream, jobject buffer, jbyteArray data, jint offset, jint length, jlong request_id) {
+
+  assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  // a direct buffer must stay reachable until the write is done
+  ContextHolder* req_data = data ? new (handle->loop) ContextHolder(env, request_id) : new (handle->loop) ContextHolder(env, buffer, request_id);
+  return _write_buffer(env, handle, buffer, data, offset, length, req_data);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _writev
+ * Signature: (J[Ljava/nio/ByteBuffer;[[B[ILjava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1writev
+  (JNIEnv *env, jobject that, jlong stream, jobjectArray buffers, jobjectArray arrays, jintArray ranges, jobject context) {
+
+  assert(stream);
+  assert(buffers);
+  assert(ranges);
 
-  int r;
   uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
-  uv_write_t* req = new uv_write_t();
+  jsize count = env->GetArrayLength(buffers);
+  assert(count > 0);
+  assert(env->GetArrayLength(ranges) == 2 * count);
+  jint* range = env->GetIntArrayElements(ranges, NULL);
+  OOME(env, range);
+
+  // heap buffers may move once we are back in java, so their bytes are
+  // copied into one block owned by the request, direct buffers are used
+  // in place and kept alive through the array
+  size_t staged = 0;
+  if (arrays) {
+    for (jsize i = 0; i < count; i++) {
+      jobject array = env->GetObjectArrayElement(arrays, i);
+      if (array) {
+        staged += range[2 * i + 1];
+        env->DeleteLocalRef(array);
+      }
+    }
+  }
+  char* staging = NULL;
+  if (staged) {
+    staging = LoopData::of(handle->loop)->stage(staged);
+    if (!staging) {
+      env->ReleaseIntArrayElements(ranges, range, JNI_ABORT);
+    }
+    OOME(env, staging);
+  }
+  uv_buf_t* bufs = new uv_buf_t[count];
+  char* next = staging;
+  size_t size = 0;
+  for (jsize i = 0; i < count; i++) {
+    jint offset = range[2 * i];
+    jint length = range[2 * i + 1];
+    size += length;
+    jbyteArray array = arrays ? (jbyteArray) env->GetObjectArrayElement(arrays, i) : NULL;
+    if (array) {
+      env->GetByteArrayRegion(array, offset, length, reinterpret_cast<jbyte*>(next));
+      env->DeleteLocalRef(array);
+      bufs[i] = uv_buf_init(next, length);
+      next += length;
+    } else {
+      jobject buffer = env->GetObjectArrayElement(buffers, i);
+      char* base = reinterpret_cast<char*>(env->GetDirectBufferAddress(buffer));
+      env->DeleteLocalRef(buffer);
+      assert(base);
+      bufs[i] = uv_buf_init(base + offset, length);
+    }
+  }
+  env->ReleaseIntArrayElements(ranges, range, JNI_ABORT);
+
+  StreamWrite* write = new (handle->loop) StreamWrite();
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, buffers, context);
+  if (!write || !req_data) {
+    delete[] bufs;
+    BufferPool::release(staging);
+    delete req_data;
+    delete write;
+  }
+  OOME(env, write);
+  OOME(env, req_data);
+  uv_write_t* req = &write->req;
   req->handle = handle;
-  ContextHolder* req_data = NULL;
+  write->size = size;
+  req_data->set_bytes(staging);
+  req->data = req_data;
+  int r = uv_write(req, handle, bufs, count, _write_cb);
+  delete[] bufs;
+  if (r) {
+    delete req_data;
+    delete write;
+    ThrowException(env, handle->loop, "uv_write");
+  }
+  return r;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _write_owned
+ * Signature: (JLjava/lang/Object;Ljava/nio/ByteBuffer;IILjava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1write_1owned
+  (JNIEnv *env, jobject that, jlong stream, jobject owner, jobject buffer, jint offset, jint length, jobject context) {
+
+  assert(stream);
+  assert(owner);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  char* base = reinterpret_cast<char*>(env->GetDirectBufferAddress(buffer));
+  OOME(env, base);
+  // written in place, the owner is handed back to java with the write
+  // callback so that it can release the memory
+  StreamWrite* write = new (handle->loop) StreamWrite();
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, owner, context);
+  if (!write || !req_data) {
+    delete req_data;
+    delete write;
+  }
+  OOME(env, write);
+  OOME(env, req_data);
+  write->size = length;
+  uv_write_t* req = &write->req;
+  req->handle = handle;
+  req->data = req_data;
+  uv_buf_t buf = uv_buf_init(base + offset, length);
+  int r = uv_write(req, handle, &buf, 1, _write_cb);
+  if (r) {
+    delete req_data;
+    delete write;
+    ThrowException(env, handle->loop, "uv_write");
+  }
+  return r;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _broadcast
+ * Signature: ([JLjava/lang/Object;Ljava/nio/ByteBuffer;[BIILjava/lang/Object;[Ljava/lang/Exception;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1broadcast
+  (JNIEnv *env, jclass cls, jlongArray streams, jobject owner, jobject buffer, jbyteArray data, jint offset, jint length, jobject context, jobjectArray errors) {
+
+  assert(streams);
+  jsize count = env->GetArrayLength(streams);
+
+  if (count == 0) {
+    return 0;
+  }
+  Broadcast* broadcast = new Broadcast();
+  broadcast->env = env;
+  broadcast->bytes = NULL;
+  broadcast->pending = 0;
+  char* base;
   if (data) {
-    jbyte* base = (jbyte*) env->GetPrimitiveArrayCritical(data, NULL);
+    // heap bytes may move, they are copied once for all the streams
+    jlong first;
+    env->GetLongArrayRegion(streams, 0, 1, &first);
+    uv_loop_t* loop = reinterpret_cast<uv_stream_t*>(first)->loop;
+    broadcast->bytes = LoopData::of(loop)->stage(length);
+    if (!broadcast->bytes) {
+      delete broadcast;
+    }
+    OOME(env, broadcast->bytes);
+    env->GetByteArrayRegion(data, offset, length, reinterpret_cast<jbyte*>(broadcast->bytes));
+    base = broadcast->bytes;
+  } else {
+    base = reinterpret_cast<char*>(env->GetDirectBufferAddress(buffer));
+    if (!base) {
+      delete broadcast;
+    }
     OOME(env, base);
-    uv_buf_t buf;
-    buf.base = reinterpret_cast<char*>(base + offset);
-    buf.len = length;
-    req_data = new ContextHolder(env, context);
-    req->data = req_data;
-    r = uv_write(req, handle, &buf, 1, _write_cb);
-    env->ReleasePrimitiveArrayCritical(data, base, 0);
+    base += offset;
+  }
+  jlong* ptrs = env->GetLongArrayElements(streams, NULL);
+  if (!ptrs) {
+    BufferPool::release(broadcast->bytes);
+    delete broadcast;
+  }
+  OOME(env, ptrs);
+
+  uv_buf_t buf = uv_buf_init(base, length);
+  broadcast->owner = owner ? env->NewGlobalRef(owner) : NULL;
+  broadcast->context = context ? env->NewGlobalRef(context) : NULL;
+  // the broadcast counts itself until every write is queued, so that one
+  // no write took is freed here
+  broadcast->pending = 1;
+  jint queued = 0;
+  for (jsize i = 0; i < count; i++) {
+    uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(ptrs[i]);
+    BroadcastWrite* write = new (handle->loop) BroadcastWrite();
+    int error_code = 0;
+    if (!write) {
+      error_code = UV_ENOMEM;
+    } else {
+      write->size = length;
+      write->broadcast = broadcast;
+      write->req.handle = handle;
+      broadcast->pending++;
+      if (uv_write(&write->req, handle, &buf, 1, _broadcast_write_cb)) {
+        broadcast->pending--;
+        delete write;
+        error_code = uv_last_error(handle->loop).code;
+      } else {
+        queued++;
+      }
+    }
+    if (error_code && errors) {
+      jthrowable exception = NewException(env, error_code, "uv_write", NULL, NULL);
+      env->SetObjectArrayElement(errors, i, exception);
+      env->DeleteLocalRef(exception);
+    }
+  }
+  env->ReleaseLongArrayElements(streams, ptrs, JNI_ABORT);
+
+  if (--broadcast->pending == 0) {
+    // nothing was queued, the caller keeps ownership
+    if (broadcast->owner) {
+      env->DeleteGlobalRef(broadcast->owner);
+    }
+    if (broadcast->context) {
+      env->DeleteGlobalRef(broadcast->context);
+    }
+    BufferPool::release(broadcast->bytes);
+    delete broadcast;
+  }
+  return queued;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _write_forget
+ * Signature: (JLjava/nio/ByteBuffer;[BII)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1write_1forget
+  (JNIEnv *env, jobject that, jlong stream, jobject buffer, jbyteArray data, jint offset, jint length) {
+
+  assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  // always a copy, so that the request needs no references into java
+  char* bytes = LoopData::of(handle->loop)->stage(length);
+  OOME(env, bytes);
+  if (data) {
+    env->GetByteArrayRegion(data, offset, length, reinterpret_cast<jbyte*>(bytes));
   } else {
-    jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
-    uv_buf_t buf;
-    buf.base = reinterpret_cast<char*>(base + offset);
-    buf.len = length;
-    req->data = new ContextHolder(env, buffer, context);
-    r = uv_write(req, handle, &buf, 1, _write_cb);
+    char* base = reinterpret_cast<char*>(env->GetDirectBufferAddress(buffer));
+    if (!base) {
+      BufferPool::release(bytes);
+    }
+    OOME(env, base);
+    memcpy(bytes, base + offset, length);
   }
+  ForgottenWrite* write = new (handle->loop) ForgottenWrite();
+  if (!write) {
+    BufferPool::release(bytes);
+  }
+  OOME(env, write);
+  write->bytes = bytes;
+  write->req.handle = handle;
+  uv_buf_t buf = uv_buf_init(bytes, length);
+  int r = uv_write(&write->req, handle, &buf, 1, _forgotten_write_cb);
   if (r) {
-    delete req_data;
-    delete req;
+    BufferPool::release(bytes);
+    delete write;
     ThrowException(env, handle->loop, "uv_write");
   }
   return r;
 }
 
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _write_copy
+ * Signature: (JLjava/nio/ByteBuffer;IJLjava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1write_1copy
+  (JNIEnv *env, jobject that, jlong stream, jobject buffer, jint length, jlong send_stream, jobject context) {
+
+  assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  char* base = reinterpret_cast<char*>(env->GetDirectBufferAddress(buffer));
+  OOME(env, base);
+  // the java buffer is reused as soon as this returns
+  char* bytes = LoopData::of(handle->loop)->stage(length);
+  OOME(env, bytes);
+  memcpy(bytes, base, length);
+  StreamWrite* write = new (handle->loop) StreamWrite();
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, context);
+  if (!write || !req_data) {
+    BufferPool::release(bytes);
+    delete req_data;
+    delete write;
+  }
+  OOME(env, write);
+  OOME(env, req_data);
+  write->size = length;
+  uv_write_t* req = &write->req;
+  req->handle = handle;
+  req_data->set_bytes(bytes);
+  req->data = req_data;
+  uv_buf_t buf;
+  buf.base = bytes;
+  buf.len = length;
+  int r = send_stream ?
+      uv_write2(req, handle, &buf, 1, reinterpret_cast<uv_stream_t*>(send_stream), _write_cb) :
+      uv_write(req, handle, &buf, 1, _write_cb);
+  if (r) {
+    delete req_data;
+    delete write;
+    ThrowException(env, handle->loop, send_stream ? "uv_write2" : "uv_write");
+  }
+  return r;
+}
+
 /*
  * Class:     com_oracle_libuv_handles_StreamHandle
  * Method:    _write2
@@ -520,35 +1577,55 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1write2
 
   int r;
   uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
-  uv_write_t* req = new uv_write_t();
+  StreamWrite* write = new (handle->loop) StreamWrite();
+  OOME(env, write);
+  write->size = length - offset;
+  uv_write_t* req = &write->req;
   ContextHolder* req_data = NULL;
   req->handle = handle;
   if (data) {
-    jbyte* base = (jbyte*) env->GetPrimitiveArrayCritical(data, NULL);
+    // the array may move once we are back in java, libuv gets a copy
+    char* base = LoopData::of(handle->loop)->stage(length - offset);
+    if (!base) {
+      delete write;
+    }
     OOME(env, base);
+    env->GetByteArrayRegion(data, offset, length - offset, reinterpret_cast<jbyte*>(base));
     uv_buf_t buf;
-    buf.base = reinterpret_cast<char*>(base + offset);
+    buf.base = base;
     buf.len = length - offset;
-    req_data = new ContextHolder(env, context);
+    req_data = new (handle->loop) ContextHolder(env, context);
+    if (!req_data) {
+      BufferPool::release(base);
+      delete write;
+    }
+    OOME(env, req_data);
+    req_data->set_bytes(base);
     req->data = req_data;
     uv_stream_t* send_handle = reinterpret_cast<uv_stream_t*>(send_stream);
     r = uv_write2(req, handle, &buf, 1, send_handle, _write_cb);
-    env->ReleasePrimitiveArrayCritical(data, base, 0);
   } else {
     jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
+    if (!base) {
+      delete write;
+    }
     OOME(env, base);
     uv_buf_t buf;
     buf.base = reinterpret_cast<char*>(base + offset);
     buf.len = length - offset;
     assert(stream);
-    req_data = new ContextHolder(env, buffer, context);
+    req_data = new (handle->loop) ContextHolder(env, buffer, context);
+    if (!req_data) {
+      delete write;
+    }
+    OOME(env, req_data);
     req->data = req_data;
     uv_stream_t* send_handle = reinterpret_cast<uv_stream_t*>(send_stream);
     r = uv_write2(req, handle, &buf, 1, send_handle, _write_cb);
   }
   if (r) {
     delete req_data;
-    delete req;
+    delete write;
     ThrowException(env, handle->loop, "uv_write2");
   }
   return r;
@@ -577,14 +1654,49 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1close_1write
 
   assert(stream);
   uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
-  uv_shutdown_t* req = new uv_shutdown_t();
-  ContextHolder* req_data = new ContextHolder(env, context);
+  uv_shutdown_t* req = new_request<uv_shutdown_t>(handle->loop, LoopData::SHUTDOWN_REQUEST);
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, context);
+  if (!req || !req_data) {
+    delete req_data;
+    delete_request(req);
+  }
+  OOME(env, req);
+  OOME(env, req_data);
+  req->data = req_data;
+  req->handle = handle;
+  int r = uv_shutdown(req, handle, _shutdown_cb);
+  if (r) {
+    delete req_data;
+    delete_request(req);
+    ThrowException(env, handle->loop, "uv_close_write");
+  }
+  return r;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _close_write_request
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1close_1write_1request
+  (JNIEnv *env, jobject that, jlong stream, jlong request_id) {
+
+  assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  uv_shutdown_t* req = new_request<uv_shutdown_t>(handle->loop, LoopData::SHUTDOWN_REQUEST);
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, request_id);
+  if (!req || !req_data) {
+    delete req_data;
+    delete_request(req);
+  }
+  OOME(env, req);
+  OOME(env, req_data);
   req->data = req_data;
   req->handle = handle;
   int r = uv_shutdown(req, handle, _shutdown_cb);
   if (r) {
     delete req_data;
-    delete req;
+    delete_request(req);
     ThrowException(env, handle->loop, "uv_close_write");
   }
   return r;
@@ -600,6 +1712,9 @@ JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_StreamHandle__1close
 
   assert(stream);
   uv_handle_t* handle = reinterpret_cast<uv_handle_t*>(stream);
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(handle->data);
+  cb->close_accept_batch();
+  cb->close_write_batch();
   uv_close(handle, _close_cb);
 }
 
@@ -638,3 +1753,98 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_StreamHandle__1accept
   }
   return r;
 }
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _set_read_buffer_pooling
+ * Signature: (JZ)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_StreamHandle__1set_1read_1buffer_1pooling
+  (JNIEnv *env, jobject that, jlong stream, jboolean pooled) {
+
+  assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  assert(handle->data);
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(handle->data);
+  cb->set_pooled_reads(pooled == JNI_TRUE);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _release_read_buffer
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_StreamHandle__1release_1read_1buffer
+  (JNIEnv *env, jclass cls, jlong memory) {
+
+  assert(memory);
+  BufferPool::release(reinterpret_cast<char*>(memory));
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _set_read_size
+ * Signature: (JIII)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_StreamHandle__1set_1read_1size
+  (JNIEnv *env, jobject that, jlong stream, jint minimum, jint initial, jint maximum) {
+
+  assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  assert(handle->data);
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(handle->data);
+  cb->set_read_size(minimum, initial, maximum);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _set_framing
+ * Signature: (JIIIZ[B)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_StreamHandle__1set_1framing
+  (JNIEnv *env, jobject that, jlong stream, jint mode, jint length, jint header_size, jboolean big_endian, jbyteArray delimiter) {
+
+  assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  assert(handle->data);
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(handle->data);
+  char bytes[Framer::MAX_DELIMITER_SIZE];
+  jsize size = 0;
+  if (delimiter) {
+    size = env->GetArrayLength(delimiter);
+    assert(size > 0 && static_cast<size_t>(size) <= Framer::MAX_DELIMITER_SIZE);
+    env->GetByteArrayRegion(delimiter, 0, size, reinterpret_cast<jbyte*>(bytes));
+  }
+  cb->set_framing(mode, length, header_size, big_endian == JNI_TRUE, bytes, size);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _set_read_buffers
+ * Signature: (J[Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_StreamHandle__1set_1read_1buffers
+  (JNIEnv *env, jobject that, jlong stream, jobjectArray buffers) {
+
+  assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  assert(handle->data);
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(handle->data);
+  if (!cb->set_read_buffers(buffers)) {
+    ThrowException(env, UV_EINVAL, "set_read_buffers", "read buffers must be direct");
+  }
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_StreamHandle
+ * Method:    _set_write_batching
+ * Signature: (JZ)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_StreamHandle__1set_1write_1batching
+  (JNIEnv *env, jobject that, jlong stream, jboolean batching) {
+
+  assert(stream);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(stream);
+  StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(handle->data);
+  cb->set_write_batching(handle, batching == JNI_TRUE);
+}
@@ -30,6 +30,19 @@
 
 #include "uv.h"
 
+class Framer;
+struct AcceptBatch;
+struct ReadRing;
+struct WriteBatch;
+
+// completions of requests made with a request id, must be equal to the
+// request types in StreamHandle
+typedef enum {
+  STREAM_WRITE_REQUEST = 1,
+  STREAM_SHUTDOWN_REQUEST,
+  STREAM_CONNECT_REQUEST
+} StreamRequestType;
+
 class StreamCallbacks {
 private:
   static jstring _IPV4;
@@ -37,22 +50,55 @@ private:
 
   static jclass _address_cid;
   static jclass _stream_handle_cid;
+  static jclass _native_buffer_cid;
+  static jclass _object_cid;
 
   static jmethodID _address_init_mid;
   static jmethodID _call_read_callback_mid;
+  static jmethodID _call_pooled_read_callback_mid;
+  static jmethodID _call_read_into_callback_mid;
   static jmethodID _call_read2_callback_mid;
   static jmethodID _call_write_callback_mid;
+  static jmethodID _call_write_error_callback_mid;
+  static jmethodID _call_writes_callback_mid;
   static jmethodID _call_connect_callback_mid;
   static jmethodID _call_connection_callback_mid;
+  static jmethodID _call_connections_callback_mid;
   static jmethodID _call_close_callback_mid;
   static jmethodID _call_shutdown_callback_mid;
+  static jmethodID _call_request_callback_mid;
+  static jmethodID _native_buffer_release_mid;
 
   JNIEnv* _env;
   jobject _instance;
+  bool _pooled_reads;
+
+  // adaptive read size as a loop read pool index, -1 to use the size
+  // suggested by libuv
+  signed char _read_size;
+  signed char _read_size_min;
+  signed char _read_size_max;
+  bool _read_size_shrink;
+
+  // caller supplied read buffers, only allocated when used so that idle
+  // connections stay small
+  ReadRing* _read_ring;
+
+  // splits reads into frames when set
+  Framer* _framer;
+
+  // clients accepted natively but not yet handed to java
+  AcceptBatch* _accept_batch;
+
+  // write completions not yet reported to java
+  WriteBatch* _write_batch;
 
 public:
   static void static_initialize(JNIEnv *env, jclass cls);
   static void static_initialize_address(JNIEnv* env);
+  // batched accept upcalls into TCPHandle only
+  static void static_initialize_connections(JNIEnv* env, jclass tcp_cls);
+  static int listen_batched(uv_stream_t* server, int backlog);
   static jobject _address_to_js(JNIEnv* env, const sockaddr* addr);
 
   StreamCallbacks();
@@ -61,12 +107,38 @@ public:
   void initialize(JNIEnv *env, jobject instance);
   void throw_exception(int code, const char* message);
 
-  void on_read(uv_buf_t* buf, jsize nread);
-  void on_read2(uv_buf_t* buf, jsize nread, jlong ptr, uv_handle_type pending);
-  void on_write(int status, int error_code, jobject buffer, jobject domain);
+  inline void set_pooled_reads(bool pooled) { _pooled_reads = pooled; }
+  bool set_read_buffers(jobjectArray buffers);
+  void set_read_size(size_t minimum, size_t initial, size_t maximum);
+  void record_read(ssize_t nread);
+  void set_framing(int mode, size_t length, size_t header_size, bool big_endian,
+                   const char* delimiter, size_t delimiter_size);
+  inline bool framing() const { return _framer && !_read_ring; }
+
+  void start_accept_batching(uv_stream_t* server);
+  void add_accepted(uv_stream_t* client);
+  void close_accept_batch();
+
+  void set_write_batching(uv_stream_t* stream, bool batching);
+  void flush_writes();
+  void close_write_batch();
+
+  uv_buf_t on_alloc(uv_loop_t* loop, size_t suggested_size);
+  void release(uv_buf_t* buf);
+
+  void on_read(uv_loop_t* loop, uv_buf_t* buf, jsize nread);
+  void on_frames(uv_stream_t* stream, uv_buf_t* buf, jsize nread);
+  void deliver(uv_loop_t* loop, const char* data, jsize size);
+  void deliver_owned(char* base, jsize size);
+  void deliver_pooled(char* base, jsize size);
+  void on_read2(uv_loop_t* loop, uv_buf_t* buf, jsize nread, jlong ptr, uv_handle_type pending);
+  void on_write(int status, int error_code, jobject buffer, jobject domain, size_t size);
+  void on_write_error(int error_code);
   void on_shutdown(int status, int error_code, jobject domain);
   void on_connect(int status, int error_code, jobject domain);
   void on_connection(int status, int error_code);
+  void on_request(int type, jlong request_id, int status, int error_code, size_t size);
+  bool on_connections(jlong* clients, jsize count);
   void on_close();
 };
 
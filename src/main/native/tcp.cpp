@@ -38,11 +38,27 @@ static void _tcp_connect_cb(uv_connect_t* req, int status) {
   assert(req->handle->data);
   StreamCallbacks* cb = reinterpret_cast<StreamCallbacks*>(req->handle->data);
   ContextHolder* req_data = reinterpret_cast<ContextHolder*>(req->data);
-  cb->on_connect(status, status < 0 ? uv_last_error(req->handle->loop).code : 0, req_data->context());
-  delete req;
+  int error_code = status < 0 ? uv_last_error(req->handle->loop).code : 0;
+  if (req_data->by_id()) {
+    cb->on_request(STREAM_CONNECT_REQUEST, req_data->request_id(), status, error_code, 0);
+  } else {
+    cb->on_connect(status, error_code, req_data->context());
+  }
+  delete_request(req);
   delete req_data;
 }
 
+/*
+ * Class:     com_oracle_libuv_handles_TCPHandle
+ * Method:    _static_initialize
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_TCPHandle__1static_1initialize
+  (JNIEnv *env, jclass cls) {
+
+  StreamCallbacks::static_initialize_connections(env, cls);
+}
+
 /*
  * Class:     com_oracle_libuv_handles_TCPHandle
  * Method:    _new
@@ -142,14 +158,21 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_TCPHandle__1connect
   uv_tcp_t* handle = reinterpret_cast<uv_tcp_t*>(tcp);
   const char* h = env->GetStringUTFChars(host, 0);
   sockaddr_in addr = uv_ip4_addr(h, port);
-  uv_connect_t* req = new uv_connect_t();
+  uv_connect_t* req = new_request<uv_connect_t>(handle->loop, LoopData::CONNECT_REQUEST);
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, context);
+  if (!req || !req_data) {
+    delete req_data;
+    delete_request(req);
+    env->ReleaseStringUTFChars(host, h);
+  }
+  OOME(env, req);
+  OOME(env, req_data);
   req->handle = reinterpret_cast<uv_stream_t*>(handle);
-  ContextHolder* req_data = new ContextHolder(env, context);
   req->data = req_data;
   int r = uv_tcp_connect(req, handle, addr, _tcp_connect_cb);
   if (r) {
     delete req_data;
-    delete req;
+    delete_request(req);
     ThrowException(env, handle->loop, "uv_tcp_connect", h);
   }
   env->ReleaseStringUTFChars(host, h);
@@ -168,20 +191,61 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_TCPHandle__1connect6
   uv_tcp_t* handle = reinterpret_cast<uv_tcp_t*>(tcp);
   const char* h = env->GetStringUTFChars(host, 0);
   sockaddr_in6 addr = uv_ip6_addr(h, port);
-  uv_connect_t* req = new uv_connect_t();
+  uv_connect_t* req = new_request<uv_connect_t>(handle->loop, LoopData::CONNECT_REQUEST);
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, context);
+  if (!req || !req_data) {
+    delete req_data;
+    delete_request(req);
+    env->ReleaseStringUTFChars(host, h);
+  }
+  OOME(env, req);
+  OOME(env, req_data);
   req->handle = reinterpret_cast<uv_stream_t*>(handle);
-  ContextHolder* req_data = new ContextHolder(env, context);
   req->data = req_data;
   int r = uv_tcp_connect6(req, handle, addr, _tcp_connect_cb);
   if (r) {
     delete req_data;
-    delete req;
+    delete_request(req);
     ThrowException(env, handle->loop, "uv_tcp_connect6", h);
   }
   env->ReleaseStringUTFChars(host, h);
   return r;
 }
 
+/*
+ * Class:     com_oracle_libuv_handles_TCPHandle
+ * Method:    _connect_request
+ * Signature: (JLjava/lang/String;IZJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_TCPHandle__1connect_1request
+  (JNIEnv *env, jobject that, jlong tcp, jstring host, jint port, jboolean ipv6, jlong request_id) {
+
+  assert(tcp);
+  uv_tcp_t* handle = reinterpret_cast<uv_tcp_t*>(tcp);
+  const char* h = env->GetStringUTFChars(host, 0);
+  uv_connect_t* req = new_request<uv_connect_t>(handle->loop, LoopData::CONNECT_REQUEST);
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, request_id);
+  if (!req || !req_data) {
+    delete req_data;
+    delete_request(req);
+    env->ReleaseStringUTFChars(host, h);
+  }
+  OOME(env, req);
+  OOME(env, req_data);
+  req->handle = reinterpret_cast<uv_stream_t*>(handle);
+  req->data = req_data;
+  int r = ipv6 ?
+      uv_tcp_connect6(req, handle, uv_ip6_addr(h, port), _tcp_connect_cb) :
+      uv_tcp_connect(req, handle, uv_ip4_addr(h, port), _tcp_connect_cb);
+  if (r) {
+    delete req_data;
+    delete_request(req);
+    ThrowException(env, handle->loop, ipv6 ? "uv_tcp_connect6" : "uv_tcp_connect", h);
+  }
+  env->ReleaseStringUTFChars(host, h);
+  return r;
+}
+
 /*
  * Class:     com_oracle_libuv_handles_TCPHandle
  * Method:    _open
@@ -301,3 +365,70 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_TCPHandle__1simultaneous_1a
   }
   return r;
 }
+
+// connects to a sockaddr encoded by ResolvedAddress
+static jint _connect_to(JNIEnv* env, uv_tcp_t* handle, jlong address, ContextHolder* req_data) {
+  assert(address);
+  const sockaddr* addr = reinterpret_cast<const sockaddr*>(address);
+  bool ipv6 = addr->sa_family == AF_INET6;
+  OOME(env, req_data);
+  uv_connect_t* req = new_request<uv_connect_t>(handle->loop, LoopData::CONNECT_REQUEST);
+  if (!req) {
+    delete req_data;
+  }
+  OOME(env, req);
+  req->handle = reinterpret_cast<uv_stream_t*>(handle);
+  req->data = req_data;
+  int r = ipv6 ?
+      uv_tcp_connect6(req, handle, *reinterpret_cast<const sockaddr_in6*>(addr), _tcp_connect_cb) :
+      uv_tcp_connect(req, handle, *reinterpret_cast<const sockaddr_in*>(addr), _tcp_connect_cb);
+  if (r) {
+    delete req_data;
+    delete_request(req);
+    ThrowException(env, handle->loop, ipv6 ? "uv_tcp_connect6" : "uv_tcp_connect");
+  }
+  return r;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_TCPHandle
+ * Method:    _connect_to
+ * Signature: (JJLjava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_TCPHandle__1connect_1to
+  (JNIEnv *env, jobject that, jlong tcp, jlong address, jobject context) {
+
+  assert(tcp);
+  uv_tcp_t* handle = reinterpret_cast<uv_tcp_t*>(tcp);
+  return _connect_to(env, handle, address, new (handle->loop) ContextHolder(env, context));
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_TCPHandle
+ * Method:    _connect_to_request
+ * Signature: (JJJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_TCPHandle__1connect_1to_1request
+  (JNIEnv *env, jobject that, jlong tcp, jlong address, jlong request_id) {
+
+  assert(tcp);
+  uv_tcp_t* handle = reinterpret_cast<uv_tcp_t*>(tcp);
+  return _connect_to(env, handle, address, new (handle->loop) ContextHolder(env, request_id));
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_TCPHandle
+ * Method:    _listen_batched
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_TCPHandle__1listen_1batched
+  (JNIEnv *env, jobject that, jlong tcp, jint backlog) {
+
+  assert(tcp);
+  uv_stream_t* handle = reinterpret_cast<uv_stream_t*>(tcp);
+  int r = StreamCallbacks::listen_batched(handle, backlog);
+  if (r) {
+    ThrowException(env, handle->loop, "uv_listen");
+  }
+  return r;
+}
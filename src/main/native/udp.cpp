@@ -26,34 +26,87 @@
 #include <string.h>
 #include <assert.h>
 #include <stdlib.h>
+#include <errno.h>
+
+#if defined(__linux__)
+#include <sys/socket.h>
+#endif
 
 #include "uv.h"
 #include "exception.h"
 #include "context.h"
+#include "buffer_pool.h"
+#include "loop.h"
 #include "stream.h"
 #include "udp.h"
 #include "com_oracle_libuv_handles_UDPHandle.h"
+#include "com_oracle_libuv_handles_UDPRecvBatch.h"
 
-uv_buf_t _alloc_cb(uv_handle_t* handle, size_t suggested_size) {
-  // override - 64k buffers are too large for udp
-  if (suggested_size >= 64 * 1024) suggested_size = 2 * 1024;
-  return uv_buf_init(new char[suggested_size], static_cast<unsigned int>(suggested_size));
+// the memory of a datagram handed to java, the receive buffer itself
+// unless the datagram fills only a small part of it, NULL if no memory
+// was left for the copy
+static char* _owned_datagram(uv_loop_t* loop, uv_buf_t* buf, ssize_t nread) {
+  if (static_cast<size_t>(nread) > buf->len / 2) {
+    return buf->base;
+  }
+  BufferPool* pool = LoopData::of(loop)->read_pool(LoopData::read_size_index(nread));
+  char* copy = pool->acquire(nread);
+  if (copy) {
+    memcpy(copy, buf->base, nread);
+  }
+  BufferPool::release(buf->base);
+  return copy;
+}
+
+// the address bytes in network order, an IPv4 address in the low 32 bits
+// of low, an IPv6 address split across high and low
+static void _address_to_peer(const struct sockaddr* addr, jint* family, jint* port, jlong* high, jlong* low) {
+  const unsigned char* bytes;
+  switch (addr->sa_family) {
+  case AF_INET6:
+    bytes = reinterpret_cast<const sockaddr_in6*>(addr)->sin6_addr.s6_addr;
+    for (int i = 0; i < 8; i++) {
+      *high = (*high << 8) | bytes[i];
+      *low = (*low << 8) | bytes[8 + i];
+    }
+    *port = ntohs(reinterpret_cast<const sockaddr_in6*>(addr)->sin6_port);
+    *family = 6;
+    break;
+
+  case AF_INET:
+    *low = ntohl(reinterpret_cast<const sockaddr_in*>(addr)->sin_addr.s_addr);
+    *port = ntohs(reinterpret_cast<const sockaddr_in*>(addr)->sin_port);
+    *family = 4;
+    break;
+  }
 }
 
 jclass UDPCallbacks::_udp_handle_cid = NULL;
 
 jmethodID UDPCallbacks::_recv_callback_mid = NULL;
+jmethodID UDPCallbacks::_recv_peer_callback_mid = NULL;
+jmethodID UDPCallbacks::_recv_batch_callback_mid = NULL;
 jmethodID UDPCallbacks::_send_callback_mid = NULL;
+jmethodID UDPCallbacks::_send_request_callback_mid = NULL;
+jmethodID UDPCallbacks::_send_batch_callback_mid = NULL;
 jmethodID UDPCallbacks::_close_callback_mid = NULL;
 
 void UDPCallbacks::static_initialize(JNIEnv* env, jclass cls) {
   _udp_handle_cid = (jclass) env->NewGlobalRef(cls);
   assert(_udp_handle_cid);
 
-  _recv_callback_mid = env->GetMethodID(_udp_handle_cid, "callRecv", "(ILjava/nio/ByteBuffer;Lcom/oracle/libuv/Address;)V");
+  _recv_callback_mid = env->GetMethodID(_udp_handle_cid, "callRecv", "(ILjava/nio/ByteBuffer;JLcom/oracle/libuv/Address;)V");
   assert(_recv_callback_mid);
+  _recv_peer_callback_mid = env->GetMethodID(_udp_handle_cid, "callRecvPeer", "(ILjava/nio/ByteBuffer;JIIJJ)V");
+  assert(_recv_peer_callback_mid);
+  _recv_batch_callback_mid = env->GetMethodID(_udp_handle_cid, "callRecvBatch", "(ILjava/lang/Exception;)V");
+  assert(_recv_batch_callback_mid);
   _send_callback_mid = env->GetMethodID(_udp_handle_cid, "callSend", "(ILjava/lang/Exception;Ljava/lang/Object;)V");
   assert(_send_callback_mid);
+  _send_request_callback_mid = env->GetMethodID(_udp_handle_cid, "callSendRequest", "(JILjava/lang/Exception;)V");
+  assert(_send_request_callback_mid);
+  _send_batch_callback_mid = env->GetMethodID(_udp_handle_cid, "callSendBatch", "(ILjava/lang/Exception;Ljava/lang/Object;)V");
+  assert(_send_batch_callback_mid);
   _close_callback_mid = env->GetMethodID(_udp_handle_cid, "callClose", "()V");
   assert(_close_callback_mid);
 
@@ -70,20 +123,70 @@ void UDPCallbacks::initialize(JNIEnv *env, jobject instance) {
 
 UDPCallbacks::UDPCallbacks() {
   _env = NULL;
+  _recv_size = DEFAULT_RECV_SIZE;
+  _truncated = 0;
+  _recv_batch = NULL;
+  _peer_recv = false;
+  _send_batch_check = NULL;
+  _finished_batches = NULL;
 }
 
 UDPCallbacks::~UDPCallbacks() {
   _env->DeleteGlobalRef(_instance);
 }
 
-void UDPCallbacks::on_recv(ssize_t nread, uv_buf_t buf, struct sockaddr* addr, unsigned flags) {
-  if (nread == 0) return;
+uv_buf_t UDPCallbacks::on_alloc(uv_loop_t* loop) {
+  LoopData* data = LoopData::of(loop);
+  // short of memory the datagram may come in a smaller buffer, truncated
+  // and counted as such
+  return data->read_buffer(data->read_pool(LoopData::read_size_index(_recv_size)), _recv_size);
+}
+
+void UDPCallbacks::on_recv(uv_loop_t* loop, ssize_t nread, uv_buf_t buf, struct sockaddr* addr, unsigned flags) {
+  if (nread == 0) {
+    BufferPool::release(buf.base);
+    return;
+  }
+  if (flags & UV_UDP_PARTIAL) {
+    // what fit is still delivered
+    _truncated++;
+  }
   jobject buffer_arg = NULL;
+  char* base = NULL;
   if (nread > 0) {
-    jbyte* data = new jbyte[nread];
-    memcpy(data, buf.base, nread);
-    buffer_arg = _env->NewDirectByteBuffer(data, nread);
+    // the datagram moves to memory owned by java
+    base = _owned_datagram(loop, &buf, nread);
+    OOM(_env, base);
+    buffer_arg = _env->NewDirectByteBuffer(base, nread);
+    if (!buffer_arg) {
+      BufferPool::release(base);
+    }
     OOM(_env, buffer_arg);
+  } else {
+    BufferPool::release(buf.base);
+  }
+  if (_peer_recv) {
+    jint family = 0;
+    jint port = 0;
+    jlong high = 0;
+    jlong low = 0;
+    if (addr) {
+      _address_to_peer(addr, &family, &port, &high, &low);
+    }
+    _env->CallVoidMethod(
+        _instance,
+        _recv_peer_callback_mid,
+        nread,
+        buffer_arg,
+        reinterpret_cast<jlong>(base),
+        family,
+        port,
+        high,
+        low);
+    if (buffer_arg) {
+      _env->DeleteLocalRef(buffer_arg);
+    }
+    return;
   }
   jobject rinfo_arg = addr ? StreamCallbacks::_address_to_js(_env, addr) : NULL;
   _env->CallVoidMethod(
@@ -91,11 +194,204 @@ void UDPCallbacks::on_recv(ssize_t nread, uv_buf_t buf, struct sockaddr* addr, u
       _recv_callback_mid,
       nread,
       buffer_arg,
+      reinterpret_cast<jlong>(base),
       rinfo_arg);
   if (buffer_arg) {
     _env->DeleteLocalRef(buffer_arg);
   }
-  delete[] buf.base;
+  if (rinfo_arg) {
+    _env->DeleteLocalRef(rinfo_arg);
+  }
+}
+
+// datagrams received in batch mode land in the slots of one arena shared
+// with java, behind a record per slot saying what is in it. A batch is
+// handed to java when the socket has nothing more to read, when the slots
+// run out and, failing both, at the end of the loop iteration.
+struct RecvBatch {
+  UDPCallbacks* callbacks;
+  uv_check_t* check;
+  char* memory;
+  jint* records;
+  char* data;
+  jint slots;
+  jint slot_size;
+  jint count;
+#if defined(__linux__)
+  // what recvmmsg reads into, one entry per slot
+  struct mmsghdr* msgs;
+  struct iovec* iovs;
+  struct sockaddr_storage* addrs;
+#endif
+};
+
+static void _recv_batch_check_cb(uv_check_t* check, int status) {
+  assert(check);
+  assert(check->data);
+  reinterpret_cast<RecvBatch*>(check->data)->callbacks->flush_recv_batch();
+}
+
+static void _recv_batch_close_cb(uv_handle_t* handle) {
+  RecvBatch* batch = reinterpret_cast<RecvBatch*>(handle->data);
+  free(batch->memory);
+#if defined(__linux__)
+  delete[] batch->msgs;
+  delete[] batch->iovs;
+  delete[] batch->addrs;
+#endif
+  delete batch;
+  delete reinterpret_cast<uv_check_t*>(handle);
+}
+
+static void _recv_batch_record(RecvBatch* batch, ssize_t nread, const struct sockaddr* addr, unsigned flags) {
+  assert(batch->count < batch->slots);
+  jint* record = batch->records + batch->count * RECV_RECORD_INTS;
+  memset(record, 0, RECV_RECORD_INTS * sizeof(jint));
+  record[RECV_RECORD_LENGTH] = static_cast<jint>(nread);
+  record[RECV_RECORD_FLAGS] = flags;
+  if (flags & UV_UDP_PARTIAL) {
+    batch->callbacks->count_truncated();
+  }
+  if (addr && addr->sa_family == AF_INET) {
+    const sockaddr_in* a4 = reinterpret_cast<const sockaddr_in*>(addr);
+    record[RECV_RECORD_FAMILY] = 4;
+    record[RECV_RECORD_PORT] = ntohs(a4->sin_port);
+    memcpy(record + RECV_RECORD_ADDRESS, &a4->sin_addr, sizeof a4->sin_addr);
+  } else if (addr && addr->sa_family == AF_INET6) {
+    const sockaddr_in6* a6 = reinterpret_cast<const sockaddr_in6*>(addr);
+    record[RECV_RECORD_FAMILY] = 6;
+    record[RECV_RECORD_PORT] = ntohs(a6->sin6_port);
+    memcpy(record + RECV_RECORD_ADDRESS, &a6->sin6_addr, sizeof a6->sin6_addr);
+  }
+  batch->count++;
+}
+
+#if defined(__linux__)
+// libuv reads one datagram per recvmsg, whatever else is queued on the
+// socket is taken into the free slots with a single recvmmsg. libuv's
+// next recvmsg then finds the socket empty.
+static void _recv_batch_drain(RecvBatch* batch, uv_udp_t* handle) {
+  unsigned int free_slots = static_cast<unsigned int>(batch->slots - batch->count);
+  if (free_slots == 0) {
+    return;
+  }
+  for (unsigned int i = 0; i < free_slots; i++) {
+    batch->iovs[i].iov_base = batch->data + (batch->count + i) * batch->slot_size;
+    batch->iovs[i].iov_len = batch->slot_size;
+    memset(&batch->msgs[i], 0, sizeof batch->msgs[i]);
+    batch->msgs[i].msg_hdr.msg_iov = &batch->iovs[i];
+    batch->msgs[i].msg_hdr.msg_iovlen = 1;
+    batch->msgs[i].msg_hdr.msg_name = &batch->addrs[i];
+    batch->msgs[i].msg_hdr.msg_namelen = sizeof batch->addrs[i];
+  }
+  // errors are left for libuv to run into and report
+  int n = recvmmsg(handle->io_watcher.fd, batch->msgs, free_slots, MSG_DONTWAIT, NULL);
+  for (int i = 0; i < n; i++) {
+    unsigned flags = batch->msgs[i].msg_hdr.msg_flags & MSG_TRUNC ? UV_UDP_PARTIAL : 0;
+    _recv_batch_record(batch, batch->msgs[i].msg_len, reinterpret_cast<sockaddr*>(&batch->addrs[i]), flags);
+  }
+}
+#endif
+
+jobject UDPCallbacks::enable_recv_batch(uv_udp_t* handle, jint slots, jint slot_size) {
+  assert(!_recv_batch);
+  assert(slots > 0);
+  assert(slot_size > 0);
+  size_t records_size = slots * RECV_RECORD_INTS * sizeof(jint);
+  size_t size = records_size + static_cast<size_t>(slots) * slot_size;
+  char* memory = reinterpret_cast<char*>(calloc(size, 1));
+  OOMN(_env, memory);
+  jobject arena = _env->NewDirectByteBuffer(memory, size);
+  if (!arena) {
+    free(memory);
+  }
+  OOMN(_env, arena);
+
+  RecvBatch* batch = new RecvBatch();
+  batch->callbacks = this;
+  batch->memory = memory;
+  batch->records = reinterpret_cast<jint*>(memory);
+  batch->data = memory + records_size;
+  batch->slots = slots;
+  batch->slot_size = slot_size;
+  batch->count = 0;
+#if defined(__linux__)
+  batch->msgs = new struct mmsghdr[slots];
+  batch->iovs = new struct iovec[slots];
+  batch->addrs = new struct sockaddr_storage[slots];
+#endif
+  batch->check = new uv_check_t();
+  uv_check_init(handle->loop, batch->check);
+  batch->check->data = batch;
+  // must not keep the loop alive on its own
+  uv_unref(reinterpret_cast<uv_handle_t*>(batch->check));
+  _recv_batch = batch;
+  return arena;
+}
+
+uv_buf_t UDPCallbacks::on_batch_alloc() {
+  RecvBatch* batch = _recv_batch;
+  assert(batch);
+  // a full batch is always flushed before libuv asks for another slot
+  assert(batch->count < batch->slots);
+  return uv_buf_init(batch->data + batch->count * batch->slot_size, batch->slot_size);
+}
+
+void UDPCallbacks::on_batch_recv(uv_udp_t* handle, ssize_t nread, uv_buf_t buf, struct sockaddr* addr, unsigned flags) {
+  RecvBatch* batch = _recv_batch;
+  assert(batch);
+  if (nread == 0 && addr == NULL) {
+    // nothing more to read for now, an empty datagram comes with an address
+    flush_recv_batch();
+    return;
+  }
+  if (nread < 0) {
+    // what came before the error goes first
+    flush_recv_batch();
+    jthrowable exception = NewException(_env, uv_last_error(handle->loop).code);
+    _env->CallVoidMethod(
+        _instance,
+        _recv_batch_callback_mid,
+        0,
+        exception);
+    if (exception) { _env->DeleteLocalRef(exception); }
+    return;
+  }
+  assert(buf.base == batch->data + batch->count * batch->slot_size);
+  _recv_batch_record(batch, nread, addr, flags);
+#if defined(__linux__)
+  _recv_batch_drain(batch, handle);
+#endif
+  if (batch->count == batch->slots) {
+    flush_recv_batch();
+  } else if (batch->count > 0) {
+    uv_check_start(batch->check, _recv_batch_check_cb);
+  }
+}
+
+void UDPCallbacks::flush_recv_batch() {
+  RecvBatch* batch = _recv_batch;
+  if (!batch || batch->count == 0) {
+    return;
+  }
+  uv_check_stop(batch->check);
+  jint count = batch->count;
+  // the slots are reused once the upcall returns
+  batch->count = 0;
+  _env->CallVoidMethod(
+      _instance,
+      _recv_batch_callback_mid,
+      count,
+      NULL);
+}
+
+// datagrams not yet handed to java are dropped with the handle, the arena
+// goes when the check handle is closed
+void UDPCallbacks::close_recv_batch() {
+  if (_recv_batch) {
+    uv_close(reinterpret_cast<uv_handle_t*>(_recv_batch->check), _recv_batch_close_cb);
+    _recv_batch = NULL;
+  }
 }
 
 void UDPCallbacks::on_send(int status, int error_code, jobject buffer, jobject context) {
@@ -110,6 +406,107 @@ void UDPCallbacks::on_send(int status, int error_code, jobject buffer, jobject c
       context);
 }
 
+void UDPCallbacks::on_send_request(jlong request_id, int status, int error_code) {
+  assert(_env);
+
+  jthrowable exception = error_code ? NewException(_env, error_code) : NULL;
+  _env->CallVoidMethod(
+      _instance,
+      _send_request_callback_mid,
+      request_id,
+      status,
+      exception);
+  if (exception) { _env->DeleteLocalRef(exception); }
+}
+
+// datagrams sent together share one completion, reported once the last of
+// them is sent; the references keep the buffers alive until then
+struct SendBatch {
+  JNIEnv* env;
+  jobject buffers;
+  jobject context;
+  jint pending;
+  jint sent;
+  int error_code;
+  SendBatch* next;
+};
+
+// a datagram of a batch that libuv sends
+struct BatchSend : LoopRequest<LoopData::UDP_SEND_REQUEST> {
+  uv_udp_send_t req;
+  SendBatch* batch;
+};
+
+static void _free_send_batch(SendBatch* batch) {
+  batch->env->DeleteGlobalRef(batch->buffers);
+  if (batch->context) {
+    batch->env->DeleteGlobalRef(batch->context);
+  }
+  delete batch;
+}
+
+void UDPCallbacks::on_send_batch(SendBatch* batch) {
+  assert(_env);
+  jthrowable exception = batch->error_code ? NewException(_env, batch->error_code) : NULL;
+  _env->CallVoidMethod(
+      _instance,
+      _send_batch_callback_mid,
+      batch->sent,
+      exception,
+      batch->context);
+  if (exception) { _env->DeleteLocalRef(exception); }
+  _free_send_batch(batch);
+}
+
+static void _send_batch_check_cb(uv_check_t* check, int status) {
+  assert(check);
+  assert(check->data);
+  reinterpret_cast<UDPCallbacks*>(check->data)->flush_send_batches();
+}
+
+static void _send_batch_close_cb(uv_handle_t* handle) {
+  delete reinterpret_cast<uv_check_t*>(handle);
+}
+
+// a batch that finished before the call sending it returned is reported
+// from the check, java never gets the callback in the middle of sendBatch
+void UDPCallbacks::finish_send_batch(uv_udp_t* handle, SendBatch* batch, bool deferred) {
+  if (!deferred) {
+    on_send_batch(batch);
+    return;
+  }
+  if (!_send_batch_check) {
+    _send_batch_check = new uv_check_t();
+    uv_check_init(handle->loop, _send_batch_check);
+    _send_batch_check->data = this;
+  }
+  batch->next = _finished_batches;
+  _finished_batches = batch;
+  uv_check_start(_send_batch_check, _send_batch_check_cb);
+}
+
+void UDPCallbacks::flush_send_batches() {
+  uv_check_stop(_send_batch_check);
+  while (_finished_batches) {
+    SendBatch* batch = _finished_batches;
+    _finished_batches = batch->next;
+    on_send_batch(batch);
+  }
+}
+
+// batches not yet reported are dropped with the handle
+void UDPCallbacks::close_send_batches() {
+  while (_finished_batches) {
+    SendBatch* batch = _finished_batches;
+    _finished_batches = batch->next;
+    _free_send_batch(batch);
+  }
+  if (_send_batch_check) {
+    uv_close(reinterpret_cast<uv_handle_t*>(_send_batch_check), _send_batch_close_cb);
+    _send_batch_check = NULL;
+  }
+}
+
 void UDPCallbacks::on_close() {
   _env->CallVoidMethod(
       _instance,
@@ -125,12 +522,48 @@ static void _close_cb(uv_handle_t* handle) {
   delete handle;
 }
 
+static uv_buf_t _alloc_cb(uv_handle_t* handle, size_t suggested_size) {
+  assert(handle->data);
+  // libuv suggests 64k, the handle knows better how large its datagrams get
+  return reinterpret_cast<UDPCallbacks*>(handle->data)->on_alloc(handle->loop);
+}
+
 static void _recv_cb(uv_udp_t* udp, ssize_t nread, uv_buf_t buf, struct sockaddr* addr, unsigned flags) {
   assert(udp);
   uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
   assert(handle->data);
   UDPCallbacks* cb = reinterpret_cast<UDPCallbacks*>(handle->data);
-  cb->on_recv(nread, buf, addr, flags);
+  cb->on_recv(udp->loop, nread, buf, addr, flags);
+}
+
+static uv_buf_t _batch_alloc_cb(uv_handle_t* handle, size_t suggested_size) {
+  assert(handle->data);
+  return reinterpret_cast<UDPCallbacks*>(handle->data)->on_batch_alloc();
+}
+
+static void _batch_recv_cb(uv_udp_t* udp, ssize_t nread, uv_buf_t buf, struct sockaddr* addr, unsigned flags) {
+  assert(udp);
+  assert(udp->data);
+  reinterpret_cast<UDPCallbacks*>(udp->data)->on_batch_recv(udp, nread, buf, addr, flags);
+}
+
+static void _batch_send_cb(uv_udp_send_t* req, int status) {
+  assert(req->handle);
+  assert(req->handle->data);
+  UDPCallbacks* cb = reinterpret_cast<UDPCallbacks*>(req->handle->data);
+  BatchSend* send = reinterpret_cast<BatchSend*>(req);
+  SendBatch* batch = send->batch;
+  if (status < 0) {
+    if (!batch->error_code) {
+      batch->error_code = uv_last_error(req->handle->loop).code;
+    }
+  } else {
+    batch->sent++;
+  }
+  if (--batch->pending == 0) {
+    cb->finish_send_batch(req->handle, batch, false);
+  }
+  delete send;
 }
 
 static void _send_cb(uv_udp_send_t* req, int status) {
@@ -139,9 +572,14 @@ static void _send_cb(uv_udp_send_t* req, int status) {
   assert(req->handle->data);
   UDPCallbacks* cb = reinterpret_cast<UDPCallbacks*>(req->handle->data);
   ContextHolder* req_data = reinterpret_cast<ContextHolder*>(req->data);
-  cb->on_send(status, status < 0 ? uv_last_error(req->handle->loop).code : 0, req_data->data(), req_data->context());
+  int error_code = status < 0 ? uv_last_error(req->handle->loop).code : 0;
+  if (req_data->by_id()) {
+    cb->on_send_request(req_data->request_id(), status, error_code);
+  } else {
+    cb->on_send(status, error_code, req_data->data(), req_data->context());
+  }
   delete req_data;
-  delete req;
+  delete_request(req);
 }
 
 /*
@@ -292,32 +730,53 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_UDPHandle__1send
   uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
   const char* h = env->GetStringUTFChars(host, 0);
   sockaddr_in addr = uv_ip4_addr(h, port);
-  uv_udp_send_t* req = new uv_udp_send_t();
+  uv_udp_send_t* req = new_request<uv_udp_send_t>(handle->loop, LoopData::UDP_SEND_REQUEST);
+  if (!req) {
+    env->ReleaseStringUTFChars(host, h);
+  }
+  OOME(env, req);
   req->handle = handle;
   ContextHolder* req_data = NULL;
   int r;
   if (data) {
-    jbyte* base = (jbyte*) env->GetPrimitiveArrayCritical(data, NULL);
+    // the array may move once we are back in java, libuv gets a copy
+    char* base = LoopData::of(handle->loop)->stage(length);
+    if (!base) {
+      delete_request(req);
+      env->ReleaseStringUTFChars(host, h);
+    }
     OOME(env, base);
+    env->GetByteArrayRegion(data, offset, length, reinterpret_cast<jbyte*>(base));
     uv_buf_t buf;
-    buf.base = reinterpret_cast<char*>(base + offset);
+    buf.base = base;
     buf.len = length;
-    req_data = new ContextHolder(env, context);
+    req_data = new (handle->loop) ContextHolder(env, context);
+    if (!req_data) {
+      BufferPool::release(base);
+      delete_request(req);
+      env->ReleaseStringUTFChars(host, h);
+    }
+    OOME(env, req_data);
+    req_data->set_bytes(base);
     req->data = req_data;
     r = uv_udp_send(req, handle, &buf, 1, addr, _send_cb);
-    env->ReleasePrimitiveArrayCritical(data, base, 0);
   } else {
     jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
     uv_buf_t buf;
     buf.base = reinterpret_cast<char*>(base + offset);
     buf.len = length;
-    req_data = new ContextHolder(env, buffer, context);
+    req_data = new (handle->loop) ContextHolder(env, buffer, context);
+    if (!req_data) {
+      delete_request(req);
+      env->ReleaseStringUTFChars(host, h);
+    }
+    OOME(env, req_data);
     req->data = req_data;
     r = uv_udp_send(req, handle, &buf, 1, addr, _send_cb);
   }
   if (r) {
     delete req_data;
-    delete req;
+    delete_request(req);
     ThrowException(env, handle->loop, "uv_udp_send", h);
   }
   env->ReleaseStringUTFChars(host, h);
@@ -337,27 +796,368 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_UDPHandle__1send6
   const char* h = env->GetStringUTFChars(host, 0);
   sockaddr_in6 addr = uv_ip6_addr(h, port);
 
-  jbyte* base = (jbyte*) env->GetPrimitiveArrayCritical(data, NULL);
+  // the array may move once we are back in java, libuv gets a copy
+  char* base = LoopData::of(handle->loop)->stage(length);
+  if (!base) {
+    env->ReleaseStringUTFChars(host, h);
+  }
   OOME(env, base);
+  env->GetByteArrayRegion(data, offset, length, reinterpret_cast<jbyte*>(base));
   uv_buf_t buf;
-  buf.base = reinterpret_cast<char*>(base + offset);
+  buf.base = base;
   buf.len = length;
 
-  uv_udp_send_t* req = new uv_udp_send_t();
+  uv_udp_send_t* req = new_request<uv_udp_send_t>(handle->loop, LoopData::UDP_SEND_REQUEST);
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, context);
+  if (!req || !req_data) {
+    BufferPool::release(base);
+    delete req_data;
+    delete_request(req);
+    env->ReleaseStringUTFChars(host, h);
+  }
+  OOME(env, req);
+  OOME(env, req_data);
   req->handle = handle;
-  ContextHolder* req_data = new ContextHolder(env, context);
+  req_data->set_bytes(base);
   req->data = req_data;
   int r = uv_udp_send6(req, handle, &buf, 1, addr, _send_cb);
-  env->ReleasePrimitiveArrayCritical(data, base, 0);
   if (r) {
     delete req_data;
-    delete req;
+    delete_request(req);
     ThrowException(env, handle->loop, "uv_udp_send6", h);
   }
   env->ReleaseStringUTFChars(host, h);
   return r;
 }
 
+/*
+ * Class:     com_oracle_libuv_handles_UDPHandle
+ * Method:    _send_request
+ * Signature: (JLjava/nio/ByteBuffer;[BIIILjava/lang/String;ZJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_UDPHandle__1send_1request
+  (JNIEnv *env, jobject that, jlong udp, jobject buffer, jbyteArray data, jint offset, jint length, jint port, jstring host, jboolean ipv6, jlong request_id) {
+
+  assert(udp);
+  uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
+  // a direct buffer must stay reachable until the send is done
+  ContextHolder* req_data = data ? new (handle->loop) ContextHolder(env, request_id) : new (handle->loop) ContextHolder(env, buffer, request_id);
+  OOME(env, req_data);
+  uv_buf_t buf;
+  if (data) {
+    // the array may move once we are back in java, libuv gets a copy
+    char* base = LoopData::of(handle->loop)->stage(length);
+    if (!base) {
+      delete req_data;
+    }
+    OOME(env, base);
+    env->GetByteArrayRegion(data, offset, length, reinterpret_cast<jbyte*>(base));
+    req_data->set_bytes(base);
+    buf.base = base;
+  } else {
+    jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
+    buf.base = reinterpret_cast<char*>(base + offset);
+  }
+  buf.len = length;
+
+  const char* h = env->GetStringUTFChars(host, 0);
+  uv_udp_send_t* req = new_request<uv_udp_send_t>(handle->loop, LoopData::UDP_SEND_REQUEST);
+  if (!req) {
+    delete req_data;
+    env->ReleaseStringUTFChars(host, h);
+  }
+  OOME(env, req);
+  req->handle = handle;
+  req->data = req_data;
+  int r = ipv6 ?
+      uv_udp_send6(req, handle, &buf, 1, uv_ip6_addr(h, port), _send_cb) :
+      uv_udp_send(req, handle, &buf, 1, uv_ip4_addr(h, port), _send_cb);
+  if (r) {
+    delete req_data;
+    delete_request(req);
+    ThrowException(env, handle->loop, ipv6 ? "uv_udp_send6" : "uv_udp_send", h);
+  }
+  env->ReleaseStringUTFChars(host, h);
+  return r;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_UDPHandle
+ * Method:    _send_copy
+ * Signature: (JLjava/nio/ByteBuffer;IILjava/lang/String;ZLjava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_UDPHandle__1send_1copy
+  (JNIEnv *env, jobject that, jlong udp, jobject buffer, jint length, jint port, jstring host, jboolean ipv6, jobject context) {
+
+  assert(udp);
+  uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
+  char* base = reinterpret_cast<char*>(env->GetDirectBufferAddress(buffer));
+  OOME(env, base);
+  // the java buffer is reused as soon as this returns
+  char* bytes = LoopData::of(handle->loop)->stage(length);
+  OOME(env, bytes);
+  memcpy(bytes, base, length);
+  uv_buf_t buf;
+  buf.base = bytes;
+  buf.len = length;
+
+  const char* h = env->GetStringUTFChars(host, 0);
+  uv_udp_send_t* req = new_request<uv_udp_send_t>(handle->loop, LoopData::UDP_SEND_REQUEST);
+  ContextHolder* req_data = new (handle->loop) ContextHolder(env, context);
+  if (!req || !req_data) {
+    BufferPool::release(bytes);
+    delete req_data;
+    delete_request(req);
+    env->ReleaseStringUTFChars(host, h);
+  }
+  OOME(env, req);
+  OOME(env, req_data);
+  req->handle = handle;
+  req_data->set_bytes(bytes);
+  req->data = req_data;
+  int r = ipv6 ?
+      uv_udp_send6(req, handle, &buf, 1, uv_ip6_addr(h, port), _send_cb) :
+      uv_udp_send(req, handle, &buf, 1, uv_ip4_addr(h, port), _send_cb);
+  if (r) {
+    delete req_data;
+    delete_request(req);
+    ThrowException(env, handle->loop, ipv6 ? "uv_udp_send6" : "uv_udp_send", h);
+  }
+  env->ReleaseStringUTFChars(host, h);
+  return r;
+}
+
+union BatchAddress {
+  sockaddr sa;
+  sockaddr_in in4;
+  sockaddr_in6 in6;
+};
+
+static inline size_t _address_length(const BatchAddress* addr) {
+  return addr->sa.sa_family == AF_INET6 ? sizeof(sockaddr_in6) : sizeof(sockaddr_in);
+}
+
+// reads the buffers of a batch, by their offsets and lengths in values
+static uv_buf_t* _batch_buffers(JNIEnv* env, jobjectArray buffers, jint* values, jsize count) {
+  uv_buf_t* bufs = new uv_buf_t[count];
+  for (jsize i = 0; i < count; i++) {
+    jobject buffer = env->GetObjectArrayElement(buffers, i);
+    jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
+    env->DeleteLocalRef(buffer);
+    bufs[i].base = reinterpret_cast<char*>(base + values[i]);
+    bufs[i].len = values[count + i];
+  }
+  return bufs;
+}
+
+static jint _send_batch(JNIEnv* env, uv_udp_t* handle, jobjectArray buffers, uv_buf_t* bufs, BatchAddress* addrs, jsize count, jobject context) {
+  UDPCallbacks* cb = reinterpret_cast<UDPCallbacks*>(handle->data);
+  SendBatch* batch = new SendBatch();
+  batch->env = env;
+  batch->buffers = env->NewGlobalRef(buffers);
+  batch->context = context ? env->NewGlobalRef(context) : NULL;
+  // the batch counts itself until every datagram is handed off
+  batch->pending = 1;
+  batch->sent = 0;
+  batch->error_code = 0;
+  batch->next = NULL;
+
+  jsize first = 0;
+#if defined(__linux__)
+  // straight to the socket with as few sendmmsg calls as it takes, once
+  // libuv has bound it; datagrams the socket has no room for go through
+  // libuv below, and may overtake sends libuv still has queued
+  if (handle->io_watcher.fd >= 0) {
+    struct mmsghdr* msgs = new struct mmsghdr[count];
+    struct iovec* iovs = new struct iovec[count];
+    memset(msgs, 0, count * sizeof(struct mmsghdr));
+    for (jsize i = 0; i < count; i++) {
+      iovs[i].iov_base = bufs[i].base;
+      iovs[i].iov_len = bufs[i].len;
+      msgs[i].msg_hdr.msg_iov = &iovs[i];
+      msgs[i].msg_hdr.msg_iovlen = 1;
+      msgs[i].msg_hdr.msg_name = &addrs[i];
+      msgs[i].msg_hdr.msg_namelen = _address_length(&addrs[i]);
+    }
+    while (first < count) {
+      int n = sendmmsg(handle->io_watcher.fd, msgs + first, count - first, MSG_DONTWAIT);
+      if (n > 0) {
+        batch->sent += n;
+        first += n;
+      } else if (n < 0 && errno == EINTR) {
+        continue;
+      } else if (n < 0 && (errno == EAGAIN || errno == EWOULDBLOCK || errno == ENOBUFS)) {
+        break;
+      } else {
+        // the datagram at first failed, it and the rest go through libuv
+        // below, which reports the error in its own terms
+        break;
+      }
+    }
+    delete[] msgs;
+    delete[] iovs;
+  }
+#endif
+
+  for (jsize i = first; i < count; i++) {
+    BatchSend* send = new (handle->loop) BatchSend();
+    if (!send) {
+      if (!batch->error_code) {
+        batch->error_code = UV_ENOMEM;
+      }
+      continue;
+    }
+    send->batch = batch;
+    send->req.handle = handle;
+    int r = addrs[i].sa.sa_family == AF_INET6 ?
+        uv_udp_send6(&send->req, handle, &bufs[i], 1, addrs[i].in6, _batch_send_cb) :
+        uv_udp_send(&send->req, handle, &bufs[i], 1, addrs[i].in4, _batch_send_cb);
+    if (r) {
+      if (!batch->error_code) {
+        batch->error_code = uv_last_error(handle->loop).code;
+      }
+      delete send;
+    } else {
+      batch->pending++;
+    }
+  }
+
+  jint handed_off = batch->sent + batch->pending - 1;
+  if (--batch->pending == 0) {
+    cb->finish_send_batch(handle, batch, true);
+  }
+  return handed_off;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_UDPHandle
+ * Method:    _send_batch
+ * Signature: (J[Ljava/nio/ByteBuffer;[I[I[I[Ljava/lang/String;ZLjava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_UDPHandle__1send_1batch
+  (JNIEnv *env, jobject that, jlong udp, jobjectArray buffers, jintArray offsets, jintArray lengths, jintArray ports, jobjectArray hosts, jboolean ipv6, jobject context) {
+
+  assert(udp);
+  uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
+  jsize count = env->GetArrayLength(buffers);
+  if (count == 0) {
+    return 0;
+  }
+
+  // every destination and buffer is worked out before anything is sent
+  jint* values = new jint[3 * count];
+  env->GetIntArrayRegion(offsets, 0, count, values);
+  env->GetIntArrayRegion(lengths, 0, count, values + count);
+  env->GetIntArrayRegion(ports, 0, count, values + 2 * count);
+  uv_buf_t* bufs = _batch_buffers(env, buffers, values, count);
+  BatchAddress* addrs = new BatchAddress[count];
+  for (jsize i = 0; i < count; i++) {
+    jstring host = (jstring) env->GetObjectArrayElement(hosts, i);
+    const char* h = env->GetStringUTFChars(host, 0);
+    if (ipv6) {
+      addrs[i].in6 = uv_ip6_addr(h, values[2 * count + i]);
+    } else {
+      addrs[i].in4 = uv_ip4_addr(h, values[2 * count + i]);
+    }
+    env->ReleaseStringUTFChars(host, h);
+    env->DeleteLocalRef(host);
+  }
+  delete[] values;
+
+  jint r = _send_batch(env, handle, buffers, bufs, addrs, count, context);
+  delete[] addrs;
+  delete[] bufs;
+  return r;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_UDPHandle
+ * Method:    _send_batch_to
+ * Signature: (J[Ljava/nio/ByteBuffer;[I[I[JLjava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_UDPHandle__1send_1batch_1to
+  (JNIEnv *env, jobject that, jlong udp, jobjectArray buffers, jintArray offsets, jintArray lengths, jlongArray addresses, jobject context) {
+
+  assert(udp);
+  uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
+  jsize count = env->GetArrayLength(buffers);
+  if (count == 0) {
+    return 0;
+  }
+
+  jint* values = new jint[2 * count];
+  env->GetIntArrayRegion(offsets, 0, count, values);
+  env->GetIntArrayRegion(lengths, 0, count, values + count);
+  uv_buf_t* bufs = _batch_buffers(env, buffers, values, count);
+  delete[] values;
+  jlong* pointers = new jlong[count];
+  env->GetLongArrayRegion(addresses, 0, count, pointers);
+  BatchAddress* addrs = new BatchAddress[count];
+  for (jsize i = 0; i < count; i++) {
+    const BatchAddress* addr = reinterpret_cast<const BatchAddress*>(pointers[i]);
+    memcpy(&addrs[i], addr, _address_length(addr));
+  }
+  delete[] pointers;
+
+  jint r = _send_batch(env, handle, buffers, bufs, addrs, count, context);
+  delete[] addrs;
+  delete[] bufs;
+  return r;
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_UDPHandle
+ * Method:    _send_to
+ * Signature: (JLjava/nio/ByteBuffer;[BIIJLjava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_UDPHandle__1send_1to
+  (JNIEnv *env, jobject that, jlong udp, jobject buffer, jbyteArray data, jint offset, jint length, jlong address, jobject context) {
+
+  assert(udp);
+  assert(address);
+  uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
+  const BatchAddress* addr = reinterpret_cast<const BatchAddress*>(address);
+  bool ipv6 = addr->sa.sa_family == AF_INET6;
+  ContextHolder* req_data;
+  uv_buf_t buf;
+  if (data) {
+    // the array may move once we are back in java, libuv gets a copy
+    char* base = LoopData::of(handle->loop)->stage(length);
+    OOME(env, base);
+    env->GetByteArrayRegion(data, offset, length, reinterpret_cast<jbyte*>(base));
+    req_data = new (handle->loop) ContextHolder(env, context);
+    if (!req_data) {
+      BufferPool::release(base);
+    }
+    OOME(env, req_data);
+    req_data->set_bytes(base);
+    buf.base = base;
+  } else {
+    jbyte* base = (jbyte*) env->GetDirectBufferAddress(buffer);
+    req_data = new (handle->loop) ContextHolder(env, buffer, context);
+    OOME(env, req_data);
+    buf.base = reinterpret_cast<char*>(base + offset);
+  }
+  buf.len = length;
+
+  uv_udp_send_t* req = new_request<uv_udp_send_t>(handle->loop, LoopData::UDP_SEND_REQUEST);
+  if (!req) {
+    delete req_data;
+  }
+  OOME(env, req);
+  req->handle = handle;
+  req->data = req_data;
+  int r = ipv6 ?
+      uv_udp_send6(req, handle, &buf, 1, addr->in6, _send_cb) :
+      uv_udp_send(req, handle, &buf, 1, addr->in4, _send_cb);
+  if (r) {
+    delete req_data;
+    delete_request(req);
+    ThrowException(env, handle->loop, ipv6 ? "uv_udp_send6" : "uv_udp_send");
+  }
+  return r;
+}
+
 /*
  * Class:     com_oracle_libuv_handles_UDPHandle
  * Method:    _recv_start
@@ -368,7 +1168,10 @@ JNIEXPORT jint JNICALL Java_com_oracle_libuv_handles_UDPHandle__1recv_1start
 
   assert(udp);
   uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
-  int r = uv_udp_recv_start(handle, _alloc_cb, _recv_cb);
+  UDPCallbacks* cb = reinterpret_cast<UDPCallbacks*>(handle->data);
+  int r = cb->batching() ?
+      uv_udp_recv_start(handle, _batch_alloc_cb, _batch_recv_cb) :
+      uv_udp_recv_start(handle, _alloc_cb, _recv_cb);
   // UV_EALREADY means that the socket is already bound but that's okay
   if (r && uv_last_error(handle->loop).code != UV_EALREADY) {
     ThrowException(env, handle->loop, "uv_udp_recv_start");
@@ -492,5 +1295,76 @@ JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_UDPHandle__1close
 
   assert(udp);
   uv_handle_t* handle = reinterpret_cast<uv_handle_t*>(udp);
+  UDPCallbacks* cb = reinterpret_cast<UDPCallbacks*>(handle->data);
+  cb->close_recv_batch();
+  cb->close_send_batches();
   uv_close(handle, _close_cb);
 }
+
+/*
+ * Class:     com_oracle_libuv_handles_UDPHandle
+ * Method:    _enable_recv_batch
+ * Signature: (JII)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_oracle_libuv_handles_UDPHandle__1enable_1recv_1batch
+  (JNIEnv *env, jobject that, jlong udp, jint slots, jint slot_size) {
+
+  assert(udp);
+  uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
+  return reinterpret_cast<UDPCallbacks*>(handle->data)->enable_recv_batch(handle, slots, slot_size);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_UDPHandle
+ * Method:    _set_peer_recv
+ * Signature: (JZ)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_UDPHandle__1set_1peer_1recv
+  (JNIEnv *env, jobject that, jlong udp, jboolean peer_recv) {
+
+  assert(udp);
+  uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
+  reinterpret_cast<UDPCallbacks*>(handle->data)->set_peer_recv(peer_recv == JNI_TRUE);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_UDPHandle
+ * Method:    _set_recv_buffer_size
+ * Signature: (JI)V
+ */
+JNIEXPORT void JNICALL Java_com_oracle_libuv_handles_UDPHandle__1set_1recv_1buffer_1size
+  (JNIEnv *env, jobject that, jlong udp, jint size) {
+
+  assert(udp);
+  assert(size > 0 && static_cast<size_t>(size) <= UDPCallbacks::MAX_RECV_SIZE);
+  uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
+  reinterpret_cast<UDPCallbacks*>(handle->data)->set_recv_size(size);
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_UDPHandle
+ * Method:    _truncated_count
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_oracle_libuv_handles_UDPHandle__1truncated_1count
+  (JNIEnv *env, jobject that, jlong udp) {
+
+  assert(udp);
+  uv_udp_t* handle = reinterpret_cast<uv_udp_t*>(udp);
+  return reinterpret_cast<UDPCallbacks*>(handle->data)->truncated();
+}
+
+/*
+ * Class:     com_oracle_libuv_handles_UDPRecvBatch
+ * Method:    _inet_ntop
+ * Signature: (Ljava/nio/ByteBuffer;II)Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_com_oracle_libuv_handles_UDPRecvBatch__1inet_1ntop
+  (JNIEnv *env, jclass cls, jobject records, jint offset, jint family) {
+
+  char* base = reinterpret_cast<char*>(env->GetDirectBufferAddress(records));
+  assert(base);
+  char ip[INET6_ADDRSTRLEN];
+  uv_inet_ntop(family == 4 ? AF_INET : AF_INET6, base + offset, ip, sizeof ip);
+  return env->NewStringUTF(ip);
+}
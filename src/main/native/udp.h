@@ -30,16 +30,49 @@
 
 #include "uv.h"
 
+struct RecvBatch;
+struct SendBatch;
+
+// a datagram received in batch mode is described by a record of ints:
+// its length, the uv_udp_flags, the source family (4 or 6, 0 if none),
+// port, and address bytes; must match UDPRecvBatch
+enum RecvRecordField {
+  RECV_RECORD_LENGTH,
+  RECV_RECORD_FLAGS,
+  RECV_RECORD_FAMILY,
+  RECV_RECORD_PORT,
+  RECV_RECORD_ADDRESS,
+  RECV_RECORD_INTS = RECV_RECORD_ADDRESS + 4
+};
+
 class UDPCallbacks {
+public:
+  // datagrams are received into buffers of this many bytes unless set
+  // otherwise, anything longer is truncated
+  static const size_t DEFAULT_RECV_SIZE = 2048;
+  static const size_t MAX_RECV_SIZE = 64 * 1024;
+
 private:
   static jclass _udp_handle_cid;
 
   static jmethodID _recv_callback_mid;
+  static jmethodID _recv_peer_callback_mid;
+  static jmethodID _recv_batch_callback_mid;
   static jmethodID _send_callback_mid;
+  static jmethodID _send_request_callback_mid;
+  static jmethodID _send_batch_callback_mid;
   static jmethodID _close_callback_mid;
 
   JNIEnv* _env;
   jobject _instance;
+  size_t _recv_size;
+  jlong _truncated;
+  RecvBatch* _recv_batch;
+  // the sender goes to java as primitives instead of an Address
+  bool _peer_recv;
+  // batches done inside the call that sent them, reported from the check
+  uv_check_t* _send_batch_check;
+  SendBatch* _finished_batches;
 
 public:
   static void static_initialize(JNIEnv* env, jclass cls);
@@ -49,8 +82,25 @@ public:
 
   void initialize(JNIEnv *env, jobject instance);
 
-  void on_recv(ssize_t nread, uv_buf_t buf, struct sockaddr* addr, unsigned flags);
+  uv_buf_t on_alloc(uv_loop_t* loop);
+  inline void set_recv_size(size_t size) { _recv_size = size; }
+  inline void count_truncated() { _truncated++; }
+  inline jlong truncated() const { return _truncated; }
+  void on_recv(uv_loop_t* loop, ssize_t nread, uv_buf_t buf, struct sockaddr* addr, unsigned flags);
+  inline void set_peer_recv(bool peer_recv) { _peer_recv = peer_recv; }
+
+  inline bool batching() const { return _recv_batch != NULL; }
+  jobject enable_recv_batch(uv_udp_t* handle, jint slots, jint slot_size);
+  uv_buf_t on_batch_alloc();
+  void on_batch_recv(uv_udp_t* handle, ssize_t nread, uv_buf_t buf, struct sockaddr* addr, unsigned flags);
+  void flush_recv_batch();
+  void close_recv_batch();
   void on_send(int status, int error_code, jobject buffer, jobject domain);
+  void on_send_request(jlong request_id, int status, int error_code);
+  void on_send_batch(SendBatch* batch);
+  void finish_send_batch(uv_udp_t* handle, SendBatch* batch, bool deferred);
+  void flush_send_batches();
+  void close_send_batches();
   void on_close();
 };
 
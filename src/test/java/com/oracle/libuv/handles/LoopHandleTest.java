@@ -26,12 +26,17 @@
 package com.oracle.libuv.handles;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.oracle.libuv.Files;
+import com.oracle.libuv.Stats;
 import com.oracle.libuv.TestBase;
+import com.oracle.libuv.cb.FileStatsCallback;
 
 public class LoopHandleTest extends TestBase {
 
@@ -82,9 +87,69 @@ public class LoopHandleTest extends TestBase {
         Assert.assertTrue(pointers.isEmpty());
     }
 
+    @Test
+    public void testStagingSizes() throws Throwable {
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        Assert.assertTrue(loop.getStagingStats().length > 0);
+
+        loop.setStagingSizes(1024, 8192);
+        final PoolStats[] stats = loop.getStagingStats();
+        Assert.assertEquals(stats.length, 2);
+        Assert.assertEquals(stats[0].bufferSize(), 1024);
+        Assert.assertEquals(stats[1].bufferSize(), 8192);
+        for (final PoolStats pool : stats) {
+            Assert.assertEquals(pool.acquired(), 0);
+            Assert.assertEquals(pool.outstanding(), 0);
+        }
+
+        try {
+            loop.setStagingSizes(8192, 1024);
+            Assert.fail("descending staging sizes accepted");
+        } catch (final IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testRequestStats() throws Throwable {
+        final int TIMES = 10;
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final Files files = handleFactory.newFiles();
+        final AtomicInteger stats = new AtomicInteger();
+
+        files.setStatCallback(new FileStatsCallback() {
+            @Override
+            public void onStats(final Object context, final Stats s, final Exception error) throws Exception {
+                Assert.assertNull(error);
+                // the next request is made before this one is given back,
+                // so two requests take turns
+                if (stats.incrementAndGet() < TIMES) {
+                    files.stat(".", context);
+                }
+            }
+        });
+        files.stat(".", this);
+        loop.run();
+        Assert.assertEquals(stats.get(), TIMES);
+
+        final Map<LoopHandle.RequestType, PoolStats> requests = loop.getRequestStats();
+        Assert.assertEquals(requests.size(), LoopHandle.RequestType.values().length);
+        for (final LoopHandle.RequestType type : new LoopHandle.RequestType[] {LoopHandle.RequestType.FS, LoopHandle.RequestType.FILE}) {
+            final PoolStats pool = requests.get(type);
+            Assert.assertEquals(pool.acquired(), TIMES);
+            Assert.assertEquals(pool.reused(), TIMES - 2);
+            Assert.assertEquals(pool.outstanding(), 0);
+            Assert.assertEquals(pool.idle(), 2);
+        }
+        Assert.assertEquals(requests.get(LoopHandle.RequestType.WRITE).acquired(), 0);
+    }
+
     public static void main(final String[] args) throws Throwable {
         final LoopHandleTest test = new LoopHandleTest();
         test.testList();
+        test.testStagingSizes();
+        test.testRequestStats();
     }
 
 }
@@ -26,19 +26,35 @@
 package com.oracle.libuv.handles;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.oracle.libuv.Logger;
+import com.oracle.libuv.NativeException;
 import com.oracle.libuv.TestBase;
+import com.oracle.libuv.cb.ConnectionCloseCallback;
+import com.oracle.libuv.cb.ConnectionReadCallback;
+import com.oracle.libuv.cb.RequestCallback;
 import com.oracle.libuv.cb.StreamCloseCallback;
 import com.oracle.libuv.cb.StreamConnectCallback;
 import com.oracle.libuv.cb.StreamConnectionCallback;
+import com.oracle.libuv.cb.StreamErrorCallback;
+import com.oracle.libuv.cb.StreamNativeReadCallback;
 import com.oracle.libuv.cb.StreamReadCallback;
+import com.oracle.libuv.cb.StreamReadIntoCallback;
+import com.oracle.libuv.cb.StreamShutdownCallback;
+import com.oracle.libuv.cb.StreamWritabilityCallback;
+import com.oracle.libuv.cb.TCPConnectionsCallback;
+import com.oracle.libuv.cb.StreamWriteCallback;
+import com.oracle.libuv.cb.StreamWritesCallback;
 
 public class TCPHandleTest extends TestBase {
 
@@ -46,6 +62,22 @@ public class TCPHandleTest extends TestBase {
     private static final String ADDRESS6 = "::1";
     private static final int PORT = 23456;
     private static final int PORT6 = 34567;
+    private static final int POOLED_PORT = 23457;
+    private static final int READ_INTO_PORT = 23458;
+    private static final int GATHERING_PORT = 23459;
+    private static final int CORK_PORT = 23460;
+    private static final int WATERMARK_PORT = 23461;
+    private static final int BATCHED_ACCEPT_PORT = 23462;
+    private static final int TEMPLATE_PORT = 23463;
+    private static final int READ_SIZE_PORT = 23464;
+    private static final int FRAMING_PORT = 23465;
+    private static final int NATIVE_READ_PORT = 23466;
+    private static final int FORWARD_PORT = 23467;
+    private static final int BROADCAST_PORT = 23468;
+    private static final int FORGET_PORT = 23469;
+    private static final int WRITE_BATCHING_PORT = 23470;
+    private static final int REQUEST_ID_PORT = 23471;
+    private static final int REFUSED_PORT = 23472;
     private static final int TIMES = 10;
 
     @Test
@@ -271,10 +303,1364 @@ public class TCPHandleTest extends TestBase {
         Assert.assertEquals(clientRecvCount.get(), TIMES);
     }
 
+    @Test
+    public void testPooledReads() throws Throwable {
+        final String message = "pooled message";
+        final AtomicInteger serverRecvBytes = new AtomicInteger(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+        final ByteBuffer[] retained = new ByteBuffer[1];
+        final byte[][] retainedCopy = new byte[1][];
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.setReadBufferPooling(true);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setReadCallback(new StreamReadCallback() {
+            @Override
+            public void onRead(final ByteBuffer data) throws Exception {
+                if (data == null) {
+                    // the retained buffer must not have been recycled by later reads
+                    final byte[] bytes = new byte[retainedCopy[0].length];
+                    retained[0].get(bytes);
+                    Assert.assertEquals(bytes, retainedCopy[0]);
+                    StreamHandle.releaseReadBuffer(retained[0]);
+                    for (final ByteBuffer foreign : new ByteBuffer[] {retained[0], ByteBuffer.allocateDirect(16)}) {
+                        try {
+                            StreamHandle.releaseReadBuffer(foreign);
+                            Assert.fail("released a buffer that is not retained");
+                        } catch (final IllegalArgumentException expected) {
+                        }
+                    }
+                    peer.close();
+                    return;
+                }
+                if (retained[0] == null) {
+                    peer.retainReadBuffer();
+                    retained[0] = data;
+                    retainedCopy[0] = new byte[data.remaining()];
+                    data.duplicate().get(retainedCopy[0]);
+                }
+                serverRecvBytes.addAndGet(data.remaining());
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                for (int i = 0; i < TIMES; i++) {
+                    client.write(message);
+                }
+                client.closeWrite();
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, POOLED_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, POOLED_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(serverRecvBytes.get(), TIMES * message.length());
+    }
+
+    @Test
+    public void testReadInto() throws Throwable {
+        final String message = "read into message";
+        final StringBuilder received = new StringBuilder();
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+        final ByteBuffer[] ring = {ByteBuffer.allocateDirect(7), ByteBuffer.allocateDirect(7)};
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.readStart(ring);
+                server.close();
+            }
+        });
+
+        peer.setReadIntoCallback(new StreamReadIntoCallback() {
+            @Override
+            public void onRead(final int nread, final ByteBuffer buffer) throws Exception {
+                if (nread < 0) {
+                    Assert.assertNull(buffer);
+                    peer.close();
+                    return;
+                }
+                Assert.assertTrue(buffer == ring[0] || buffer == ring[1]);
+                final byte[] bytes = new byte[nread];
+                final ByteBuffer view = buffer.duplicate();
+                view.clear();
+                view.get(bytes);
+                received.append(new String(bytes, "utf-8"));
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                client.write(message);
+                client.closeWrite();
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, READ_INTO_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, READ_INTO_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(received.toString(), message);
+    }
+
+    @Test
+    public void testGatheringWrite() throws Throwable {
+        final String header = "header:";
+        final String body = "body";
+        final StringBuilder received = new StringBuilder();
+        final AtomicInteger writeCount = new AtomicInteger(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setReadCallback(new StreamReadCallback() {
+            @Override
+            public void onRead(final ByteBuffer data) throws Exception {
+                if (data == null) {
+                    peer.close();
+                } else {
+                    final byte[] bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                    received.append(new String(bytes, "utf-8"));
+                }
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                final ByteBuffer direct = ByteBuffer.allocateDirect(body.length());
+                direct.put(body.getBytes("utf-8"));
+                direct.flip();
+                client.write(new ByteBuffer[] {ByteBuffer.wrap(header.getBytes("utf-8")), direct});
+            }
+        });
+
+        client.setWriteCallback(new StreamWriteCallback() {
+            @Override
+            public void onWrite(int status, Exception error) throws Exception {
+                writeCount.incrementAndGet();
+                client.closeWrite();
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, GATHERING_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, GATHERING_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(writeCount.get(), 1);
+        Assert.assertEquals(received.toString(), header + body);
+    }
+
+    @Test
+    public void testCork() throws Throwable {
+        final StringBuilder received = new StringBuilder();
+        final AtomicInteger writeCount = new AtomicInteger(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setReadCallback(new StreamReadCallback() {
+            @Override
+            public void onRead(final ByteBuffer data) throws Exception {
+                if (data == null) {
+                    peer.close();
+                } else {
+                    final byte[] bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                    received.append(new String(bytes, "utf-8"));
+                }
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                client.cork();
+                for (int i = 0; i < TIMES; i++) {
+                    client.write(Integer.toString(i));
+                }
+                Assert.assertEquals(writeCount.get(), 0);
+                client.uncork();
+                // auto flushed writes go out at the end of this iteration
+                client.setAutoFlush(true);
+                client.write("a");
+                client.write("b");
+            }
+        });
+
+        client.setWriteCallback(new StreamWriteCallback() {
+            @Override
+            public void onWrite(int status, Exception error) throws Exception {
+                if (writeCount.incrementAndGet() == 2) {
+                    client.closeWrite();
+                }
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, CORK_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, CORK_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(writeCount.get(), 2);
+        Assert.assertEquals(received.toString(), "0123456789ab");
+    }
+
+    @Test
+    public void testWriteWatermarks() throws Throwable {
+        final StringBuilder writability = new StringBuilder();
+        final AtomicInteger bytesRead = new AtomicInteger(0);
+        final AtomicInteger writeCount = new AtomicInteger(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setReadCallback(new StreamReadCallback() {
+            @Override
+            public void onRead(final ByteBuffer data) throws Exception {
+                if (data == null) {
+                    peer.close();
+                } else {
+                    bytesRead.addAndGet(data.remaining());
+                }
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setWritabilityCallback(new StreamWritabilityCallback() {
+            @Override
+            public void onWritabilityChanged(boolean writable) throws Exception {
+                writability.append(writable ? 'w' : 'b');
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                client.setWriteWatermarks(100, 500);
+                for (int i = 0; i < TIMES; i++) {
+                    client.write(ByteBuffer.allocate(100));
+                }
+                Assert.assertTrue(client.isAboveHighWatermark());
+                Assert.assertEquals(writability.toString(), "b");
+            }
+        });
+
+        client.setWriteCallback(new StreamWriteCallback() {
+            @Override
+            public void onWrite(int status, Exception error) throws Exception {
+                if (writeCount.incrementAndGet() == TIMES) {
+                    client.closeWrite();
+                }
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, WATERMARK_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, WATERMARK_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(bytesRead.get(), TIMES * 100);
+        Assert.assertEquals(client.queuedWriteBytes(), 0);
+        Assert.assertFalse(client.isAboveHighWatermark());
+        Assert.assertEquals(writability.toString(), "bw");
+    }
+
+    @Test
+    public void testBatchedAccept() throws Throwable {
+        final AtomicInteger accepted = new AtomicInteger(0);
+        final AtomicInteger closed = new AtomicInteger(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle[] clients = new TCPHandle[TIMES];
+
+        final StreamCloseCallback onClose = new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                closed.incrementAndGet();
+            }
+        };
+
+        server.setConnectionsCallback(new TCPConnectionsCallback() {
+            @Override
+            public void onConnections(final TCPHandle[] peers) throws Exception {
+                Assert.assertTrue(peers.length > 0);
+                for (final TCPHandle peer : peers) {
+                    peer.setCloseCallback(onClose);
+                    peer.close();
+                }
+                if (accepted.addAndGet(peers.length) == TIMES) {
+                    server.close();
+                }
+            }
+        });
+
+        server.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, BATCHED_ACCEPT_PORT);
+        server.listenBatched(TIMES);
+
+        for (int i = 0; i < TIMES; i++) {
+            final TCPHandle client = handleFactory.newTCPHandle();
+            client.setConnectCallback(new StreamConnectCallback() {
+                @Override
+                public void onConnect(int status, Exception error) throws Exception {
+                    client.close();
+                }
+            });
+            client.setCloseCallback(onClose);
+            client.connect(ADDRESS, BATCHED_ACCEPT_PORT);
+            clients[i] = client;
+        }
+
+        while (!serverDone.get() || closed.get() < 2 * TIMES) {
+            loop.run();
+        }
+
+        Assert.assertEquals(accepted.get(), TIMES);
+    }
+
+    @Test
+    public void testConnectionTemplate() throws Throwable {
+        final StringBuilder received = new StringBuilder();
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        final ConnectionTemplate<TCPHandle> template = new ConnectionTemplate<>();
+        template.setReadCallback(new ConnectionReadCallback<TCPHandle>() {
+            @Override
+            public void onRead(final TCPHandle handle, final ByteBuffer data) throws Exception {
+                Assert.assertSame(handle, peer);
+                if (data == null) {
+                    handle.close();
+                } else {
+                    final byte[] bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                    received.append(new String(bytes, "utf-8"));
+                }
+            }
+        });
+        template.setCloseCallback(new ConnectionCloseCallback<TCPHandle>() {
+            @Override
+            public void onClose(final TCPHandle handle) throws Exception {
+                serverDone.set(true);
+            }
+        });
+        server.setConnectionTemplate(template);
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                client.write("template");
+                client.closeWrite();
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, TEMPLATE_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, TEMPLATE_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(received.toString(), "template");
+    }
+
+    @Test
+    public void testReadSize() throws Throwable {
+        final int total = 100 * 1024;
+        final AtomicInteger bytesRead = new AtomicInteger(0);
+        final AtomicInteger largestRead = new AtomicInteger(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.setReadSize(256, 256, 4096);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setReadCallback(new StreamReadCallback() {
+            @Override
+            public void onRead(final ByteBuffer data) throws Exception {
+                if (data == null) {
+                    peer.close();
+                } else {
+                    bytesRead.addAndGet(data.remaining());
+                    largestRead.set(Math.max(largestRead.get(), data.remaining()));
+                }
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                client.write(ByteBuffer.allocate(total));
+                client.closeWrite();
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, READ_SIZE_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, READ_SIZE_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(bytesRead.get(), total);
+        Assert.assertTrue(largestRead.get() <= 4096);
+    }
+
+    @Test
+    public void testFraming() throws Throwable {
+        final StringBuilder received = new StringBuilder();
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.setFrameLengthPrefix(2, ByteOrder.BIG_ENDIAN, 1024);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setReadCallback(new StreamReadCallback() {
+            @Override
+            public void onRead(final ByteBuffer data) throws Exception {
+                if (data == null) {
+                    peer.close();
+                    return;
+                }
+                final byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                received.append(new String(bytes, "utf-8")).append('|');
+                if (received.length() == "hello|".length()) {
+                    // the rest of the stream is split on new lines
+                    peer.setFrameDelimiter(new byte[] {'\n'}, 1024);
+                }
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                client.write(ByteBuffer.wrap(new byte[] {0, 5, 'h', 'e'}));
+                client.write(ByteBuffer.wrap(new byte[] {'l', 'l', 'o', 'a', 'b'}));
+                client.write("c\nde");
+                client.write("f\n");
+                client.closeWrite();
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, FRAMING_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, FRAMING_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(received.toString(), "hello|abc|def|");
+    }
+
+    @Test
+    public void testNativeRead() throws Throwable {
+        final int total = 100 * 1024;
+        final long allocatedBefore = NativeBuffer.allocatedMemory();
+        final List<NativeBuffer> buffers = new ArrayList<>();
+        final AtomicInteger bytesRead = new AtomicInteger(0);
+        final AtomicBoolean allFreed = new AtomicBoolean(true);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setNativeReadCallback(new StreamNativeReadCallback() {
+            @Override
+            public void onRead(final NativeBuffer data) throws Exception {
+                if (data == null) {
+                    // the buffers outlived their callbacks, free them now
+                    for (final NativeBuffer buffer : buffers) {
+                        bytesRead.addAndGet(buffer.buffer().remaining());
+                        if (!buffer.release() || buffer.refCount() != 0) {
+                            allFreed.set(false);
+                        }
+                    }
+                    peer.close();
+                } else {
+                    buffers.add(data);
+                }
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                client.write(ByteBuffer.allocate(total));
+                client.closeWrite();
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, NATIVE_READ_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, NATIVE_READ_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(bytesRead.get(), total);
+        Assert.assertTrue(allFreed.get());
+        Assert.assertTrue(NativeBuffer.allocatedMemory() <= allocatedBefore);
+    }
+
+    @Test
+    public void testForwardSlice() throws Throwable {
+        final long allocatedBefore = NativeBuffer.allocatedMemory();
+        final StringBuilder echoed = new StringBuilder();
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.setFrameDelimiter(new byte[] {'\n'}, 1024);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setNativeReadCallback(new StreamNativeReadCallback() {
+            @Override
+            public void onRead(final NativeBuffer data) throws Exception {
+                if (data == null) {
+                    peer.close();
+                    return;
+                }
+                // echo everything after the first word, the write holds
+                // the only reference left once the slice is released
+                final NativeBuffer slice = data.slice(6, data.buffer().remaining() - 6);
+                data.release();
+                peer.write(slice);
+                slice.release();
+                Assert.assertEquals(slice.refCount(), 1);
+                peer.closeWrite();
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                client.readStart();
+                client.write("hello world\n");
+            }
+        });
+
+        client.setNativeReadCallback(new StreamNativeReadCallback() {
+            @Override
+            public void onRead(final NativeBuffer data) throws Exception {
+                if (data == null) {
+                    client.close();
+                    return;
+                }
+                final byte[] bytes = new byte[data.buffer().remaining()];
+                data.buffer().get(bytes);
+                data.release();
+                echoed.append(new String(bytes, "utf-8"));
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, FORWARD_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, FORWARD_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(echoed.toString(), "world");
+        Assert.assertTrue(NativeBuffer.allocatedMemory() <= allocatedBefore);
+    }
+
+    @Test
+    public void testBroadcast() throws Throwable {
+        final byte[] message = "hello".getBytes("utf-8");
+        final AtomicInteger accepted = new AtomicInteger(0);
+        final AtomicInteger writes = new AtomicInteger(0);
+        final AtomicInteger bytesRead = new AtomicInteger(0);
+        final AtomicInteger closed = new AtomicInteger(0);
+        final AtomicInteger queued = new AtomicInteger(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle[] peers = new TCPHandle[TIMES];
+        final Exception[] errors = new Exception[TIMES];
+
+        final StreamCloseCallback onClose = new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                closed.incrementAndGet();
+            }
+        };
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                final int index = accepted.getAndIncrement();
+                final TCPHandle peer = handleFactory.newTCPHandle();
+                server.accept(peer);
+                peer.setCloseCallback(onClose);
+                peer.setWriteCallback(new StreamWriteCallback() {
+                    @Override
+                    public void onWrite(int status, Exception error) throws Exception {
+                        writes.incrementAndGet();
+                        peer.close();
+                    }
+                });
+                peers[index] = peer;
+                if (index + 1 < TIMES) {
+                    return;
+                }
+                queued.set(StreamHandle.broadcast(ByteBuffer.wrap(message), peers, errors));
+                server.close();
+            }
+        });
+
+        server.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, BROADCAST_PORT);
+        server.listen(TIMES);
+
+        for (int i = 0; i < TIMES; i++) {
+            final TCPHandle client = handleFactory.newTCPHandle();
+            client.setConnectCallback(new StreamConnectCallback() {
+                @Override
+                public void onConnect(int status, Exception error) throws Exception {
+                    client.readStart();
+                }
+            });
+            client.setReadCallback(new StreamReadCallback() {
+                @Override
+                public void onRead(final ByteBuffer data) throws Exception {
+                    if (data == null) {
+                        client.close();
+                    } else {
+                        bytesRead.addAndGet(data.remaining());
+                    }
+                }
+            });
+            client.setCloseCallback(onClose);
+            client.connect(ADDRESS, BROADCAST_PORT);
+        }
+
+        while (!serverDone.get() || closed.get() < 2 * TIMES) {
+            loop.run();
+        }
+
+        Assert.assertEquals(queued.get(), TIMES);
+        for (final Exception error : errors) {
+            Assert.assertNull(error);
+        }
+        Assert.assertEquals(writes.get(), TIMES);
+        Assert.assertEquals(bytesRead.get(), TIMES * message.length);
+    }
+
+    @Test
+    public void testWriteAndForget() throws Throwable {
+        final AtomicInteger bytesRead = new AtomicInteger(0);
+        final AtomicInteger callbacks = new AtomicInteger(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setReadCallback(new StreamReadCallback() {
+            @Override
+            public void onRead(final ByteBuffer data) throws Exception {
+                if (data == null) {
+                    peer.close();
+                } else {
+                    bytesRead.addAndGet(data.remaining());
+                }
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                for (int i = 0; i < TIMES; i++) {
+                    client.writeAndForget("0123456789");
+                    client.writeAndForget(ByteBuffer.allocateDirect(10));
+                    client.writeAndForget(ByteBuffer.allocate(10));
+                }
+                client.closeWrite();
+            }
+        });
+
+        client.setWriteCallback(new StreamWriteCallback() {
+            @Override
+            public void onWrite(int status, Exception error) throws Exception {
+                callbacks.incrementAndGet();
+            }
+        });
+
+        client.setErrorCallback(new StreamErrorCallback() {
+            @Override
+            public void onError(final Exception error) throws Exception {
+                callbacks.incrementAndGet();
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, FORGET_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, FORGET_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(bytesRead.get(), TIMES * 30);
+        Assert.assertEquals(callbacks.get(), 0);
+        Assert.assertEquals(client.queuedWriteBytes(), 0);
+    }
+
+    @Test
+    public void testWriteBatching() throws Throwable {
+        final AtomicInteger bytesRead = new AtomicInteger(0);
+        final AtomicInteger upcalls = new AtomicInteger(0);
+        final AtomicInteger writes = new AtomicInteger(0);
+        final AtomicLong bytesWritten = new AtomicLong(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setReadCallback(new StreamReadCallback() {
+            @Override
+            public void onRead(final ByteBuffer data) throws Exception {
+                if (data == null) {
+                    peer.close();
+                } else {
+                    bytesRead.addAndGet(data.remaining());
+                }
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectCallback(new StreamConnectCallback() {
+            @Override
+            public void onConnect(int status, Exception error) throws Exception {
+                for (int i = 0; i < TIMES; i++) {
+                    client.write(ByteBuffer.allocateDirect(10));
+                }
+            }
+        });
+
+        client.setWritesCallback(new StreamWritesCallback() {
+            @Override
+            public void onWrites(int count, long bytes, Exception error) throws Exception {
+                Assert.assertNull(error);
+                upcalls.incrementAndGet();
+                bytesWritten.addAndGet(bytes);
+                if (writes.addAndGet(count) == TIMES) {
+                    client.closeWrite();
+                }
+            }
+        });
+
+        client.setShutdownCallback(new StreamShutdownCallback() {
+            @Override
+            public void onShutdown(int status, Exception error) throws Exception {
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, WRITE_BATCHING_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, WRITE_BATCHING_PORT);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(writes.get(), TIMES);
+        Assert.assertEquals(bytesWritten.get(), TIMES * 10);
+        Assert.assertEquals(bytesRead.get(), TIMES * 10);
+        Assert.assertTrue(upcalls.get() < TIMES);
+        Assert.assertEquals(client.queuedWriteBytes(), 0);
+    }
+
+    @Test
+    public void testRequestIds() throws Throwable {
+        final AtomicLong connectId = new AtomicLong(-1);
+        final AtomicLong shutdownId = new AtomicLong(-1);
+        final AtomicLong writeIds = new AtomicLong(0);
+        final AtomicInteger bytesWritten = new AtomicInteger(0);
+        final AtomicInteger bytesRead = new AtomicInteger(0);
+        final AtomicBoolean serverDone = new AtomicBoolean(false);
+        final AtomicBoolean clientDone = new AtomicBoolean(false);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final TCPHandle server = handleFactory.newTCPHandle();
+        final TCPHandle peer = handleFactory.newTCPHandle();
+        final TCPHandle client = handleFactory.newTCPHandle();
+        // the requests hold no reference to it
+        final ByteBuffer data = ByteBuffer.allocateDirect(10);
+
+        server.setConnectionCallback(new StreamConnectionCallback() {
+            @Override
+            public void onConnection(int status, Exception error) throws Exception {
+                server.accept(peer);
+                peer.readStart();
+                server.close();
+            }
+        });
+
+        peer.setReadCallback(new StreamReadCallback() {
+            @Override
+            public void onRead(final ByteBuffer buffer) throws Exception {
+                if (buffer == null) {
+                    peer.close();
+                } else {
+                    bytesRead.addAndGet(buffer.remaining());
+                }
+            }
+        });
+
+        peer.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                serverDone.set(true);
+            }
+        });
+
+        client.setConnectRequestCallback(new RequestCallback() {
+            @Override
+            public void onComplete(long requestId, int result, Exception error) throws Exception {
+                Assert.assertNull(error);
+                connectId.set(requestId);
+                for (int i = 1; i <= TIMES; i++) {
+                    client.write(data, i);
+                }
+                client.closeWrite(TIMES + 1);
+            }
+        });
+
+        client.setWriteRequestCallback(new RequestCallback() {
+            @Override
+            public void onComplete(long requestId, int result, Exception error) throws Exception {
+                Assert.assertNull(error);
+                Assert.assertEquals(requestId, writeIds.incrementAndGet());
+                bytesWritten.addAndGet(result);
+            }
+        });
+
+        client.setShutdownRequestCallback(new RequestCallback() {
+            @Override
+            public void onComplete(long requestId, int result, Exception error) throws Exception {
+                shutdownId.set(requestId);
+                client.close();
+            }
+        });
+
+        client.setCloseCallback(new StreamCloseCallback() {
+            @Override
+            public void onClose() throws Exception {
+                clientDone.set(true);
+            }
+        });
+
+        server.bind(ADDRESS, REQUEST_ID_PORT);
+        server.listen(1);
+        client.connect(ADDRESS, REQUEST_ID_PORT, Long.MAX_VALUE);
+
+        while (!serverDone.get() || !clientDone.get()) {
+            loop.run();
+        }
+
+        Assert.assertEquals(connectId.get(), Long.MAX_VALUE);
+        Assert.assertEquals(writeIds.get(), TIMES);
+        Assert.assertEquals(shutdownId.get(), TIMES + 1);
+        Assert.assertEquals(bytesWritten.get(), TIMES * 10);
+        Assert.assertEquals(bytesRead.get(), TIMES * 10);
+        Assert.assertEquals(client.queuedWriteBytes(), 0);
+    }
+
+    @Test
+    public void testPreallocatedExceptions() throws Throwable {
+        NativeException.preallocate("ECONNREFUSED");
+        final List<Exception> errors = new ArrayList<>();
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        for (int i = 0; i < 2; i++) {
+            final TCPHandle client = handleFactory.newTCPHandle();
+            client.setConnectCallback(new StreamConnectCallback() {
+                @Override
+                public void onConnect(int status, Exception error) throws Exception {
+                    Assert.assertTrue(status < 0);
+                    errors.add(error);
+                    client.close();
+                }
+            });
+            // nobody listens there
+            client.connect(ADDRESS, REFUSED_PORT);
+        }
+
+        while (errors.size() < 2) {
+            loop.run();
+        }
+
+        final NativeException error = (NativeException) errors.get(0);
+        Assert.assertEquals(error.errnoString(), "ECONNREFUSED");
+        Assert.assertSame(errors.get(1), error);
+        Assert.assertEquals(error.getStackTrace().length, 0);
+        Assert.assertSame(NativeException.fromErrno(error.errno(), null), error);
+        final NativeException thrown = NativeException.fromErrno(error.errno(), "uv_connect");
+        Assert.assertNotSame(thrown, error);
+        Assert.assertEquals(thrown.syscall(), "uv_connect");
+
+        try {
+            NativeException.preallocate("ENOSUCHERROR");
+            Assert.fail("unknown errno accepted");
+        } catch (final IllegalArgumentException expected) {
+        }
+    }
+
     public static void main(final String[] args) throws Throwable {
         final TCPHandleTest test = new TCPHandleTest();
         test.testConnection();
         test.testConnection6();
+        test.testPooledReads();
+        test.testReadInto();
+        test.testGatheringWrite();
+        test.testCork();
+        test.testWriteWatermarks();
+        test.testBatchedAccept();
+        test.testConnectionTemplate();
+        test.testReadSize();
+        test.testFraming();
+        test.testNativeRead();
+        test.testForwardSlice();
+        test.testBroadcast();
+        test.testWriteAndForget();
+        test.testWriteBatching();
+        test.testRequestIds();
+        test.testPreallocatedExceptions();
     }
 
 }
@@ -122,10 +122,48 @@ public class TimerHandleTest extends TestBase {
         Assert.assertTrue(callbackCount.get() == TIMES);
     }
 
+    @Test
+    public void testEventRing() throws Throwable {
+        final AtomicInteger fired = new AtomicInteger(0);
+        final AtomicInteger closed = new AtomicInteger(0);
+
+        final LoopHandle loop = new LoopHandle();
+        // smaller than the number of timers, so the ring also drains when full
+        loop.enableEventRing(4);
+        Assert.assertTrue(loop.isEventRingEnabled());
+
+        final TimerCallback onClose = new TimerCallback() {
+            @Override
+            public void onTimer(final int status) throws Exception {
+                closed.incrementAndGet();
+            }
+        };
+
+        for (int round = 0; round < 2; round++) {
+            // the second round reuses the ids released by the first
+            for (int i = 0; i < 10; i++) {
+                final TimerHandle timer = new TimerHandle(loop);
+                timer.setCloseCallback(onClose);
+                timer.setTimerFiredCallback(new TimerCallback() {
+                    @Override
+                    public void onTimer(final int status) throws Exception {
+                        fired.incrementAndGet();
+                        timer.close();
+                    }
+                });
+                timer.start(1, 0);
+            }
+            loop.run();
+            Assert.assertEquals(fired.get(), (round + 1) * 10);
+            Assert.assertEquals(closed.get(), (round + 1) * 10);
+        }
+    }
+
     public static void main(final String[] args) throws Throwable {
         final TimerHandleTest test = new TimerHandleTest();
         test.testOnce();
         test.testRepeat();
+        test.testEventRing();
     }
 
 }
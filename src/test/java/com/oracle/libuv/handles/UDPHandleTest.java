@@ -26,6 +26,9 @@
 package com.oracle.libuv.handles;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -34,7 +37,10 @@ import org.testng.annotations.Test;
 
 import com.oracle.libuv.Address;
 import com.oracle.libuv.TestBase;
+import com.oracle.libuv.cb.UDPPeerRecvCallback;
+import com.oracle.libuv.cb.UDPRecvBatchCallback;
 import com.oracle.libuv.cb.UDPRecvCallback;
+import com.oracle.libuv.cb.UDPSendBatchCallback;
 import com.oracle.libuv.cb.UDPSendCallback;
 
 public class UDPHandleTest extends TestBase {
@@ -43,6 +49,14 @@ public class UDPHandleTest extends TestBase {
     private static final String HOST6 = "::1";
     private static final int PORT = 34567;
     private static final int PORT6 = 45678;
+    private static final int BATCH_PORT = 34568;
+    private static final int BATCH_CLIENT_PORT = 34569;
+    private static final int SEND_BATCH_PORT = 34570;
+    private static final int SEND_BATCH_CLIENT_PORT = 34571;
+    private static final int RESOLVED_PORT = 34572;
+    private static final int PEER_PORT = 34573;
+    private static final int PEER_CLIENT_PORT = 34574;
+    private static final int JUMBO_PORT = 34575;
     private static final int TIMES = 10;
 
     @Test
@@ -157,10 +171,328 @@ public class UDPHandleTest extends TestBase {
         Assert.assertEquals(serverRecvCount.get(), TIMES);
     }
 
+    @Test
+    public void testRecvBatch() throws Throwable {
+        final int DATAGRAMS = 100;
+        final int SLOTS = 8;
+        final AtomicInteger received = new AtomicInteger(0);
+        final AtomicInteger batches = new AtomicInteger(0);
+        final AtomicInteger empty = new AtomicInteger(0);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final UDPHandle server = handleFactory.newUDPHandle();
+        final UDPHandle client = handleFactory.newUDPHandle();
+
+        server.enableRecvBatch(SLOTS, 64);
+        server.setRecvBatchCallback(new UDPRecvBatchCallback() {
+            @Override
+            public void onRecv(final UDPRecvBatch batch, final Exception error) throws Exception {
+                Assert.assertNull(error);
+                Assert.assertTrue(batch.size() > 0 && batch.size() <= SLOTS);
+                batches.incrementAndGet();
+                for (int i = 0; i < batch.size(); i++) {
+                    final ByteBuffer data = batch.data(i);
+                    final byte[] bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                    if (bytes.length == 0) {
+                        empty.incrementAndGet();
+                    } else {
+                        Assert.assertTrue(new String(bytes, StandardCharsets.UTF_8).startsWith("PING."));
+                    }
+                    Assert.assertEquals(batch.port(i), BATCH_CLIENT_PORT);
+                    Assert.assertEquals(batch.source(i).getIp(), HOST);
+                }
+                if (received.addAndGet(batch.size()) == DATAGRAMS) {
+                    server.close();
+                    client.close();
+                }
+            }
+        });
+
+        server.bind(BATCH_PORT, HOST);
+        server.recvStart();
+        client.bind(BATCH_CLIENT_PORT, HOST);
+        client.recvStart();
+        try {
+            client.enableRecvBatch(SLOTS, 64);
+            Assert.fail("recv batch enabled after recvStart");
+        } catch (final IllegalStateException expected) {
+        }
+        client.recvStop();
+        for (int i = 0; i < DATAGRAMS - 1; i++) {
+            client.send("PING." + i, BATCH_PORT, HOST);
+        }
+        // an empty datagram is a datagram too
+        client.send(ByteBuffer.allocate(0), BATCH_PORT, HOST);
+
+        final long start = System.currentTimeMillis();
+        while (received.get() < DATAGRAMS) {
+            if (System.currentTimeMillis() - start > TestBase.TIMEOUT) {
+                Assert.fail("timeout");
+            }
+            loop.runNoWait();
+        }
+
+        Assert.assertEquals(received.get(), DATAGRAMS);
+        Assert.assertEquals(empty.get(), 1);
+        Assert.assertTrue(batches.get() < DATAGRAMS);
+    }
+
+    @Test
+    public void testSendBatch() throws Throwable {
+        final int DATAGRAMS = 20;
+        final AtomicInteger received = new AtomicInteger(0);
+        final AtomicInteger sent = new AtomicInteger(-1);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final UDPHandle server = handleFactory.newUDPHandle();
+        final UDPHandle client = handleFactory.newUDPHandle();
+
+        server.setRecvCallback(new UDPRecvCallback() {
+            @Override
+            public void onRecv(int nread, ByteBuffer data, Address address) throws Exception {
+                Assert.assertEquals(nread, 10);
+                Assert.assertEquals(address.getPort(), SEND_BATCH_CLIENT_PORT);
+                if (received.incrementAndGet() == DATAGRAMS) {
+                    server.close();
+                }
+            }
+        });
+
+        client.setSendBatchCallback(new UDPSendBatchCallback() {
+            @Override
+            public void onSend(final int count, final Exception error) throws Exception {
+                Assert.assertNull(error);
+                sent.set(count);
+                client.close();
+            }
+        });
+
+        server.bind(SEND_BATCH_PORT, HOST);
+        server.recvStart();
+        client.bind(SEND_BATCH_CLIENT_PORT, HOST);
+
+        final ByteBuffer[] buffers = new ByteBuffer[DATAGRAMS];
+        final int[] ports = new int[DATAGRAMS];
+        final String[] hosts = new String[DATAGRAMS];
+        for (int i = 0; i < DATAGRAMS; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(10);
+            ports[i] = SEND_BATCH_PORT;
+            hosts[i] = HOST;
+        }
+        Assert.assertEquals(client.sendBatch(buffers, ports, hosts), DATAGRAMS);
+        // reported from the loop, never from within sendBatch
+        Assert.assertEquals(sent.get(), -1);
+
+        final long start = System.currentTimeMillis();
+        while (received.get() < DATAGRAMS || sent.get() < 0) {
+            if (System.currentTimeMillis() - start > TestBase.TIMEOUT) {
+                Assert.fail("timeout");
+            }
+            loop.runNoWait();
+        }
+
+        Assert.assertEquals(sent.get(), DATAGRAMS);
+        Assert.assertEquals(received.get(), DATAGRAMS);
+    }
+
+    @Test
+    public void testResolvedAddress() throws Throwable {
+        final int DATAGRAMS = 10;
+        final AtomicInteger received = new AtomicInteger(0);
+        final AtomicInteger sent = new AtomicInteger(0);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final UDPHandle server = handleFactory.newUDPHandle();
+        final UDPHandle client = handleFactory.newUDPHandle();
+        final ResolvedAddress to = ResolvedAddress.of(HOST, RESOLVED_PORT);
+        Assert.assertEquals(to.getHost(), HOST);
+        Assert.assertFalse(to.isIPv6());
+        Assert.assertEquals(to, ResolvedAddress.of(HOST, RESOLVED_PORT));
+
+        server.setRecvCallback(new UDPRecvCallback() {
+            @Override
+            public void onRecv(int nread, ByteBuffer data, Address address) throws Exception {
+                Assert.assertEquals(nread, 4);
+                if (received.incrementAndGet() == 2 * DATAGRAMS) {
+                    server.close();
+                }
+            }
+        });
+
+        client.setSendCallback(new UDPSendCallback() {
+            @Override
+            public void onSend(int status, Exception error) throws Exception {
+                Assert.assertNull(error);
+                sent.incrementAndGet();
+            }
+        });
+
+        client.setSendBatchCallback(new UDPSendBatchCallback() {
+            @Override
+            public void onSend(final int count, final Exception error) throws Exception {
+                Assert.assertNull(error);
+                sent.addAndGet(count);
+            }
+        });
+
+        server.bind(RESOLVED_PORT, HOST);
+        server.recvStart();
+
+        final ByteBuffer[] buffers = new ByteBuffer[DATAGRAMS];
+        final ResolvedAddress[] addresses = new ResolvedAddress[DATAGRAMS];
+        for (int i = 0; i < DATAGRAMS; i++) {
+            client.send(ByteBuffer.wrap("PING".getBytes(StandardCharsets.UTF_8)), to);
+            buffers[i] = ByteBuffer.allocateDirect(4);
+            addresses[i] = to;
+        }
+        client.sendBatch(buffers, addresses);
+
+        final long start = System.currentTimeMillis();
+        while (received.get() < 2 * DATAGRAMS || sent.get() < 2 * DATAGRAMS) {
+            if (System.currentTimeMillis() - start > TestBase.TIMEOUT) {
+                Assert.fail("timeout");
+            }
+            loop.runNoWait();
+        }
+        client.close();
+
+        Assert.assertEquals(sent.get(), 2 * DATAGRAMS);
+        Assert.assertEquals(received.get(), 2 * DATAGRAMS);
+    }
+
+    @Test
+    public void testPeerRecv() throws Throwable {
+        final AtomicBoolean serverRecvCalled = new AtomicBoolean(false);
+        final AtomicBoolean clientSendCalled = new AtomicBoolean(false);
+        final Set<UDPPeer> peers = new HashSet<>();
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final UDPHandle server = handleFactory.newUDPHandle();
+        final UDPHandle client = handleFactory.newUDPHandle();
+
+        server.setRecvCallback(new UDPRecvCallback() {
+            @Override
+            public void onRecv(int nread, ByteBuffer data, Address address) throws Exception {
+                Assert.fail("peer recv callback should take precedence");
+            }
+        });
+
+        server.setPeerRecvCallback(new UDPPeerRecvCallback() {
+            @Override
+            public void onRecv(int nread, ByteBuffer data, UDPPeer peer) throws Exception {
+                Assert.assertEquals(nread, 4);
+                Assert.assertTrue(peer.isKnown());
+                Assert.assertFalse(peer.isIPv6());
+                Assert.assertEquals(peer.getIPv4(), 0x7f000001);
+                Assert.assertEquals(peer.getPort(), PEER_CLIENT_PORT);
+                Assert.assertEquals(peer.getIp(), HOST);
+                Assert.assertEquals(peer.toAddress().getPort(), PEER_CLIENT_PORT);
+                peers.add(peer.copy());
+                Assert.assertTrue(peers.contains(peer));
+                serverRecvCalled.set(true);
+                server.close();
+            }
+        });
+
+        client.setSendCallback(new UDPSendCallback() {
+            @Override
+            public void onSend(int status, Exception error) throws Exception {
+                clientSendCalled.set(true);
+                client.close();
+            }
+        });
+
+        server.bind(PEER_PORT, HOST);
+        server.recvStart();
+        client.bind(PEER_CLIENT_PORT, HOST);
+        client.send(ByteBuffer.wrap("PING".getBytes(StandardCharsets.UTF_8)), PEER_PORT, HOST);
+
+        final long start = System.currentTimeMillis();
+        while (!serverRecvCalled.get() || !clientSendCalled.get()) {
+            if (System.currentTimeMillis() - start > TestBase.TIMEOUT) {
+                Assert.fail("timeout");
+            }
+            loop.runNoWait();
+        }
+
+        Assert.assertTrue(serverRecvCalled.get());
+        Assert.assertTrue(clientSendCalled.get());
+        Assert.assertEquals(peers.size(), 1);
+    }
+
+    @Test
+    public void testJumboDatagrams() throws Throwable {
+        final int JUMBO = 9000;
+        final AtomicInteger received = new AtomicInteger(0);
+        final AtomicInteger sent = new AtomicInteger(0);
+
+        final DefaultHandleFactory handleFactory = new DefaultHandleFactory();
+        final LoopHandle loop = handleFactory.getLoopHandle();
+        final UDPHandle server = handleFactory.newUDPHandle();
+        final UDPHandle client = handleFactory.newUDPHandle();
+
+        Assert.assertEquals(server.getRecvBufferSize(), UDPHandle.DEFAULT_RECV_BUFFER_SIZE);
+        try {
+            server.setRecvBufferSize(UDPHandle.MAX_RECV_BUFFER_SIZE + 1);
+            Assert.fail("oversized recv buffer accepted");
+        } catch (final IllegalArgumentException expected) {
+        }
+        server.setRecvBufferSize(JUMBO);
+        Assert.assertEquals(server.getRecvBufferSize(), JUMBO);
+
+        server.setRecvCallback(new UDPRecvCallback() {
+            @Override
+            public void onRecv(int nread, ByteBuffer data, Address address) throws Exception {
+                // the second datagram is cut to the buffer size
+                Assert.assertEquals(nread, JUMBO);
+                Assert.assertEquals(data.remaining(), JUMBO);
+                if (received.incrementAndGet() == 2) {
+                    Assert.assertEquals(server.getTruncatedCount(), 1);
+                    server.close();
+                }
+            }
+        });
+
+        client.setSendCallback(new UDPSendCallback() {
+            @Override
+            public void onSend(int status, Exception error) throws Exception {
+                Assert.assertNull(error);
+                if (sent.incrementAndGet() == 2) {
+                    client.close();
+                }
+            }
+        });
+
+        server.bind(JUMBO_PORT, HOST);
+        server.recvStart();
+        client.send(ByteBuffer.allocateDirect(JUMBO), JUMBO_PORT, HOST);
+        client.send(ByteBuffer.allocateDirect(JUMBO + 500), JUMBO_PORT, HOST);
+
+        final long start = System.currentTimeMillis();
+        while (received.get() < 2 || sent.get() < 2) {
+            if (System.currentTimeMillis() - start > TestBase.TIMEOUT) {
+                Assert.fail("timeout");
+            }
+            loop.runNoWait();
+        }
+
+        Assert.assertEquals(received.get(), 2);
+    }
+
     public static void main(final String[] args) throws Throwable {
         final UDPHandleTest test = new UDPHandleTest();
         test.testConnection();
         test.testConnection6();
+        test.testRecvBatch();
+        test.testSendBatch();
+        test.testResolvedAddress();
+        test.testPeerRecv();
+        test.testJumboDatagrams();
     }
 
     public static boolean isIPv6Enabled(final LoopHandle loop) {